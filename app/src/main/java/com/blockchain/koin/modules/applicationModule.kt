@@ -132,7 +132,10 @@ val applicationModule = module {
             context = get(),
             payloadManager = get(),
             accessState = get(),
-            prefs = get()
+            prefs = get(),
+            transactionSummaryStore = get(),
+            ethFeeStore = get(),
+            httpCache = get()
         )
     }
 
@@ -168,6 +171,7 @@ val applicationModule = module {
                 metadataManager = get(),
                 environmentSettings = get(),
                 lastTxUpdater = get(),
+                feeResolver = get(),
                 rxBus = get()
             )
         }
@@ -180,7 +184,8 @@ val applicationModule = module {
                 blockExplorer = get(),
                 defaultLabels = get(),
                 metadataManager = get(),
-                rxBus = get()
+                rxBus = get(),
+                transactionSummaryStore = get()
             )
         }
 
@@ -8,15 +8,20 @@ import io.reactivex.Maybe
 import io.reactivex.Observable
 import io.reactivex.Single
 import io.reactivex.rxkotlin.zipWith
+import io.reactivex.schedulers.Schedulers
 import piuk.blockchain.android.coincore.alg.AlgoCryptoWalletAccount
 import piuk.blockchain.android.coincore.impl.AllWalletsAccount
 import piuk.blockchain.android.coincore.impl.TxProcessorFactory
 import piuk.blockchain.android.ui.transfer.AccountsSorter
 import piuk.blockchain.androidcore.data.payload.PayloadDataManager
 import timber.log.Timber
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
 
 private class CoincoreInitFailure(msg: String, e: Throwable) : Exception(msg, e)
 
+private const val ACCOUNT_GROUP_TIMEOUT_SECONDS = 20L
+
 class Coincore internal constructor(
     // TODO: Build an interface on PayloadDataManager/PayloadManager for 'global' crypto calls; second password etc?
     private val payloadManager: PayloadDataManager,
@@ -32,19 +37,51 @@ class Coincore internal constructor(
             "Unknown CryptoCurrency ${ccy.networkTicker}"
         )
 
-    fun init(): Completable =
-        Completable.concat(
-            assetMap.values.map { asset ->
-                Completable.defer { asset.init() }
-                    .doOnError {
-                        crashLogger.logException(
-                            CoincoreInitFailure("Failed init: ${asset.asset.networkTicker}", it)
-                        )
-                    }
-            }.toList()
+    /**
+     * Initialises every asset. Assets start together on the IO scheduler, except those which
+     * depend on another asset's wallet, which wait for that asset to finish first.
+     */
+    fun init(): Completable {
+        val inits = mutableMapOf<CryptoCurrency, Completable>()
+        return Completable.merge(
+            assetMap.values.map { asset -> initAsset(asset, inits) }
         ).doOnError {
             Timber.e("Coincore initialisation failed! $it")
         }
+    }
+
+    private fun initAsset(
+        asset: CryptoAsset,
+        inits: MutableMap<CryptoCurrency, Completable>
+    ): Completable =
+        inits[asset.asset] ?: run {
+            val dependencies = initDependencies(asset.asset).mapNotNull { dependency ->
+                assetMap[dependency]?.let { initAsset(it, inits) }
+            }
+            Completable.merge(dependencies)
+                .andThen(timedInit(asset).subscribeOn(Schedulers.io()))
+                .cache()
+                .also { inits[asset.asset] = it }
+        }
+
+    private fun timedInit(asset: CryptoAsset): Completable {
+        var started = 0L
+        return Completable.defer { asset.init() }
+            .doOnSubscribe { started = System.nanoTime() }
+            .doOnComplete {
+                val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)
+                crashLogger.logEvent("Coincore: init ${asset.asset.networkTicker} took ${elapsed}ms")
+            }
+            .doOnError {
+                crashLogger.logException(
+                    CoincoreInitFailure("Failed init: ${asset.asset.networkTicker}", it)
+                )
+            }
+    }
+
+    // ERC20 tokens are held by the ether wallet, so can't be loaded until it is
+    private fun initDependencies(ccy: CryptoCurrency): List<CryptoCurrency> =
+        if (ccy.hasFeature(CryptoCurrency.IS_ERC20)) listOf(CryptoCurrency.ETHER) else emptyList()
 
     val fiatAssets: Asset
         get() = fiatAsset
@@ -58,17 +95,30 @@ class Coincore internal constructor(
     fun validateSecondPassword(secondPassword: String) =
         payloadManager.validateSecondPassword(secondPassword)
 
+    // Assets are queried concurrently, but their accounts are kept in asset order. An asset which
+    // doesn't answer in time is left out rather than holding up every other asset.
     fun allWallets(includeArchived: Boolean = false): Single<AccountGroup> =
-        Maybe.concat(
-            allAssets.map {
-                it.accountGroup().map { grp -> grp.accounts }
+        Observable.fromIterable(allAssets)
+            .concatMapEager { asset ->
+                asset.accountGroup()
+                    .subscribeOn(Schedulers.io())
+                    .timeout(ACCOUNT_GROUP_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .onErrorResumeNext { e: Throwable ->
+                        if (e is TimeoutException) {
+                            Timber.e("Timed out loading accounts for ${asset.javaClass.simpleName}")
+                            Maybe.empty()
+                        } else {
+                            Maybe.error(e)
+                        }
+                    }
+                    .map { grp -> grp.accounts }
                     .map { list ->
                         list.filter { account ->
                             (includeArchived || account !is CryptoAccount) || !account.isArchived
                         }
                     }
-            }
-        ).reduce { a, l -> a + l }
+                    .toObservable()
+            }.reduce { a, l -> a + l }
             .map { list ->
                 AllWalletsAccount(list, defaultLabels) as AccountGroup
             }.toSingle()
@@ -6,6 +6,7 @@ import info.blockchain.api.data.UnspentOutputs
 import info.blockchain.balance.CryptoCurrency
 import info.blockchain.balance.CryptoValue
 import info.blockchain.balance.Money
+import info.blockchain.wallet.api.data.FeeOptions
 import info.blockchain.wallet.exceptions.HDWalletException
 import info.blockchain.wallet.payment.Payment
 import info.blockchain.wallet.payment.SpendableUnspentOutputs
@@ -15,20 +16,27 @@ import io.reactivex.Single
 import io.reactivex.rxkotlin.Singles
 import org.bitcoinj.core.ECKey
 import org.bitcoinj.core.NetworkParameters
+import org.koin.core.inject
+import piuk.blockchain.android.coincore.BlockchainAccount
 import piuk.blockchain.android.coincore.CryptoAddress
 import piuk.blockchain.android.coincore.FeeLevel
 import piuk.blockchain.android.coincore.PendingTx
+import piuk.blockchain.android.coincore.TransactionTarget
 import piuk.blockchain.android.coincore.TxConfirmationValue
 import piuk.blockchain.android.coincore.TxResult
 import piuk.blockchain.android.coincore.TxValidationFailure
 import piuk.blockchain.android.coincore.ValidationState
 import piuk.blockchain.android.coincore.copyAndPut
 import piuk.blockchain.android.coincore.impl.txEngine.OnChainTxEngineBase
+import piuk.blockchain.android.coincore.impl.txEngine.UtxoSnapshot
+import piuk.blockchain.android.coincore.impl.txEngine.UtxoSnapshotLoader
 import piuk.blockchain.android.coincore.updateTxValidity
 import piuk.blockchain.androidcore.data.bitcoincash.BchDataManager
+import piuk.blockchain.androidcore.data.exchangerate.ExchangeRateDataManager
 import piuk.blockchain.androidcore.data.fees.FeeDataManager
 import piuk.blockchain.androidcore.data.payload.PayloadDataManager
 import piuk.blockchain.androidcore.data.payments.SendDataManager
+import piuk.blockchain.androidcore.data.rxjava.RxBus
 import piuk.blockchain.androidcore.utils.extensions.then
 import piuk.blockchain.androidcore.utils.helperfunctions.unsafeLazy
 import timber.log.Timber
@@ -59,12 +67,36 @@ class BchOnChainTxEngine(
     private val bchTarget: CryptoAddress
         get() = txTarget as CryptoAddress
 
+    private val rxBus: RxBus by inject()
+
+    private val utxos: UtxoSnapshotLoader by unsafeLazy {
+        UtxoSnapshotLoader(rxBus) {
+            Singles.zip(
+                sourceAccount.accountBalance.map { it as CryptoValue },
+                feeManager.bchFeeOptions.singleOrError(),
+                getUnspentApiResponse(bchSource.xpubAddress)
+            ) { balance, feeOptions, coins ->
+                UtxoSnapshot(balance, coins, feeOptions)
+            }
+        }
+    }
+
     override fun assertInputsValid() {
         check(txTarget is CryptoAddress)
         check((txTarget as CryptoAddress).asset == CryptoCurrency.BCH)
         check(sourceAsset == CryptoCurrency.BCH)
     }
 
+    override fun start(
+        sourceAccount: BlockchainAccount,
+        txTarget: TransactionTarget,
+        exchangeRates: ExchangeRateDataManager,
+        refreshTrigger: RefreshTrigger
+    ) {
+        super.start(sourceAccount, txTarget, exchangeRates, refreshTrigger)
+        utxos.invalidate()
+    }
+
     override fun doInitialiseTx(): Single<PendingTx> =
         Single.just(
             PendingTx(
@@ -82,17 +114,14 @@ class BchOnChainTxEngine(
         require(amount is CryptoValue)
         require(amount.currency == CryptoCurrency.BCH)
 
-        return Singles.zip(
-            sourceAccount.accountBalance.map { it as CryptoValue },
-            getUnspentApiResponse(bchSource.xpubAddress),
-            getDynamicFeePerKb(pendingTx)
-        ) { balance, coins, feePerKb ->
-            updatePendingTx(amount, balance, pendingTx, feePerKb, coins)
-        }.onErrorReturn {
-            pendingTx.copy(
-                validationState = ValidationState.INSUFFICIENT_FUNDS
-            )
-        }
+        return utxos.snapshot
+            .map { snapshot ->
+                updatePendingTx(amount, pendingTx, getDynamicFeePerKb(pendingTx, snapshot.feeOptions), snapshot)
+            }.onErrorReturn {
+                pendingTx.copy(
+                    validationState = ValidationState.INSUFFICIENT_FUNDS
+                )
+            }
     }
 
     private fun getUnspentApiResponse(address: String): Single<UnspentOutputs> =
@@ -113,16 +142,18 @@ class BchOnChainTxEngine(
 
     private fun updatePendingTx(
         amount: CryptoValue,
-        balance: CryptoValue,
         pendingTx: PendingTx,
         feePerKb: CryptoValue,
-        coins: UnspentOutputs
+        snapshot: UtxoSnapshot
     ): PendingTx {
-        val maxAvailable = sendDataManager.getMaximumAvailable(
-            cryptoCurrency = CryptoCurrency.BCH,
-            unspentCoins = coins,
-            feePerKb = feePerKb
-        )
+        val coins = snapshot.coins
+        val maxAvailable = snapshot.maximumAvailable(feePerKb) {
+            sendDataManager.getMaximumAvailable(
+                cryptoCurrency = CryptoCurrency.BCH,
+                unspentCoins = coins,
+                feePerKb = it
+            )
+        }
 
         val unspentOutputs = sendDataManager.getSpendableCoins(
             unspentCoins = coins,
@@ -132,21 +163,19 @@ class BchOnChainTxEngine(
 
         return pendingTx.copy(
             amount = amount,
-            totalBalance = balance,
+            totalBalance = snapshot.balance,
             availableBalance = maxAvailable,
             fees = CryptoValue.fromMinor(CryptoCurrency.BCH, unspentOutputs.absoluteFee),
             engineState = pendingTx.engineState.copyAndPut(STATE_UTXO, unspentOutputs)
         )
     }
 
-    private fun getDynamicFeePerKb(pendingTx: PendingTx): Single<CryptoValue> =
-        feeManager.bchFeeOptions
-            .map { feeOptions ->
-                check(pendingTx.feeLevel == FeeLevel.Regular) {
-                    "Fee level ${pendingTx.feeLevel} is not supported by BCH"
-                }
-                feeToCrypto(feeOptions.regularFee)
-            }.singleOrError()
+    private fun getDynamicFeePerKb(pendingTx: PendingTx, feeOptions: FeeOptions): CryptoValue {
+        check(pendingTx.feeLevel == FeeLevel.Regular) {
+            "Fee level ${pendingTx.feeLevel} is not supported by BCH"
+        }
+        return feeToCrypto(feeOptions.regularFee)
+    }
 
     private fun feeToCrypto(feePerKb: Long): CryptoValue =
         CryptoValue.fromMinor(CryptoCurrency.BCH, (feePerKb * 1000).toBigInteger())
@@ -292,7 +321,10 @@ class BchOnChainTxEngine(
 
     override fun doPostExecute(txResult: TxResult): Completable =
         super.doPostExecute(txResult)
-            .doOnComplete { bchSource.forceRefresh() }
+            .doOnComplete {
+                utxos.invalidate()
+                bchSource.forceRefresh()
+            }
 
     companion object {
         private val AVAILABLE_FEE_LEVELS = setOf(FeeLevel.Regular)
@@ -19,9 +19,11 @@ import org.bitcoinj.core.Transaction
 import org.koin.core.KoinComponent
 import org.koin.core.inject
 import org.spongycastle.util.encoders.Hex
+import piuk.blockchain.android.coincore.BlockchainAccount
 import piuk.blockchain.android.coincore.CryptoAddress
 import piuk.blockchain.android.coincore.FeeLevel
 import piuk.blockchain.android.coincore.PendingTx
+import piuk.blockchain.android.coincore.TransactionTarget
 import piuk.blockchain.android.coincore.TxConfirmation
 import piuk.blockchain.android.coincore.TxConfirmationValue
 import piuk.blockchain.android.coincore.TxResult
@@ -31,10 +33,14 @@ import piuk.blockchain.android.coincore.copyAndPut
 import piuk.blockchain.android.coincore.impl.txEngine.BitPayClientEngine
 import piuk.blockchain.android.coincore.impl.txEngine.EngineTransaction
 import piuk.blockchain.android.coincore.impl.txEngine.OnChainTxEngineBase
+import piuk.blockchain.android.coincore.impl.txEngine.UtxoSnapshot
+import piuk.blockchain.android.coincore.impl.txEngine.UtxoSnapshotLoader
 import piuk.blockchain.android.coincore.updateTxValidity
+import piuk.blockchain.androidcore.data.exchangerate.ExchangeRateDataManager
 import piuk.blockchain.androidcore.data.fees.FeeDataManager
 import piuk.blockchain.androidcore.data.payload.PayloadDataManager
 import piuk.blockchain.androidcore.data.payments.SendDataManager
+import piuk.blockchain.androidcore.data.rxjava.RxBus
 import piuk.blockchain.androidcore.utils.extensions.then
 import piuk.blockchain.androidcore.utils.helperfunctions.unsafeLazy
 import timber.log.Timber
@@ -89,6 +95,30 @@ class BtcOnChainTxEngine(
         btcSource.xpubAddress
     }
 
+    private val rxBus: RxBus by inject()
+
+    private val utxos: UtxoSnapshotLoader by unsafeLazy {
+        UtxoSnapshotLoader(rxBus) {
+            Singles.zip(
+                sourceAccount.accountBalance.map { it as CryptoValue },
+                feeManager.btcFeeOptions.singleOrError(),
+                getUnspentApiResponse(sourceAddress)
+            ) { balance, feeOptions, coins ->
+                UtxoSnapshot(balance, coins, feeOptions)
+            }
+        }
+    }
+
+    override fun start(
+        sourceAccount: BlockchainAccount,
+        txTarget: TransactionTarget,
+        exchangeRates: ExchangeRateDataManager,
+        refreshTrigger: RefreshTrigger
+    ) {
+        super.start(sourceAccount, txTarget, exchangeRates, refreshTrigger)
+        utxos.invalidate()
+    }
+
     override fun doInitialiseTx(): Single<PendingTx> =
         Single.just(
             PendingTx(
@@ -103,24 +133,19 @@ class BtcOnChainTxEngine(
         )
 
     override fun doUpdateAmount(amount: Money, pendingTx: PendingTx): Single<PendingTx> =
-        Singles.zip(
-            sourceAccount.accountBalance.map { it as CryptoValue },
-            getDynamicFeePerKb(pendingTx),
-            getUnspentApiResponse(sourceAddress)
-        ) { total, optionsAndFeePerKb, coins ->
-            updatePendingTxFromAmount(
-                amount as CryptoValue,
-                total,
-                pendingTx,
-                optionsAndFeePerKb.second,
-                optionsAndFeePerKb.first,
-                coins
-            )
-        }.onErrorReturnItem(
-            pendingTx.copy(
-                validationState = ValidationState.INSUFFICIENT_FUNDS
+        utxos.snapshot
+            .map { snapshot ->
+                updatePendingTxFromAmount(
+                    amount as CryptoValue,
+                    pendingTx,
+                    getDynamicFeePerKb(pendingTx, snapshot.feeOptions),
+                    snapshot
+                )
+            }.onErrorReturnItem(
+                pendingTx.copy(
+                    validationState = ValidationState.INSUFFICIENT_FUNDS
+                )
             )
-        )
 
     private fun getUnspentApiResponse(address: String): Single<UnspentOutputs> =
         if (btcDataManager.getAddressBalance(address) > CryptoValue.zero(sourceAsset)) {
@@ -139,33 +164,31 @@ class BtcOnChainTxEngine(
             Single.error(Throwable("No BTC funds"))
         }
 
-    private fun getDynamicFeePerKb(pendingTx: PendingTx): Single<Pair<FeeOptions, CryptoValue>> =
-        feeManager.btcFeeOptions
-            .map { feeOptions ->
-                when (pendingTx.feeLevel) {
-                    FeeLevel.None -> Pair(feeOptions, CryptoValue.zero(sourceAsset))
-                    FeeLevel.Regular -> Pair(feeOptions, feeToCrypto(feeOptions.regularFee))
-                    FeeLevel.Priority -> Pair(feeOptions, feeToCrypto(feeOptions.priorityFee))
-                    FeeLevel.Custom -> Pair(feeOptions, feeToCrypto(pendingTx.customFeeAmount))
-                }
-            }.singleOrError()
+    private fun getDynamicFeePerKb(pendingTx: PendingTx, feeOptions: FeeOptions): CryptoValue =
+        when (pendingTx.feeLevel) {
+            FeeLevel.None -> CryptoValue.zero(sourceAsset)
+            FeeLevel.Regular -> feeToCrypto(feeOptions.regularFee)
+            FeeLevel.Priority -> feeToCrypto(feeOptions.priorityFee)
+            FeeLevel.Custom -> feeToCrypto(pendingTx.customFeeAmount)
+        }
 
     private fun feeToCrypto(feePerKb: Long): CryptoValue =
         CryptoValue.fromMinor(sourceAsset, (feePerKb * 1000).toBigInteger())
 
     private fun updatePendingTxFromAmount(
         amount: CryptoValue,
-        balance: CryptoValue,
         pendingTx: PendingTx,
         feePerKb: CryptoValue,
-        feeOptions: FeeOptions,
-        coins: UnspentOutputs
+        snapshot: UtxoSnapshot
     ): PendingTx {
-        val maxAvailable = sendDataManager.getMaximumAvailable(
-            cryptoCurrency = sourceAsset,
-            unspentCoins = coins,
-            feePerKb = feePerKb
-        ) // This is total balance, with fees deducted
+        val coins = snapshot.coins
+        val maxAvailable = snapshot.maximumAvailable(feePerKb) {
+            sendDataManager.getMaximumAvailable(
+                cryptoCurrency = sourceAsset,
+                unspentCoins = coins,
+                feePerKb = it
+            )
+        } // This is total balance, with fees deducted
 
         val utxoBundle = sendDataManager.getSpendableCoins(
             unspentCoins = coins,
@@ -175,12 +198,12 @@ class BtcOnChainTxEngine(
 
         return pendingTx.copy(
             amount = amount,
-            totalBalance = balance,
+            totalBalance = snapshot.balance,
             availableBalance = maxAvailable,
             fees = CryptoValue.fromMinor(CryptoCurrency.BTC, utxoBundle.absoluteFee),
             engineState = pendingTx.engineState
                 .copyAndPut(STATE_UTXO, utxoBundle)
-                .copyAndPut(FEE_OPTIONS, feeOptions)
+                .copyAndPut(FEE_OPTIONS, snapshot.feeOptions)
         )
     }
 
@@ -368,7 +391,10 @@ class BtcOnChainTxEngine(
 
     override fun doPostExecute(txResult: TxResult): Completable =
         super.doPostExecute(txResult)
-            .doOnComplete { btcSource.forceRefresh() }
+            .doOnComplete {
+                utxos.invalidate()
+                btcSource.forceRefresh()
+            }
 
     companion object {
         const val LARGE_TX_FIAT = "USD"
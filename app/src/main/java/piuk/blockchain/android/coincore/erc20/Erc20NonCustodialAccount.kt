@@ -60,10 +60,7 @@ class Erc20NonCustodialAccount(
                 .flatMap { ethDataManager.getErc20Transactions(asset) }
                 .mapList {
                     val feeObservable = ethDataManager
-                        .getTransaction(it.transactionHash)
-                        .map { transaction ->
-                            transaction.gasUsed * transaction.gasPrice
-                        }
+                        .getTransactionFee(it.transactionHash)
                     FeedErc20Transfer(it, feeObservable)
                 }
 
@@ -4,14 +4,19 @@ import com.blockchain.wallet.DefaultLabels
 import info.blockchain.balance.ExchangeRates
 import info.blockchain.balance.FiatValue
 import info.blockchain.balance.Money
+import io.reactivex.Observable
 import io.reactivex.Single
+import io.reactivex.schedulers.Schedulers
 import piuk.blockchain.android.coincore.AccountGroup
+import piuk.blockchain.android.coincore.ActivitySummaryItem
 import piuk.blockchain.android.coincore.ActivitySummaryList
 import piuk.blockchain.android.coincore.AssetAction
 import piuk.blockchain.android.coincore.AvailableActions
 import piuk.blockchain.android.coincore.BlockchainAccount
 import piuk.blockchain.android.coincore.ReceiveAddress
 import piuk.blockchain.android.coincore.SingleAccountList
+import java.util.PriorityQueue
+import java.util.concurrent.TimeUnit
 
 class AllWalletsAccount(
     override val accounts: SingleAccountList,
@@ -55,13 +60,72 @@ class AllWalletsAccount(
     private fun allAccounts(): Single<List<BlockchainAccount>> =
         Single.just(accounts)
 
+    /**
+     * Activity of all accounts, re-emitted each time another account's activity arrives. Accounts
+     * are queried concurrently and each one's activity is merged into the already sorted list, so
+     * a slow account doesn't hold up the others.
+     */
+    val activityUpdates: Observable<ActivitySummaryList>
+        get() = sortedAccountActivity()
+            .scan { merged, list -> mergeSorted(listOf(merged, list)) }
+            .switchIfEmpty(Observable.just(emptyList()))
+
     private fun allActivities(): Single<ActivitySummaryList> =
+        sortedAccountActivity()
+            .toList()
+            .map { mergeSorted(it) }
+
+    private fun sortedAccountActivity(): Observable<ActivitySummaryList> =
         allAccounts().flattenAsObservable { it }
             .flatMapSingle { account ->
                 account.activity
+                    .subscribeOn(Schedulers.io())
+                    .timeout(ACCOUNT_ACTIVITY_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .map { it.sortedIfNeeded() }
                     .onErrorResumeNext { Single.just(emptyList()) }
             }
-            .reduce { a, l -> a + l }
-            .toSingle(emptyList())
-            .map { it.sorted() }
+
+    companion object {
+        private const val ACCOUNT_ACTIVITY_TIMEOUT_SECONDS = 20L
+    }
+}
+
+private fun ActivitySummaryList.sortedIfNeeded(): ActivitySummaryList =
+    if (zipWithNext().all { (a, b) -> a <= b }) this else sorted()
+
+private class MergeHead(
+    val item: ActivitySummaryItem,
+    val source: Int,
+    val rest: Iterator<ActivitySummaryItem>
+)
+
+/**
+ * K-way merge of lists which are each already sorted. Items which compare equal keep the order of
+ * the lists they came from, as [sorted] would.
+ */
+internal fun mergeSorted(lists: List<ActivitySummaryList>): ActivitySummaryList {
+    val nonEmpty = lists.filter { it.isNotEmpty() }
+    when (nonEmpty.size) {
+        0 -> return emptyList()
+        1 -> return nonEmpty[0]
+    }
+
+    val heads = PriorityQueue<MergeHead>(
+        nonEmpty.size,
+        compareBy<MergeHead> { it.item }.thenBy { it.source }
+    )
+    nonEmpty.forEachIndexed { i, list ->
+        val iterator = list.iterator()
+        heads.add(MergeHead(iterator.next(), i, iterator))
+    }
+
+    val merged = ArrayList<ActivitySummaryItem>(nonEmpty.sumBy { it.size })
+    while (heads.isNotEmpty()) {
+        val head = heads.poll()!!
+        merged.add(head.item)
+        if (head.rest.hasNext()) {
+            heads.add(MergeHead(head.rest.next(), head.source, head.rest))
+        }
+    }
+    return merged
 }
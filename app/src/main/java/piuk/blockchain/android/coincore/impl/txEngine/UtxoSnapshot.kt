@@ -0,0 +1,64 @@
+package piuk.blockchain.android.coincore.impl.txEngine
+
+import info.blockchain.api.data.UnspentOutputs
+import info.blockchain.balance.CryptoValue
+import info.blockchain.wallet.api.data.FeeOptions
+import io.reactivex.Single
+import piuk.blockchain.androidcore.data.events.ActionEvent
+import piuk.blockchain.androidcore.data.rxjava.RxBus
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicReference
+
+// The balance, unspent outputs and fee options of a UTXO based account, as they were when fetched.
+class UtxoSnapshot(
+    val balance: CryptoValue,
+    val coins: UnspentOutputs,
+    val feeOptions: FeeOptions
+) {
+    private val maximumAvailable = ConcurrentHashMap<CryptoValue, CryptoValue>()
+
+    // The max available only depends on the coins and the fee rate, so is worked out once per rate
+    fun maximumAvailable(feePerKb: CryptoValue, fnCalculate: (CryptoValue) -> CryptoValue): CryptoValue =
+        maximumAvailable.getOrPut(feePerKb) { fnCalculate(feePerKb) }
+}
+
+// Fetches a UtxoSnapshot once per transaction session, so that amount and fee level updates only
+// select coins in memory rather than going back to the explorer on every keystroke.
+// The snapshot is fetched again after any wallet update event, such as those sent when the websocket
+// reports a new transaction, and after invalidate(). Failed fetches are not kept.
+class UtxoSnapshotLoader(
+    private val rxBus: RxBus,
+    private val fnFetch: () -> Single<UtxoSnapshot>
+) {
+    private class Loaded(
+        val snapshot: Single<UtxoSnapshot>,
+        val eventCount: Long
+    )
+
+    private val current = AtomicReference<Loaded?>()
+
+    val snapshot: Single<UtxoSnapshot>
+        get() = Single.defer { currentOrFetch() }
+
+    fun invalidate() {
+        current.set(null)
+    }
+
+    private fun currentOrFetch(): Single<UtxoSnapshot> {
+        val eventCount = rxBus.getEmissionCount(ActionEvent::class.java)
+        val loaded = current.get()
+        if (loaded != null && loaded.eventCount == eventCount) {
+            return loaded.snapshot
+        }
+
+        lateinit var fetching: Loaded
+        fetching = Loaded(
+            snapshot = fnFetch()
+                .doOnError { current.compareAndSet(fetching, null) }
+                .cache(),
+            eventCount = eventCount
+        )
+        current.set(fetching)
+        return fetching.snapshot
+    }
+}
@@ -36,7 +36,8 @@ data class TokenParams(
 data class BtcTransaction(
     val inputs: List<Input> = emptyList(),
     @SerializedName("out") val outputs: List<Output> = emptyList(),
-    val hash: String?
+    val hash: String?,
+    val time: Long? = null
 )
 
 data class Output(
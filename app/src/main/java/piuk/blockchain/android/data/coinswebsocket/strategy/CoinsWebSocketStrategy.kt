@@ -3,19 +3,24 @@ package piuk.blockchain.android.data.coinswebsocket.strategy
 import com.blockchain.network.websocket.ConnectionEvent
 import com.blockchain.network.websocket.WebSocket
 import com.google.gson.Gson
+import com.google.gson.JsonObject
 import info.blockchain.balance.CryptoCurrency
 import info.blockchain.balance.CryptoValue
 import info.blockchain.wallet.ethereum.Erc20TokenData
 import info.blockchain.wallet.exceptions.DecryptionException
 import io.reactivex.Completable
+import io.reactivex.Observable
+import io.reactivex.Scheduler
 import io.reactivex.android.schedulers.AndroidSchedulers
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.rxkotlin.plusAssign
 import io.reactivex.rxkotlin.subscribeBy
 import io.reactivex.schedulers.Schedulers
+import io.reactivex.subjects.PublishSubject
 import org.web3j.utils.Convert
 import piuk.blockchain.android.R
 import piuk.blockchain.android.data.coinswebsocket.models.BtcBchResponse
+import piuk.blockchain.android.data.coinswebsocket.models.BtcTransaction
 import piuk.blockchain.android.data.coinswebsocket.models.Coin
 import piuk.blockchain.android.data.coinswebsocket.models.Entity
 import piuk.blockchain.android.data.coinswebsocket.models.EthResponse
@@ -43,10 +48,19 @@ import piuk.blockchain.androidcore.data.rxjava.RxBus
 import piuk.blockchain.androidcore.utils.PersistentPrefs
 import timber.log.Timber
 import java.math.BigDecimal
+import java.math.BigInteger
 import java.util.Locale
+import java.util.concurrent.TimeUnit
 
 data class WebSocketReceiveEvent constructor(val address: String, val hash: String)
 
+// Notifications tend to arrive in bursts, which only need refreshing once
+private const val REFRESH_DEBOUNCE_MS = 500L
+// A burst that never goes quiet is still refreshed at least this often
+private const val REFRESH_MAX_DELAY_MS = 2000L
+// How often to check whether balances kept up to date from deltas are due a full update
+private const val RECONCILE_CHECK_MINUTES = 1L
+
 private data class CoinWebSocketInput(
     val guid: String,
     val ethAddress: String?,
@@ -69,11 +83,16 @@ class CoinsWebSocketStrategy(
     private val appUtil: AppUtil,
     private val payloadDataManager: PayloadDataManager,
     private val bchDataManager: BchDataManager,
-    private val assetResources: AssetResourceFactory
+    private val assetResources: AssetResourceFactory,
+    private val refreshScheduler: Scheduler = Schedulers.computation()
 ) {
 
     private var coinWebSocketInput: CoinWebSocketInput? = null
     private val compositeDisposable = CompositeDisposable()
+
+    // Requests for a BTC refresh, true if the balances need updating as well as the transactions
+    private val btcRefreshes = PublishSubject.create<Boolean>()
+    private val bchRefreshes = PublishSubject.create<Unit>()
     private var messagesSocketHandler: MessagesSocketHandler? = null
 
     fun setMessagesHandler(messagesSocketHandler: MessagesSocketHandler) {
@@ -98,19 +117,47 @@ class CoinsWebSocketStrategy(
 
         compositeDisposable += coinsWebSocket.responses.distinctUntilChanged()
             .subscribe { response ->
-                val socketResponse = gson.fromJson(response, SocketResponse::class.java)
+                // The message is only parsed once, the typed models are then read from the tree
+                val json = gson.fromJson(response, JsonObject::class.java)
+                val socketResponse = gson.fromJson(json, SocketResponse::class.java)
                 if (socketResponse.op == "on_change")
                     checkForWalletChange(socketResponse.checksum)
                 when (socketResponse.coin) {
-                    Coin.ETH -> handleEthTransaction(response)
-                    Coin.BTC -> handleBtcTransaction(response)
-                    Coin.BCH -> handleBchTransaction(response)
+                    Coin.ETH -> handleEthTransaction(gson.fromJson(json, EthResponse::class.java))
+                    Coin.BTC -> handleBtcTransaction(gson.fromJson(json, BtcBchResponse::class.java))
+                    Coin.BCH -> handleBchTransaction(gson.fromJson(json, BtcBchResponse::class.java))
                     else -> {
                     }
                 }
             }
+
+        compositeDisposable += btcRefreshes.debounced()
+            .subscribe { requests ->
+                if (requests.any { it }) {
+                    updateBtcBalancesAndTransactions()
+                } else {
+                    updateBtcTransactions()
+                }
+            }
+
+        compositeDisposable += bchRefreshes.debounced()
+            .subscribe { updateBchBalancesAndTransactions() }
+
+        // Deltas can drift from the real balances, which an idle wallet would otherwise never correct
+        compositeDisposable += Observable.interval(RECONCILE_CHECK_MINUTES, TimeUnit.MINUTES, refreshScheduler)
+            .filter { payloadDataManager.isBalanceReconcileDue() }
+            .subscribe { btcRefreshes.onNext(true) }
     }
 
+    // Collects requests until none have arrived for a while, or until the oldest has waited too long
+    private fun <T> PublishSubject<T>.debounced() =
+        publish { requests ->
+            requests.buffer(
+                requests.debounce(REFRESH_DEBOUNCE_MS, TimeUnit.MILLISECONDS, refreshScheduler)
+                    .mergeWith(requests.sample(REFRESH_MAX_DELAY_MS, TimeUnit.MILLISECONDS, refreshScheduler))
+            ).filter { it.isNotEmpty() }
+        }
+
     private fun checkForWalletChange(checksum: String?) {
         if (checksum == null) return
         val localChecksum = payloadDataManager.payloadChecksum
@@ -138,7 +185,7 @@ class CoinsWebSocketStrategy(
             payloadDataManager.tempPassword!!
         ).subscribeOn(Schedulers.io())
             .observeOn(AndroidSchedulers.mainThread())
-            .doOnComplete { this.updateBtcBalancesAndTransactions() }
+            .doOnComplete { btcRefreshes.onNext(true) }
             .doOnError { throwable ->
                 Timber.e(throwable)
                 if (throwable is DecryptionException) {
@@ -152,7 +199,7 @@ class CoinsWebSocketStrategy(
         inputs: List<Input>,
         outputs: List<Output>,
         hash: String?,
-        containsAddress: (address: String) -> Boolean?
+        isImportedAddress: (String) -> Boolean
     ): Pair<String?, BigDecimal> {
         var value = 0.toBigDecimal()
         var totalValue = 0.toBigDecimal()
@@ -166,7 +213,7 @@ class CoinsWebSocketStrategy(
                 if (output.xpub != null) {
                     totalValue -= value
                 } else if (output.addr != null) {
-                    if (containsAddress(output.addr) == true) {
+                    if (isImportedAddress(output.addr)) {
                         totalValue -= value
                     } else if (inAddr == null) {
                         inAddr = output.addr
@@ -189,41 +236,68 @@ class CoinsWebSocketStrategy(
             }
             if (output.xpub != null) {
                 totalValue += value
-            } else if (output.addr != null && containsAddress(output.addr) == true) {
+            } else if (output.addr != null && isImportedAddress(output.addr)) {
                 totalValue += value
             }
         }
         return inAddr to totalValue
     }
 
-    private fun handleBtcTransaction(response: String) {
-        val btcResponse = gson.fromJson(response, BtcBchResponse::class.java)
+    private fun handleBtcTransaction(btcResponse: BtcBchResponse) {
         val transaction = btcResponse.transaction ?: return
+        val isImportedAddress = payloadDataManager::isImportedAddress
 
         handleTransactionInputsAndOutputs(
             transaction.inputs,
             transaction.outputs,
-            transaction.hash
-        ) { x ->
-            payloadDataManager.wallet?.containsImportedAddress(x)
+            transaction.hash,
+            isImportedAddress
+        )
+
+        val deltas = btcBalanceDeltas(transaction, isImportedAddress)
+        val deltasApplied = transaction.hash != null && transaction.time != null && deltas != null &&
+            payloadDataManager.applyTransactionBalanceDeltas(transaction.hash, transaction.time, deltas)
+        btcRefreshes.onNext(!deltasApplied)
+    }
+
+    /**
+     * Balance credits for a transaction that only pays into the wallet. Returns null if the wallet
+     * funds any of the inputs, as the spend will already have been subtracted locally when it was
+     * sent from this device and only a full balance update can tell whether that's the case.
+     */
+    private fun btcBalanceDeltas(
+        transaction: BtcTransaction,
+        isImportedAddress: (String) -> Boolean
+    ): Map<String, BigInteger>? {
+        val isOwn = { output: Output ->
+            output.xpub != null || output.addr != null && isImportedAddress(output.addr)
+        }
+
+        if (transaction.inputs.any { input -> input.prevOut?.let(isOwn) == true }) {
+            return null
         }
 
-        updateBtcBalancesAndTransactions()
+        val deltas = HashMap<String, BigInteger>()
+        transaction.outputs.filter(isOwn).forEach { output ->
+            val key = output.xpub ?: output.addr!!
+            output.value?.let { value ->
+                deltas[key] = (deltas[key] ?: BigInteger.ZERO) + value.toBigInteger()
+            }
+        }
+        return deltas
     }
 
-    private fun handleBchTransaction(response: String) {
-        val bchResponse = gson.fromJson(response, BtcBchResponse::class.java)
+    private fun handleBchTransaction(bchResponse: BtcBchResponse) {
         val transaction = bchResponse.transaction ?: return
 
         val (inAddr, totalValue) =
             handleTransactionInputsAndOutputs(
                 transaction.inputs, transaction.outputs,
-                transaction.hash
-            ) { x ->
-                bchDataManager.getImportedAddressStringList().contains(x)
-            }
+                transaction.hash,
+                bchDataManager::isImportedAddress
+            )
 
-        updateBchBalancesAndTransactions()
+        bchRefreshes.onNext(Unit)
 
         val title = stringUtils.getString(R.string.app_name)
 
@@ -248,6 +322,13 @@ class CoinsWebSocketStrategy(
             }
     }
 
+    private fun updateBtcTransactions() {
+        compositeDisposable += payloadDataManager.updateAllTransactions()
+            .subscribe {
+                rxBus.emitEvent(ActionEvent::class.java, WalletAndTransactionsUpdatedEvent())
+            }
+    }
+
     private fun updateBchBalancesAndTransactions() {
         compositeDisposable += bchDataManager.updateAllBalances()
             .andThen(bchDataManager.getWalletTransactions(50, 0))
@@ -256,8 +337,7 @@ class CoinsWebSocketStrategy(
             }
     }
 
-    private fun handleEthTransaction(response: String) {
-        val ethResponse = gson.fromJson(response, EthResponse::class.java)
+    private fun handleEthTransaction(ethResponse: EthResponse) {
         val title = stringUtils.getString(R.string.app_name)
 
         if (ethResponse.transaction != null && ethResponse.getTokenType() == CryptoCurrency.ETHER) {
@@ -38,18 +38,26 @@ class AssetActivityRepository(
             }
     }
 
-    private val transactionCache = mutableListOf<ActivitySummaryItem>()
+    // The activity of the last load to complete, which is only ever replaced, never modified,
+    // along with the activity of a load still in progress so items shown from it can be found
+    @Volatile
+    private var transactionCache: ActivitySummaryList = emptyList()
+
+    @Volatile
+    private var partialCache: ActivitySummaryList = emptyList()
+
+    private val cachedItems: Sequence<ActivitySummaryItem>
+        get() = transactionCache.asSequence() + partialCache.asSequence()
 
     fun fetch(
         account: BlockchainAccount,
         isRefreshRequested: Boolean
     ): Observable<ActivitySummaryList> {
         val cacheMaybe = if (isRefreshRequested || isCacheExpired()) Maybe.empty() else getFromCache()
-        return Maybe.concat(
-            cacheMaybe,
+        return Observable.concat(
+            cacheMaybe.toObservable(),
             requestNetwork(isRefreshRequested)
         )
-            .toObservable()
             .map { list ->
                 list.filter { item ->
                     when (account) {
@@ -94,12 +102,12 @@ class AssetActivityRepository(
     }
 
     fun findCachedItem(cryptoCurrency: CryptoCurrency, txHash: String): ActivitySummaryItem? =
-        transactionCache.filterIsInstance<CryptoActivitySummaryItem>().find {
+        cachedItems.filterIsInstance<CryptoActivitySummaryItem>().find {
             it.cryptoCurrency == cryptoCurrency && it.txId == txHash
         }
 
     fun findCachedTradeItem(cryptoCurrency: CryptoCurrency, txHash: String): TradeActivitySummaryItem? =
-        transactionCache.filterIsInstance<TradeActivitySummaryItem>().find {
+        cachedItems.filterIsInstance<TradeActivitySummaryItem>().find {
             when (it.currencyPair) {
                 is CurrencyPair.CryptoCurrencyPair -> it.currencyPair.source == cryptoCurrency && it.txId == txHash
                 is CurrencyPair.CryptoToFiatCurrencyPair ->
@@ -108,48 +116,68 @@ class AssetActivityRepository(
         }
 
     fun findCachedItem(currency: String, txHash: String): FiatActivitySummaryItem? =
-        transactionCache.filterIsInstance<FiatActivitySummaryItem>().find {
+        cachedItems.filterIsInstance<FiatActivitySummaryItem>().find {
             it.currency == currency && it.txId == txHash
         }
 
     fun findCachedItemById(txHash: String): ActivitySummaryItem? =
-        transactionCache.find {
+        cachedItems.find {
             it.txId == txHash
         }
 
-    private fun requestNetwork(refreshRequested: Boolean): Maybe<ActivitySummaryList> {
+    private fun requestNetwork(refreshRequested: Boolean): Observable<ActivitySummaryList> {
         return if (refreshRequested || isCacheExpired()) {
-            getFromNetwork()
+            getUpdatesFromNetwork()
         } else {
-            Maybe.empty()
+            Observable.empty()
         }
     }
 
     override fun getFromNetwork(): Maybe<ActivitySummaryList> =
-        coincore.allWallets()
-            .flatMap { it.activity }
-            .doOnSuccess { activityList ->
-                // on error of activity returns onSuccess with empty list
-                if (activityList.isNotEmpty()) {
-                    transactionCache.clear()
-                    transactionCache.addAll(activityList)
+        getUpdatesFromNetwork().lastElement()
+
+    // Emits the activity loaded so far each time another account's activity arrives. The cache is
+    // only replaced once every account has been loaded, so a load disposed part way through, eg.
+    // by leaving the screen, never leaves a partial list to be served as if it were complete.
+    private fun getUpdatesFromNetwork(): Observable<ActivitySummaryList> =
+        Observable.defer {
+            var loaded: ActivitySummaryList = emptyList()
+
+            coincore.allWallets()
+                .flatMapObservable { group ->
+                    (group as? AllWalletsAccount)?.activityUpdates ?: group.activity.toObservable()
                 }
-                lastUpdatedTimestamp = System.currentTimeMillis()
-            }.map { list ->
-                // if network comes empty, but we have cache, return cache instead
-                if (list.isEmpty() && transactionCache.isNotEmpty()) {
-                    transactionCache
-                } else {
-                    list
+                .map { it.toList() }
+                .doOnNext { activityList ->
+                    loaded = activityList
+                    partialCache = activityList
+                }
+                .doOnComplete {
+                    // Accounts whose activity fails to load contribute nothing, so if none of them
+                    // loaded, keep the previous cache rather than replacing it with an empty list
+                    if (loaded.isNotEmpty()) {
+                        transactionCache = loaded
+                    }
+                    lastUpdatedTimestamp = System.currentTimeMillis()
+                }
+                .doFinally { partialCache = emptyList() }
+                .map { list ->
+                    // if network comes empty, but we have cache, return cache instead
+                    if (list.isEmpty()) {
+                        transactionCache
+                    } else {
+                        list
+                    }
                 }
-            }.toMaybe()
+        }
 
     override fun getFromCache(): Maybe<ActivitySummaryList> {
         return Maybe.just(transactionCache)
     }
 
     private fun doOnLogout() {
-        transactionCache.clear()
+        transactionCache = emptyList()
+        partialCache = emptyList()
         rxBus.unregister(AuthEvent::class.java, event)
     }
 }
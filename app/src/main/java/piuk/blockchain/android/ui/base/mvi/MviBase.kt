@@ -9,60 +9,155 @@ import io.reactivex.disposables.CompositeDisposable
 
 import io.reactivex.disposables.Disposable
 import io.reactivex.rxkotlin.plusAssign
-import io.reactivex.rxkotlin.subscribeBy
 import io.reactivex.schedulers.Schedulers
-import io.reactivex.subjects.ReplaySubject
 import piuk.blockchain.androidcore.data.api.EnvironmentConfig
 import timber.log.Timber
+import java.util.ArrayDeque
 
 interface MviState
 
 interface MviIntent<S : MviState> {
     fun reduce(oldState: S): S
     fun isValidFor(oldState: S): Boolean = true
+
+    // Intents which only carry the latest value of something, such as a price or the amount being
+    // typed, can be replaced by a newer one if it arrives before they have been processed.
+    fun isSupersededBy(next: MviIntent<S>): Boolean = false
 }
 
 abstract class MviModel<S : MviState, I : MviIntent<S>>(
     initialState: S,
     observeScheduler: Scheduler,
     private val environmentConfig: EnvironmentConfig,
-    private val crashLogger: CrashLogger
+    private val crashLogger: CrashLogger,
+    private val intentQueueCapacity: Int = DEFAULT_INTENT_QUEUE_CAPACITY
 ) {
 
+    data class ReduceStats(
+        val count: Long,
+        val totalNanos: Long,
+        val maxNanos: Long
+    ) {
+        val averageNanos: Long
+            get() = if (count > 0) totalNanos / count else 0
+    }
+
     private val _state: BehaviorRelay<S> = BehaviorRelay.createDefault(initialState)
     val state: Observable<S> = _state.distinctUntilChanged().doOnNext {
         onStateUpdate(it)
     }.observeOn(observeScheduler)
 
     protected val disposables = CompositeDisposable()
-    private val intents = ReplaySubject.create<I>()
-
-    init {
-        disposables +=
-            intents.distinctUntilChanged(::distinctIntentFilter)
-                .observeOn(Schedulers.computation())
-                .scan(initialState) { previousState, intent ->
-                    Timber.d("***> Model: ProcessIntent: ${intent.javaClass.simpleName}")
-                    if (intent.isValidFor(previousState)) {
-                        performAction(previousState, intent)?.let { disposables += it }
-                        intent.reduce(previousState)
-                    } else {
-                        Timber.d("***> Model: Dropping invalid Intent: ${intent.javaClass.simpleName}")
-                        previousState
-                    }
-                }
-                .subscribeOn(Schedulers.computation())
-                .subscribeBy(
-                    onNext = { newState ->
-                        _state.accept(newState)
-                    },
-                    onError = ::onScanLoopError
-                )
+
+    // Intents waiting to be processed, and whether a worker is already draining them. Both are
+    // guarded by the queue. Only intents which haven't been processed yet are held on to.
+    private val pendingIntents = ArrayDeque<I>()
+    private var draining = false
+    private val worker = Schedulers.computation().createWorker()
+
+    // Only touched while draining, which never happens on more than one thread at a time
+    private var currentState = initialState
+    private var lastIntent: I? = null
+
+    private val reduceStats = HashMap<Class<*>, ReduceStats>()
+
+    fun process(intent: I) {
+        // Nothing is processed once the model has been destroyed
+        if (worker.isDisposed) {
+            return
+        }
+        val startDrain = synchronized(pendingIntents) {
+            if (!enqueue(intent)) {
+                return onIntentQueueFull(intent)
+            }
+            val idle = !draining
+            draining = true
+            idle
+        }
+        if (startDrain) {
+            worker.schedule { drain() }
+        }
     }
 
-    fun process(intent: I) = intents.onNext(intent)
     fun destroy() {
         disposables.clear()
+        worker.dispose()
+    }
+
+    // Time spent reducing each type of intent, to find the ones which hold up the queue
+    fun reduceStats(): Map<String, ReduceStats> =
+        synchronized(reduceStats) {
+            reduceStats.mapKeys { (type, _) -> type.simpleName }
+        }
+
+    private fun enqueue(intent: I): Boolean {
+        val superseded = pendingIntents.iterator()
+        while (superseded.hasNext()) {
+            if (superseded.next().isSupersededBy(intent)) {
+                superseded.remove()
+                Timber.d("***> Model: Coalescing Intent: ${intent.javaClass.simpleName}")
+                break
+            }
+        }
+        return if (pendingIntents.size < intentQueueCapacity) {
+            pendingIntents.addLast(intent)
+            true
+        } else {
+            false
+        }
+    }
+
+    private fun drain() {
+        while (true) {
+            val intent = synchronized(pendingIntents) {
+                pendingIntents.pollFirst().also { if (it == null) draining = false }
+            } ?: return
+
+            try {
+                processIntent(intent)
+            } catch (t: Throwable) {
+                // As with any other failed stream, nothing more is processed once the loop fails
+                worker.dispose()
+                onScanLoopError(t)
+                return
+            }
+        }
+    }
+
+    private fun processIntent(intent: I) {
+        val previousIntent = lastIntent
+        lastIntent = intent
+        if (previousIntent != null && distinctIntentFilter(previousIntent, intent)) {
+            return
+        }
+
+        val previousState = currentState
+        Timber.d("***> Model: ProcessIntent: ${intent.javaClass.simpleName}")
+        if (intent.isValidFor(previousState)) {
+            performAction(previousState, intent)?.let { disposables += it }
+
+            val start = System.nanoTime()
+            val newState = intent.reduce(previousState)
+            recordReduceTime(intent, System.nanoTime() - start)
+
+            if (newState !== previousState) {
+                currentState = newState
+                _state.accept(newState)
+            }
+        } else {
+            Timber.d("***> Model: Dropping invalid Intent: ${intent.javaClass.simpleName}")
+        }
+    }
+
+    private fun recordReduceTime(intent: I, nanos: Long) {
+        synchronized(reduceStats) {
+            val stats = reduceStats[intent.javaClass]
+            reduceStats[intent.javaClass] = if (stats == null) {
+                ReduceStats(1, nanos, nanos)
+            } else {
+                ReduceStats(stats.count + 1, stats.totalNanos + nanos, maxOf(stats.maxNanos, nanos))
+            }
+        }
     }
 
     protected open fun distinctIntentFilter(previousIntent: I, nextIntent: I): Boolean {
@@ -78,7 +173,23 @@ abstract class MviModel<S : MviState, I : MviIntent<S>>(
         }
     }
 
+    @CallSuper
+    protected open fun onIntentQueueFull(intent: I) {
+        val e = IllegalStateException(
+            "Intent queue full, dropping ${intent.javaClass.simpleName}"
+        )
+        Timber.e(e)
+        crashLogger.logException(e)
+        if (environmentConfig.isRunningInDebugMode()) {
+            throw e
+        }
+    }
+
     protected open fun onStateUpdate(s: S) {}
 
     protected abstract fun performAction(previousState: S, intent: I): Disposable?
+
+    companion object {
+        const val DEFAULT_INTENT_QUEUE_CAPACITY = 256
+    }
 }
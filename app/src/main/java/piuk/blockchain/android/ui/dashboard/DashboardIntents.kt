@@ -134,6 +134,9 @@ class PriceUpdate(
     private val latestPrice: ExchangeRate,
     private val oldPrice: ExchangeRate
 ) : DashboardIntent() {
+    override fun isSupersededBy(next: MviIntent<DashboardState>): Boolean =
+        next is PriceUpdate && next.cryptoCurrency == cryptoCurrency
+
     override fun reduce(oldState: DashboardState): DashboardState {
         val oldAsset = oldState.assets[cryptoCurrency]
         val newAsset = updateAsset(oldAsset, latestPrice, oldPrice)
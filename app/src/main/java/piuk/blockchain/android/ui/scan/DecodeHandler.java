@@ -24,6 +24,7 @@ import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
 import com.google.zxing.common.HybridBinarizer;
 
+import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
@@ -42,6 +43,8 @@ final class DecodeHandler extends Handler {
     private final MultiFormatReader multiFormatReader;
     private boolean running = true;
     private RotationUtil _rotationHelper;
+    // The viewfinder rarely changes size, so the same buffer is decoded from on every frame
+    private byte[] regionBuffer = new byte[0];
 
     DecodeHandler(QrScanActivity activity, Map<DecodeHintType, Object> hints) {
         _rotationHelper = new RotationUtil(activity);
@@ -87,14 +90,8 @@ final class DecodeHandler extends Handler {
      */
     private void decode(byte[] data, int width, int height) {
         long start = System.currentTimeMillis();
-        byte[] rotatedData = _rotationHelper.rotateImageData(data, width, height);
-        if (_rotationHelper.flipWidthAndHeight()) {
-            int tmp = width;
-            width = height;
-            height = tmp;
-        }
         Result rawResult = null;
-        PlanarYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(rotatedData, width, height);
+        PlanarYUVLuminanceSource source = buildLuminanceSource(data, width, height);
         if (source != null) {
             BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
             try {
@@ -125,4 +122,37 @@ final class DecodeHandler extends Handler {
         }
     }
 
+    /**
+     * Copies the part of the frame inside the viewfinder, rotated upright, into the region buffer.
+     * Cropping before rotating means only the pixels which are decoded are ever touched.
+     *
+     * @return A source over the region buffer, or null if the viewfinder isn't known yet
+     */
+    private PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
+        Rect rect = activity.getCameraManager().getTargetRectInPreview();
+        if (rect == null) {
+            return null;
+        }
+
+        int regionWidth = rect.width();
+        int regionHeight = rect.height();
+        if (regionBuffer.length != regionWidth * regionHeight) {
+            regionBuffer = new byte[regionWidth * regionHeight];
+        }
+        RotationUtil.rotateRegion(
+                data,
+                width,
+                height,
+                _rotationHelper.getDisplayOrientationForCameraParameters(),
+                rect.left,
+                rect.top,
+                regionWidth,
+                regionHeight,
+                regionBuffer
+        );
+        return new PlanarYUVLuminanceSource(
+                regionBuffer, regionWidth, regionHeight, 0, 0, regionWidth, regionHeight, false
+        );
+    }
+
 }
\ No newline at end of file
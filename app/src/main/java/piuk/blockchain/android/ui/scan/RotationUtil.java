@@ -28,33 +28,6 @@ public class RotationUtil {
         _deviceRotationSetting = r;
     }
 
-    public boolean flipWidthAndHeight() {
-        switch (_deviceRotationSetting) {
-            case Surface.ROTATION_0:
-                // Rotated 90 degrees compared to ZXing's default mode if device is in
-                // portrait mode.
-                // Flip if in native portrait mode
-                return _deviceOrientation == Configuration.ORIENTATION_PORTRAIT;
-            case Surface.ROTATION_90:
-                // Rotated 0 degrees compared to ZXing's default mode if device is in
-                // portrait mode
-                // Flip if in native landscape mode
-                return _deviceOrientation == Configuration.ORIENTATION_LANDSCAPE;
-            case Surface.ROTATION_180:
-                // Rotated 270 degrees compared to ZXing's default mode if device is in
-                // portrait mode
-                // Flip if in portrait mode
-                return _deviceOrientation == Configuration.ORIENTATION_PORTRAIT;
-            case Surface.ROTATION_270:
-                // Rotated 180 degrees compared to ZXing's default mode if device is in
-                // portrait mode
-                // Flip if in native landscape mode
-                return _deviceOrientation == Configuration.ORIENTATION_LANDSCAPE;
-            default:
-                return false;
-        }
-    }
-
     public int getDisplayOrientationForCameraParameters() {
         if (_deviceOrientation == Configuration.ORIENTATION_PORTRAIT) {
             switch (_deviceRotationSetting) {
@@ -85,46 +58,68 @@ public class RotationUtil {
         }
     }
 
-    public byte[] rotateImageData(byte[] data, int width, int height) {
-        switch (getDisplayOrientationForCameraParameters()) {
-            case 0:
-                return data;
+    /**
+     * Copies a region of a frame, as it would appear once the frame is rotated by {@code degrees},
+     * into {@code out}. Only the pixels inside the region are read, so the rest of the frame never
+     * has to be rotated or copied.
+     *
+     * @param data         The frame's luminance plane
+     * @param width        The width of the frame
+     * @param height       The height of the frame
+     * @param degrees      The clockwise rotation, one of 0, 90, 180 or 270
+     * @param left         The left edge of the region in the rotated frame
+     * @param top          The top edge of the region in the rotated frame
+     * @param regionWidth  The width of the region
+     * @param regionHeight The height of the region
+     * @param out          Receives the region row by row, and must hold at least
+     *                     {@code regionWidth * regionHeight} bytes
+     */
+    public static void rotateRegion(byte[] data,
+                                    int width,
+                                    int height,
+                                    int degrees,
+                                    int left,
+                                    int top,
+                                    int regionWidth,
+                                    int regionHeight,
+                                    byte[] out) {
+        boolean flipped = degrees == 90 || degrees == 270;
+        int rotatedWidth = flipped ? height : width;
+        int rotatedHeight = flipped ? width : height;
+        if (left < 0 || top < 0 || left + regionWidth > rotatedWidth || top + regionHeight > rotatedHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+
+        int i = 0;
+        switch (degrees) {
             case 90:
-                return rotate90(data, width, height);
+                for (int y = top; y < top + regionHeight; y++) {
+                    for (int x = left; x < left + regionWidth; x++) {
+                        out[i++] = data[(height - x - 1) * width + y];
+                    }
+                }
+                break;
             case 180:
-                return rotate180(data, width, height);
+                for (int y = top; y < top + regionHeight; y++) {
+                    for (int x = left; x < left + regionWidth; x++) {
+                        out[i++] = data[(height - y - 1) * width + width - x - 1];
+                    }
+                }
+                break;
             case 270:
-                return rotate270(data, width, height);
+                for (int y = top; y < top + regionHeight; y++) {
+                    for (int x = left; x < left + regionWidth; x++) {
+                        out[i++] = data[x * width + width - y - 1];
+                    }
+                }
+                break;
             default:
-                return data;
-        }
-    }
-
-    private static byte[] rotate90(byte[] data, int width, int height) {
-        byte[] rotatedData = new byte[data.length];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++)
-                rotatedData[x * height + height - y - 1] = data[x + y * width];
-        }
-        return rotatedData;
-    }
-
-    private static byte[] rotate270(byte[] data, int width, int height) {
-        byte[] rotatedData = new byte[data.length];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++)
-                rotatedData[(width - x - 1) * height + y] = data[x + y * width];
-        }
-        return rotatedData;
-    }
-
-    private static byte[] rotate180(byte[] data, int width, int height) {
-        byte[] rotatedData = new byte[data.length];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++)
-                rotatedData[(width - x - 1) + width * (height - y - 1)] = data[x + y * width];
+                for (int y = top; y < top + regionHeight; y++) {
+                    System.arraycopy(data, y * width + left, out, i, regionWidth);
+                    i += regionWidth;
+                }
+                break;
         }
-        return rotatedData;
     }
 
-}
\ No newline at end of file
+}
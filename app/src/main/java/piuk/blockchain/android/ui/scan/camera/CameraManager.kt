@@ -17,6 +17,7 @@ package piuk.blockchain.android.ui.scan.camera
 
 import android.content.Context
 import android.content.res.Configuration
+import android.graphics.ImageFormat
 import android.graphics.Point
 import android.graphics.Rect
 import android.hardware.Camera
@@ -24,7 +25,6 @@ import android.os.Handler
 import android.view.Surface
 import android.view.SurfaceHolder
 import androidx.appcompat.app.AppCompatActivity
-import com.google.zxing.PlanarYUVLuminanceSource
 import piuk.blockchain.android.ui.scan.camera.open.OpenCameraManager
 import timber.log.Timber
 import java.io.IOException
@@ -51,6 +51,7 @@ class CameraManager(private val context: Context) {
     var targetRect: Rect? = null
     var framingViewSize = Point()
     private var framingRectInPreview: Rect? = null
+    private var frameBuffer: ByteArray? = null
     private var initialized = false
     private var previewing = false
 
@@ -125,6 +126,7 @@ class CameraManager(private val context: Context) {
         // requested by intent is forgotten.
         targetRect = null
         framingRectInPreview = null
+        frameBuffer = null
     }
 
     /**
@@ -149,6 +151,7 @@ class CameraManager(private val context: Context) {
         autoFocusManager = null
 
         if (camera != null && previewing) {
+            camera!!.setPreviewCallbackWithBuffer(null)
             camera!!.stopPreview()
             previewCallback.setHandler(null, 0)
             previewing = false
@@ -177,16 +180,25 @@ class CameraManager(private val context: Context) {
         val theCamera = camera
         if (theCamera != null && previewing) {
             previewCallback.setHandler(handler, message)
-            theCamera.setOneShotPreviewCallback(previewCallback)
+            // Only one buffer is ever queued, so this delivers a single frame, like a one shot
+            // callback would, but without the camera allocating a new frame every time.
+            theCamera.addCallbackBuffer(getFrameBuffer(theCamera))
+            theCamera.setPreviewCallbackWithBuffer(previewCallback)
         }
     } // Called early, before init even finished
 
+    private fun getFrameBuffer(camera: Camera): ByteArray =
+        frameBuffer ?: camera.parameters.let { parameters ->
+            val size = parameters.previewSize
+            ByteArray(size.width * size.height * ImageFormat.getBitsPerPixel(parameters.previewFormat) / 8)
+        }.also { frameBuffer = it }
+
     /**
      * Like [.getTargetRect] but coordinates are in terms of the preview frame,
      * not UI / screen.
      */
     @get:Synchronized
-    private val targetRectInPreview: Rect?
+    val targetRectInPreview: Rect?
         get() {
             if (framingRectInPreview == null) {
                 val framingRect = targetRect
@@ -216,28 +228,6 @@ class CameraManager(private val context: Context) {
             return framingRectInPreview
         }
 
-    /**
-     * A factory method to build the appropriate LuminanceSource object based on the format
-     * of the preview buffers, as described by Camera.Parameters.
-     *
-     * @param data A preview frame.
-     * @param width The width of the image.
-     * @param height The height of the image.
-     * @return A PlanarYUVLuminanceSource instance.
-     */
-    fun buildLuminanceSource(
-        data: ByteArray?,
-        width: Int,
-        height: Int
-    ): PlanarYUVLuminanceSource? {
-        val rect = targetRectInPreview ?: return null
-        // Go ahead and assume it's YUV rather than die.
-        return PlanarYUVLuminanceSource(
-            data, width, height, rect.left, rect.top,
-            rect.width(), rect.height(), false
-        )
-    }
-
     companion object {
         fun setCameraDisplayOrientation(
             activity: AppCompatActivity,
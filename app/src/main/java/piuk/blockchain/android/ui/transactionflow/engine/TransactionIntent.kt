@@ -251,6 +251,9 @@ sealed class TransactionIntent : MviIntent<TransactionState> {
     class FiatRateUpdated(
         private val fiatRate: ExchangeRate
     ) : TransactionIntent() {
+        override fun isSupersededBy(next: MviIntent<TransactionState>): Boolean =
+            next is FiatRateUpdated
+
         override fun reduce(oldState: TransactionState): TransactionState =
             oldState.copy(
                 fiatRate = fiatRate
@@ -260,6 +263,9 @@ sealed class TransactionIntent : MviIntent<TransactionState> {
     class CryptoRateUpdated(
         private val targetRate: ExchangeRate
     ) : TransactionIntent() {
+        override fun isSupersededBy(next: MviIntent<TransactionState>): Boolean =
+            next is CryptoRateUpdated
+
         override fun reduce(oldState: TransactionState): TransactionState =
             oldState.copy(
                 targetRate = targetRate
@@ -302,6 +308,9 @@ sealed class TransactionIntent : MviIntent<TransactionState> {
     class AmountChanged(
         val amount: Money
     ) : TransactionIntent() {
+        override fun isSupersededBy(next: MviIntent<TransactionState>): Boolean =
+            next is AmountChanged
+
         override fun reduce(oldState: TransactionState): TransactionState =
             oldState.copy(
                 nextEnabled = false,
@@ -3,16 +3,24 @@ package piuk.blockchain.android.util
 import android.content.Context
 import android.content.Intent
 import com.blockchain.ui.ActivityIndicator
+import info.blockchain.wallet.multiaddress.TransactionSummaryStore
 import info.blockchain.wallet.payload.PayloadManagerWiper
+import okhttp3.Cache
 import piuk.blockchain.androidcore.data.access.AccessState
+import piuk.blockchain.androidcore.data.ethereum.datastores.EthFeeStore
 import piuk.blockchain.androidcore.utils.PersistentPrefs
 import piuk.blockchain.androidcore.utils.extensions.isValidGuid
+import timber.log.Timber
+import java.io.IOException
 
 class AppUtil(
     private val context: Context,
     private var payloadManager: PayloadManagerWiper,
     private var accessState: AccessState,
-    private val prefs: PersistentPrefs
+    private val prefs: PersistentPrefs,
+    private val transactionSummaryStore: TransactionSummaryStore,
+    private val ethFeeStore: EthFeeStore,
+    private val httpCache: Cache
 ) {
     val isSane: Boolean
         get() {
@@ -33,9 +41,21 @@ class AppUtil(
     fun clearCredentials() {
         payloadManager.wipe()
         prefs.clear()
+        transactionSummaryStore.clear()
+        ethFeeStore.clear()
+        clearHttpCache()
         accessState.forgetWallet()
     }
 
+    // Cached responses include the wallet's addresses and transactions
+    private fun clearHttpCache() {
+        try {
+            httpCache.evictAll()
+        } catch (e: IOException) {
+            Timber.e(e)
+        }
+    }
+
     fun clearCredentialsAndRestart(launcherActivity: Class<*>) {
         clearCredentials()
         restartApp(launcherActivity)
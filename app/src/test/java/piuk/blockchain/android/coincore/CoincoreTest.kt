@@ -0,0 +1,88 @@
+package piuk.blockchain.android.coincore
+
+import com.blockchain.android.testutils.rxInit
+import com.blockchain.logging.CrashLogger
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import info.blockchain.balance.CryptoCurrency
+import io.reactivex.Completable
+import io.reactivex.subjects.CompletableSubject
+import org.amshove.kluent.itReturns
+import org.junit.Rule
+import org.junit.Test
+
+class CoincoreTest {
+
+    @get:Rule
+    val initSchedulers = rxInit {
+        mainTrampoline()
+        ioTrampoline()
+        computationTrampoline()
+    }
+
+    private val crashLogger: CrashLogger = mock()
+
+    private fun asset(ccy: CryptoCurrency, init: Completable = Completable.complete()): CryptoAsset =
+        mock {
+            on { asset } itReturns ccy
+            on { init() } itReturns init
+        }
+
+    private fun coincore(vararg assets: CryptoAsset) =
+        Coincore(
+            payloadManager = mock(),
+            assetMap = assets.associateBy { it.asset },
+            txProcessorFactory = mock(),
+            defaultLabels = mock(),
+            fiatAsset = mock(),
+            crashLogger = crashLogger
+        )
+
+    @Test
+    fun `erc20 assets wait for ether while other assets start straight away`() {
+        val ethInit = CompletableSubject.create()
+        val pax = asset(CryptoCurrency.PAX)
+        val eth = asset(CryptoCurrency.ETHER, ethInit)
+        val btc = asset(CryptoCurrency.BTC)
+
+        val test = coincore(pax, eth, btc).init().test()
+
+        verify(btc).init()
+        verify(eth).init()
+        verify(pax, never()).init()
+        test.assertNotComplete()
+
+        ethInit.onComplete()
+
+        verify(pax).init()
+        test.assertComplete()
+        verify(crashLogger, times(3)).logEvent(any())
+    }
+
+    @Test
+    fun `ether is initialised once however many tokens depend on it`() {
+        val eth = asset(CryptoCurrency.ETHER)
+
+        coincore(asset(CryptoCurrency.PAX), asset(CryptoCurrency.USDT), eth)
+            .init()
+            .test()
+            .assertComplete()
+
+        verify(eth).init()
+    }
+
+    @Test
+    fun `a failed asset fails init and is logged`() {
+        val error = Exception("No wallet")
+
+        coincore(asset(CryptoCurrency.BTC, Completable.error(error)))
+            .init()
+            .test()
+            .assertError(error)
+
+        verify(crashLogger).logException(any(), any())
+    }
+}
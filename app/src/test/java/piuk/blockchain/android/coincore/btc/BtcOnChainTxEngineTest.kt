@@ -8,6 +8,7 @@ import com.blockchain.testutils.bitcoin
 import com.blockchain.testutils.satoshi
 import com.nhaarman.mockito_kotlin.atLeastOnce
 import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.times
 import com.nhaarman.mockito_kotlin.verify
 import com.nhaarman.mockito_kotlin.verifyNoMoreInteractions
 import com.nhaarman.mockito_kotlin.whenever
@@ -37,10 +38,13 @@ import piuk.blockchain.android.coincore.PendingTx
 import piuk.blockchain.android.coincore.TransactionTarget
 import piuk.blockchain.android.coincore.ValidationState
 import piuk.blockchain.android.coincore.impl.injectMocks
+import piuk.blockchain.androidcore.data.events.ActionEvent
+import piuk.blockchain.androidcore.data.events.WalletAndTransactionsUpdatedEvent
 import piuk.blockchain.androidcore.data.exchangerate.ExchangeRateDataManager
 import piuk.blockchain.androidcore.data.fees.FeeDataManager
 import piuk.blockchain.androidcore.data.payload.PayloadDataManager
 import piuk.blockchain.androidcore.data.payments.SendDataManager
+import piuk.blockchain.androidcore.data.rxjava.RxBus
 
 class BtcOnChainTxEngineTest {
 
@@ -72,6 +76,8 @@ class BtcOnChainTxEngineTest {
         on { selectedFiatCurrency } itReturns SELECTED_FIAT
     }
 
+    private val rxBus = RxBus()
+
     private val subject = BtcOnChainTxEngine(
         btcDataManager = btcDataManager,
         sendDataManager = sendDataManager,
@@ -85,6 +91,9 @@ class BtcOnChainTxEngineTest {
     fun setup() {
         injectMocks(
             module {
+                factory {
+                    rxBus
+                }
                 scope(payloadScopeQualifier) {
                     factory {
                         currencyPrefs
@@ -393,6 +402,85 @@ class BtcOnChainTxEngineTest {
         noMoreInteractions(sourceAccount, txTarget)
     }
 
+    @Test
+    fun `amount updates select coins from the session snapshot`() {
+        // Arrange
+        val firstAmount = 2.bitcoin()
+        val secondAmount = 3.bitcoin()
+        val feePerKb = (FEE_REGULAR * 1000).satoshi()
+        val totalFee = (FEE_REGULAR * 1000 * 3).satoshi()
+        val totalBalance = 21.bitcoin()
+        val totalSweepable = totalBalance - totalFee
+
+        val sourceAccount = mockSourceAccount(totalBalance, 19.bitcoin())
+        val txTarget: CryptoAddress = mock {
+            on { asset } itReturns ASSET
+            on { address } itReturns TARGET_ADDRESS
+        }
+
+        whenever(btcDataManager.getAddressBalance(SOURCE_XPUB)).thenReturn(totalBalance)
+
+        val unspentOutputs: UnspentOutputs = mock {
+            on { unspentOutputs } itReturns arrayListOf<UnspentOutput>(mock(), mock())
+        }
+        whenever(sendDataManager.getUnspentBtcOutputs(SOURCE_XPUB))
+            .thenReturn(Observable.just(unspentOutputs))
+
+        whenever(sendDataManager.getMaximumAvailable(ASSET, unspentOutputs, feePerKb))
+            .thenReturn(totalSweepable as CryptoValue)
+
+        val utxoBundle: SpendableUnspentOutputs = mock {
+            on { absoluteFee } itReturns totalFee.toBigInteger()
+        }
+        whenever(sendDataManager.getSpendableCoins(unspentOutputs, firstAmount, feePerKb))
+            .thenReturn(utxoBundle)
+        whenever(sendDataManager.getSpendableCoins(unspentOutputs, secondAmount, feePerKb))
+            .thenReturn(utxoBundle)
+
+        subject.start(
+            sourceAccount,
+            txTarget,
+            exchangeRates
+        )
+
+        val pendingTx = PendingTx(
+            amount = CryptoValue.zero(ASSET),
+            totalBalance = CryptoValue.zero(ASSET),
+            availableBalance = CryptoValue.zero(ASSET),
+            fees = CryptoValue.zero(ASSET),
+            selectedFiat = SELECTED_FIAT,
+            feeLevel = FeeLevel.Regular,
+            availableFeeLevels = EXPECTED_AVAILABLE_FEE_LEVELS
+        )
+
+        // Act
+        subject.doUpdateAmount(firstAmount, pendingTx)
+            .test()
+            .assertValue { it.amount == firstAmount && it.availableBalance == totalSweepable }
+
+        subject.doUpdateAmount(secondAmount, pendingTx)
+            .test()
+            .assertValue { it.amount == secondAmount && it.availableBalance == totalSweepable }
+
+        // Assert
+        verify(sourceAccount).accountBalance
+        verify(feeManager).btcFeeOptions
+        verify(sendDataManager).getUnspentBtcOutputs(SOURCE_XPUB)
+        verify(sendDataManager).getMaximumAvailable(ASSET, unspentOutputs, feePerKb)
+        verify(sendDataManager).getSpendableCoins(unspentOutputs, firstAmount, feePerKb)
+        verify(sendDataManager).getSpendableCoins(unspentOutputs, secondAmount, feePerKb)
+        verifyNoMoreInteractions(sendDataManager)
+
+        // A wallet update, eg from the websocket, means the snapshot is fetched again
+        rxBus.emitEvent(ActionEvent::class.java, WalletAndTransactionsUpdatedEvent())
+
+        subject.doUpdateAmount(secondAmount, pendingTx)
+            .test()
+            .assertValue { it.amount == secondAmount && it.totalBalance == totalBalance }
+
+        verify(sendDataManager, times(2)).getUnspentBtcOutputs(SOURCE_XPUB)
+    }
+
     @Test
     fun `update fee level from REGULAR to PRIORITY updates the pendingTx correctly`() {
         // Arrange
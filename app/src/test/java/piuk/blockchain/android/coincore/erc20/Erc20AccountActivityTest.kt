@@ -16,7 +16,6 @@ import info.blockchain.balance.CryptoCurrency
 import info.blockchain.balance.CryptoValue
 import info.blockchain.balance.FiatValue
 import info.blockchain.wallet.ethereum.data.EthLatestBlockNumber
-import info.blockchain.wallet.ethereum.data.EthTransaction
 import info.blockchain.wallet.multiaddress.TransactionSummary
 import io.reactivex.Observable
 import io.reactivex.Single
@@ -94,13 +93,8 @@ class Erc20AccountActivityTest {
             .thenReturn(Observable.just(listOf(erc20Transfer)))
 
         whenever(ethDataManager
-            .getTransaction("0xfd7d583fa54bf55f6cfbfec97c0c55cc6af8c121b71addb7d06a9e1e305ae8ff"))
-            .thenReturn(Observable.just(
-                EthTransaction(
-                    gasPrice = 100.toBigInteger(),
-                    gasUsed = 2.toBigInteger()
-            )
-        ))
+            .getTransactionFee("0xfd7d583fa54bf55f6cfbfec97c0c55cc6af8c121b71addb7d06a9e1e305ae8ff"))
+            .thenReturn(Observable.just(200.toBigInteger()))
 
         whenever(ethDataManager.fetchErc20DataModel(CryptoCurrency.DGLD))
             .thenReturn(Observable.just(mock()))
@@ -0,0 +1,98 @@
+package piuk.blockchain.android.coincore.impl
+
+import com.blockchain.android.testutils.rxInit
+import com.blockchain.wallet.DefaultLabels
+import com.nhaarman.mockito_kotlin.mock
+import io.reactivex.Single
+import io.reactivex.subjects.SingleSubject
+import org.amshove.kluent.`should equal`
+import org.amshove.kluent.itReturns
+import org.junit.Rule
+import org.junit.Test
+import piuk.blockchain.android.coincore.ActivitySummaryList
+import piuk.blockchain.android.coincore.SingleAccount
+import piuk.blockchain.android.coincore.TestNonCustodialSummaryItem
+
+class AllWalletsAccountTest {
+
+    @get:Rule
+    val initSchedulers = rxInit {
+        mainTrampoline()
+        ioTrampoline()
+    }
+
+    private val labels: DefaultLabels = mock {
+        on { getAllWalletLabel() } itReturns "All Wallets"
+    }
+
+    private fun item(timeStampMs: Long, txId: String = timeStampMs.toString()) =
+        TestNonCustodialSummaryItem(timeStampMs = timeStampMs, txId = txId)
+
+    private fun account(activity: Single<ActivitySummaryList>): SingleAccount =
+        mock {
+            on { this.activity } itReturns activity
+        }
+
+    @Test
+    fun `sorted lists are merged newest first`() {
+        val a = listOf(item(9), item(5), item(1))
+        val b = listOf(item(8), item(7), item(2))
+        val c = listOf(item(6))
+
+        mergeSorted(listOf(a, emptyList(), b, c)).map { it.timeStampMs } `should equal`
+            listOf(9L, 8L, 7L, 6L, 5L, 2L, 1L)
+    }
+
+    @Test
+    fun `equal items keep the order of their lists`() {
+        val first = item(5, "first")
+        val second = item(5, "second")
+
+        mergeSorted(listOf(listOf(first), listOf(second))) `should equal` listOf(first, second)
+    }
+
+    @Test
+    fun `unsorted account activity is sorted before merging`() {
+        val subject = AllWalletsAccount(
+            listOf(
+                account(Single.just(listOf(item(1), item(3)))),
+                account(Single.just(listOf(item(2))))
+            ),
+            labels
+        )
+
+        subject.activity.test()
+            .assertValue { list -> list.map { it.timeStampMs } == listOf(3L, 2L, 1L) }
+    }
+
+    @Test
+    fun `activity updates are emitted as each account answers`() {
+        val slow = SingleSubject.create<ActivitySummaryList>()
+        val subject = AllWalletsAccount(
+            listOf(
+                account(slow),
+                account(Single.just(listOf(item(4), item(2)))),
+                account(Single.error(Exception("Unavailable")))
+            ),
+            labels
+        )
+
+        val test = subject.activityUpdates.test()
+        test.assertNotComplete()
+        test.assertValueCount(2)
+
+        slow.onSuccess(listOf(item(3), item(1)))
+
+        test.assertComplete()
+        test.values().last().map { it.timeStampMs } `should equal` listOf(4L, 3L, 2L, 1L)
+    }
+
+    @Test
+    fun `no accounts emits an empty list`() {
+        AllWalletsAccount(emptyList(), labels)
+            .activityUpdates
+            .test()
+            .assertValue(emptyList())
+            .assertComplete()
+    }
+}
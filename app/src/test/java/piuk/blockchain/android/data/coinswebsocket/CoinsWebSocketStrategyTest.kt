@@ -5,9 +5,12 @@ import com.blockchain.network.websocket.ConnectionEvent
 import com.blockchain.network.websocket.WebSocket
 import com.google.gson.Gson
 import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.eq
 import com.nhaarman.mockito_kotlin.mock
 import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.times
 import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.whenever
 import info.blockchain.balance.CryptoCurrency
 import info.blockchain.wallet.ethereum.Erc20TokenData
 import info.blockchain.wallet.ethereum.EthereumWallet
@@ -15,6 +18,7 @@ import info.blockchain.wallet.ethereum.data.EthAddressResponseMap
 import info.blockchain.wallet.payload.data.Wallet
 import io.reactivex.Completable
 import io.reactivex.Observable
+import io.reactivex.schedulers.TestScheduler
 import io.reactivex.subjects.PublishSubject
 import org.amshove.kluent.`it returns`
 import org.amshove.kluent.itReturns
@@ -33,6 +37,7 @@ import piuk.blockchain.androidcore.data.ethereum.models.CombinedEthModel
 import piuk.blockchain.androidcore.data.payload.PayloadDataManager
 import piuk.blockchain.androidcore.data.rxjava.RxBus
 import piuk.blockchain.androidcore.utils.PersistentPrefs
+import java.util.concurrent.TimeUnit
 
 class CoinsWebSocketStrategyTest {
 
@@ -107,6 +112,8 @@ class CoinsWebSocketStrategyTest {
         on { assetName(CryptoCurrency.DGLD) } itReturns "Wrapped-DGLD"
     }
 
+    private val refreshScheduler = TestScheduler()
+
     private val mockWebSocket: WebSocket<String, String> = mock()
     private val webSocket = FakeWebSocket(mockWebSocket)
 
@@ -121,7 +128,8 @@ class CoinsWebSocketStrategyTest {
         appUtil = mock(),
         prefs = prefs,
         rxBus = rxBus,
-        assetResources = assetResources
+        assetResources = assetResources,
+        refreshScheduler = refreshScheduler
     )
 
     @Before
@@ -200,22 +208,74 @@ class CoinsWebSocketStrategyTest {
     @Test
     fun `btc transaction should be update btc balance and transactions`() {
         webSocket.send(btcTransaction)
+        refreshScheduler.advanceTimeBy(1, TimeUnit.SECONDS)
         verify(mockWebSocket).open()
         verify(payloadDataManager).updateAllBalances()
         verify(payloadDataManager).updateAllTransactions()
     }
 
+    @Test
+    fun `btc transaction applied as balance deltas only updates transactions`() {
+        whenever(payloadDataManager.applyTransactionBalanceDeltas(any(), any(), any())).thenReturn(true)
+        webSocket.send(btcTransaction)
+        refreshScheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+        verify(payloadDataManager).applyTransactionBalanceDeltas(any(), eq(1573045879L), any())
+        verify(payloadDataManager, never()).updateAllBalances()
+        verify(payloadDataManager).updateAllTransactions()
+    }
+
     @Test
     fun `bch transaction should be update bch balance and transactions`() {
         webSocket.send(bchTransaction)
+        refreshScheduler.advanceTimeBy(1, TimeUnit.SECONDS)
         verify(mockWebSocket).open()
         verify(bchDataManager).updateAllBalances()
         verify(bchDataManager).getWalletTransactions(50, 0)
     }
 
+    @Test
+    fun `burst of btc transactions is refreshed once`() {
+        repeat(15) { i ->
+            // Identical messages are dropped, so each one is made distinct
+            webSocket.send(btcTransaction.replace("\"time\":1573045879", "\"time\":${1573045879 + i}"))
+            refreshScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS)
+        }
+        verify(payloadDataManager, never()).updateAllTransactions()
+
+        refreshScheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+        verify(payloadDataManager, times(1)).updateAllBalances()
+        verify(payloadDataManager, times(1)).updateAllTransactions()
+    }
+
+    @Test
+    fun `steady stream of btc transactions is still refreshed`() {
+        repeat(50) { i ->
+            webSocket.send(btcTransaction.replace("\"time\":1573045879", "\"time\":${1573045879 + i}"))
+            refreshScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS)
+        }
+
+        // Every 2 seconds while the messages keep coming
+        verify(payloadDataManager, times(2)).updateAllTransactions()
+
+        refreshScheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+        verify(payloadDataManager, times(3)).updateAllTransactions()
+    }
+
+    @Test
+    fun `balances are reconciled while idle once due`() {
+        refreshScheduler.advanceTimeBy(2, TimeUnit.MINUTES)
+        verify(payloadDataManager, never()).updateAllBalances()
+
+        whenever(payloadDataManager.isBalanceReconcileDue()).thenReturn(true)
+        refreshScheduler.advanceTimeBy(1, TimeUnit.MINUTES)
+        refreshScheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+        verify(payloadDataManager).updateAllBalances()
+    }
+
     @Test
     fun `test changed payload`() {
         webSocket.send(changedPayloadMessage)
+        refreshScheduler.advanceTimeBy(1, TimeUnit.SECONDS)
         verify(mockWebSocket).open()
         verify(payloadDataManager).updateAllBalances()
         verify(payloadDataManager).updateAllTransactions()
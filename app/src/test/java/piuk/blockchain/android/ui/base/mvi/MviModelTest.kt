@@ -0,0 +1,134 @@
+package piuk.blockchain.android.ui.base.mvi
+
+import com.blockchain.android.testutils.rxInit
+import com.blockchain.logging.CrashLogger
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.verify
+import io.reactivex.Scheduler
+import io.reactivex.disposables.Disposable
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.schedulers.TestScheduler
+import org.amshove.kluent.`it returns`
+import org.amshove.kluent.`should equal`
+import org.junit.Rule
+import org.junit.Test
+import piuk.blockchain.androidcore.data.api.EnvironmentConfig
+
+class MviModelTest {
+
+    private val computation = TestScheduler()
+
+    @get:Rule
+    val rx = rxInit {
+        computation(computation)
+    }
+
+    private val environmentConfig: EnvironmentConfig = mock {
+        on { isRunningInDebugMode() } `it returns` false
+    }
+    private val crashLogger: CrashLogger = mock()
+
+    @Test
+    fun `intents are reduced in order`() {
+        val model = TestModel()
+        val states = model.state.test()
+
+        model.process(TestIntent.Append("a"))
+        model.process(TestIntent.Append("b"))
+        computation.triggerActions()
+
+        states.values().last() `should equal` TestState(listOf("a", "b"))
+        model.reduceStats().getValue("Append").count `should equal` 2L
+    }
+
+    @Test
+    fun `pending intents are replaced by ones which supersede them`() {
+        val model = TestModel()
+        val states = model.state.test()
+
+        model.process(TestIntent.Price(1))
+        model.process(TestIntent.Append("a"))
+        model.process(TestIntent.Price(2))
+        model.process(TestIntent.Price(3))
+        computation.triggerActions()
+
+        states.values().last() `should equal` TestState(listOf("a", "price 3"))
+        model.reduceStats().getValue("Price").count `should equal` 1L
+    }
+
+    @Test
+    fun `intents beyond the queue capacity are dropped and reported`() {
+        val model = TestModel(capacity = 2)
+        val states = model.state.test()
+
+        model.process(TestIntent.Append("a"))
+        model.process(TestIntent.Append("b"))
+        model.process(TestIntent.Append("c"))
+        computation.triggerActions()
+
+        states.values().last() `should equal` TestState(listOf("a", "b"))
+        verify(crashLogger).logException(any())
+    }
+
+    @Test
+    fun `state is not emitted again when an intent leaves it unchanged`() {
+        val model = TestModel()
+        val states = model.state.test()
+
+        model.process(TestIntent.Append("a"))
+        model.process(TestIntent.NoOp)
+        computation.triggerActions()
+
+        states.valueCount() `should equal` 2
+    }
+
+    @Test
+    fun `intents are ignored once the model is destroyed`() {
+        val model = TestModel(capacity = 1)
+        val states = model.state.test()
+
+        model.destroy()
+        model.process(TestIntent.Append("a"))
+        model.process(TestIntent.Append("b"))
+        computation.triggerActions()
+
+        states.values() `should equal` listOf(TestState())
+        verify(crashLogger, never()).logException(any())
+    }
+
+    private data class TestState(val values: List<String> = emptyList()) : MviState
+
+    private sealed class TestIntent : MviIntent<TestState> {
+        class Append(private val value: String) : TestIntent() {
+            override fun reduce(oldState: TestState): TestState =
+                oldState.copy(values = oldState.values + value)
+        }
+
+        class Price(private val price: Int) : TestIntent() {
+            override fun reduce(oldState: TestState): TestState =
+                oldState.copy(values = oldState.values + "price $price")
+
+            override fun isSupersededBy(next: MviIntent<TestState>): Boolean =
+                next is Price
+        }
+
+        object NoOp : TestIntent() {
+            override fun reduce(oldState: TestState): TestState = oldState
+        }
+    }
+
+    private inner class TestModel(
+        capacity: Int = MviModel.DEFAULT_INTENT_QUEUE_CAPACITY,
+        observeScheduler: Scheduler = Schedulers.trampoline()
+    ) : MviModel<TestState, TestIntent>(
+        TestState(),
+        observeScheduler,
+        environmentConfig,
+        crashLogger,
+        capacity
+    ) {
+        override fun performAction(previousState: TestState, intent: TestIntent): Disposable? = null
+    }
+}
@@ -0,0 +1,65 @@
+package piuk.blockchain.android.ui.scan
+
+import org.amshove.kluent.`should equal`
+import org.junit.Test
+import kotlin.random.Random
+
+class RotationUtilTest {
+
+    private val width = 12
+    private val height = 8
+    private val frame = Random(42).nextBytes(width * height)
+
+    @Test
+    fun `region matches the same region of the whole rotated frame`() {
+        listOf(0, 90, 180, 270).forEach { degrees ->
+            val rotated = rotateWholeFrame(frame, width, height, degrees)
+            val rotatedWidth = if (degrees == 90 || degrees == 270) height else width
+            val out = ByteArray(5 * 3)
+
+            RotationUtil.rotateRegion(frame, width, height, degrees, 2, 1, 5, 3, out)
+
+            out.toList() `should equal` crop(rotated, rotatedWidth, 2, 1, 5, 3).toList()
+        }
+    }
+
+    @Test
+    fun `region can cover the whole rotated frame`() {
+        val out = ByteArray(width * height)
+
+        RotationUtil.rotateRegion(frame, width, height, 90, 0, 0, height, width, out)
+
+        out.toList() `should equal` rotateWholeFrame(frame, width, height, 90).toList()
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun `region outside the rotated frame is rejected`() {
+        // 12 pixels wide, but only 8 once rotated
+        RotationUtil.rotateRegion(frame, width, height, 90, 0, 0, width, 1, ByteArray(width))
+    }
+
+    // The full frame rotation the decoder used before cropping
+    private fun rotateWholeFrame(data: ByteArray, width: Int, height: Int, degrees: Int): ByteArray {
+        val rotated = ByteArray(data.size)
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                val index = when (degrees) {
+                    90 -> x * height + height - y - 1
+                    180 -> (width - x - 1) + width * (height - y - 1)
+                    270 -> (width - x - 1) * height + y
+                    else -> x + y * width
+                }
+                rotated[index] = data[x + y * width]
+            }
+        }
+        return rotated
+    }
+
+    private fun crop(data: ByteArray, dataWidth: Int, left: Int, top: Int, width: Int, height: Int): ByteArray {
+        val out = ByteArray(width * height)
+        for (y in 0 until height) {
+            System.arraycopy(data, (top + y) * dataWidth + left, out, y * width, width)
+        }
+        return out
+    }
+}
@@ -1,7 +1,6 @@
 package info.blockchain.balance
 
-import java.math.BigDecimal
-import java.math.RoundingMode
+import java.math.BigInteger
 import java.text.DecimalFormat
 import java.text.NumberFormat
 import java.util.Locale
@@ -37,70 +36,124 @@ private fun getFormatter(locale: Locale) =
     formatterMap.getOrPut(locale) { CryptoCurrencyFormatter(locale) }
 
 internal class CryptoCurrencyFormatter(locale: Locale) {
-    private val btcFormat = createCryptoDecimalFormat(locale, CryptoCurrency.BTC.dp)
-    private val bchFormat = createCryptoDecimalFormat(locale, CryptoCurrency.BCH.dp)
-    private val ethFormat = createCryptoDecimalFormat(locale, CryptoCurrency.ETHER.dp)
-    private val ethShortFormat = createCryptoDecimalFormat(locale, CryptoCurrency.ETHER.userDp)
-    private val xlmFormat = createCryptoDecimalFormat(locale, CryptoCurrency.XLM.dp)
-    private val paxShortFormat = createCryptoDecimalFormat(locale, CryptoCurrency.PAX.userDp)
-    private val paxFormat = createCryptoDecimalFormat(locale, CryptoCurrency.PAX.dp)
-    private val stxFormat = createCryptoDecimalFormat(locale, CryptoCurrency.STX.dp)
-    private val algFormat = createCryptoDecimalFormat(locale, CryptoCurrency.ALGO.dp)
-    private val usdtFormat = createCryptoDecimalFormat(locale, CryptoCurrency.USDT.dp)
-    private val dgldFormat = createCryptoDecimalFormat(locale, CryptoCurrency.DGLD.dp)
+    private val decimalSeparator: Char
+    private val groupingSeparator: Char
+    private val zeroDigit: Char
+    private val groupingSize: Int
+
+    init {
+        // Only the symbols are taken from the locale's format; DecimalFormat itself works on
+        // doubles and isn't safe to share between threads
+        val localeFormat = NumberFormat.getInstance(locale) as DecimalFormat
+        val symbols = localeFormat.decimalFormatSymbols
+        decimalSeparator = symbols.decimalSeparator
+        groupingSeparator = symbols.groupingSeparator
+        zeroDigit = symbols.zeroDigit
+        groupingSize = if (localeFormat.isGroupingUsed) localeFormat.groupingSize else 0
+    }
+
+    private data class FormatKey(
+        val minor: BigInteger,
+        val currency: CryptoCurrency,
+        val precision: FormatPrecision
+    )
+
+    // Lists format the same amounts over and over as they scroll. Guarded by itself.
+    private val recent = object : LinkedHashMap<FormatKey, String>(MAX_RECENT, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<FormatKey, String>): Boolean =
+            size > MAX_RECENT
+    }
 
     fun format(
         cryptoValue: CryptoValue,
         precision: FormatPrecision = FormatPrecision.Short
     ): String =
-        cryptoValue.currency.decimalFormat(precision).formatWithoutUnit(cryptoValue.toBigDecimal())
+        formatWithoutUnit(cryptoValue, precision)
 
     fun formatWithUnit(
         cryptoValue: CryptoValue,
         precision: FormatPrecision = FormatPrecision.Short
     ) =
-        cryptoValue.currency.decimalFormat(precision).formatWithUnit(
-            cryptoValue.toBigDecimal(),
-            cryptoValue.currency.displayTicker
-        )
-
-    private fun CryptoCurrency.decimalFormat(displayMode: FormatPrecision) = when (this) {
-        CryptoCurrency.BTC -> btcFormat
-        CryptoCurrency.BCH -> bchFormat
-        CryptoCurrency.ETHER -> when (displayMode) {
-            FormatPrecision.Short -> ethShortFormat
-            FormatPrecision.Full -> ethFormat
+        "${formatWithoutUnit(cryptoValue, precision)} ${cryptoValue.currency.displayTicker}"
+
+    private fun formatWithoutUnit(cryptoValue: CryptoValue, precision: FormatPrecision): String {
+        val key = FormatKey(cryptoValue.toBigInteger(), cryptoValue.currency, precision)
+        synchronized(recent) { recent[key] }?.let { return it }
+
+        val currency = cryptoValue.currency
+        val fractionDigits = when (precision) {
+            FormatPrecision.Short -> currency.userDp
+            FormatPrecision.Full -> currency.dp
+        }
+        val formatted = builder.get()
+            .also { it.setLength(0) }
+            .appendDecimal(key.minor.toPositive(), currency.dp, fractionDigits)
+            .toString()
+            .toWebZero()
+
+        synchronized(recent) { recent[key] = formatted }
+        return formatted
+    }
+
+    /**
+     * Appends [minor], an amount in a unit with [dp] decimal places, rounded down to
+     * [fractionDigits]. Trailing zeros are dropped, but at least one fraction digit is kept.
+     */
+    private fun StringBuilder.appendDecimal(minor: BigInteger, dp: Int, fractionDigits: Int): StringBuilder {
+        val digits = minor.divide(powerOfTen(dp - fractionDigits)).toString()
+        val integerDigits = digits.length - fractionDigits
+
+        if (integerDigits <= 0) {
+            append(zeroDigit)
+        } else {
+            for (i in 0 until integerDigits) {
+                if (i > 0 && groupingSize > 0 && (integerDigits - i) % groupingSize == 0) {
+                    append(groupingSeparator)
+                }
+                appendDigit(digits[i])
+            }
+        }
+
+        append(decimalSeparator)
+        val fractionStart = max(integerDigits, 0)
+        var fractionEnd = digits.length
+        while (fractionEnd > fractionStart && digits[fractionEnd - 1] == '0') {
+            fractionEnd--
         }
-        CryptoCurrency.XLM -> xlmFormat
-        CryptoCurrency.PAX -> when (displayMode) {
-            FormatPrecision.Short -> paxShortFormat
-            FormatPrecision.Full -> paxFormat
+        if (fractionEnd == fractionStart) {
+            append(zeroDigit)
+        } else {
+            for (i in integerDigits until 0) {
+                append(zeroDigit)
+            }
+            for (i in fractionStart until fractionEnd) {
+                appendDigit(digits[i])
+            }
         }
-        CryptoCurrency.STX -> stxFormat
-        CryptoCurrency.ALGO -> algFormat
-        CryptoCurrency.USDT -> usdtFormat
-        CryptoCurrency.DGLD -> dgldFormat
+        return this
+    }
+
+    private fun StringBuilder.appendDigit(digit: Char) {
+        append(zeroDigit + (digit - '0'))
     }
 
-    private fun DecimalFormat.formatWithUnit(value: BigDecimal, symbol: String) =
-        "${formatWithoutUnit(value)} $symbol"
+    companion object {
+        private const val MAX_RECENT = 256
+    }
+}
 
-    private fun DecimalFormat.formatWithoutUnit(value: BigDecimal) =
-        format(value.toPositiveDouble()).toWebZero()
+private val builder = object : ThreadLocal<StringBuilder>() {
+    override fun initialValue() = StringBuilder(32)
 }
 
-private fun BigDecimal.toPositiveDouble() = this.toDouble().toPositiveDouble()
+private val powersOfTen = Array(19) { BigInteger.TEN.pow(it) }
+
+private fun powerOfTen(exponent: Int) =
+    if (exponent < powersOfTen.size) powersOfTen[exponent] else BigInteger.TEN.pow(exponent)
 
-private fun Double.toPositiveDouble() = max(this, 0.0)
+private fun BigInteger.toPositive() = if (signum() < 0) BigInteger.ZERO else this
 
 /**
  * Replace 0.0 with 0 to match web
  */
 private fun String.toWebZero() = if (this == "0.0" || this == "0,0" || this == "0.00") "0" else this
-
-private fun createCryptoDecimalFormat(locale: Locale, maxDigits: Int) =
-    (NumberFormat.getInstance(locale) as DecimalFormat).apply {
-        minimumFractionDigits = 1
-        maximumFractionDigits = maxDigits
-        roundingMode = RoundingMode.DOWN
-    }
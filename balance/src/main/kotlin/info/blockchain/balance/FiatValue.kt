@@ -16,7 +16,11 @@ private object FiatFormat {
 
     private val cache: MutableMap<Key, NumberFormat> = ConcurrentHashMap()
 
-    operator fun get(key: Key) = cache.getOrPut(key) {
+    // The formats are shared between threads, which DecimalFormat doesn't support by itself
+    fun format(key: Key, amount: BigDecimal): String =
+        get(key).let { fmt -> synchronized(fmt) { fmt.format(amount) } }
+
+    private operator fun get(key: Key) = cache.getOrPut(key) {
         val currencyInstance = Currency.getInstance(key.currencyCode)
         val fmt = NumberFormat.getCurrencyInstance(key.locale) as DecimalFormat
         fmt.apply {
@@ -67,16 +71,14 @@ data class FiatValue private constructor(
     val valueMinor: Long = amount.movePointRight(maxDecimalPlaces).toLong()
 
     override fun toStringWithSymbol(): String =
-        FiatFormat[Key(Locale.getDefault(), currencyCode, includeSymbol = true)].format(amount)
+        FiatFormat.format(Key(Locale.getDefault(), currencyCode, includeSymbol = true), amount)
 
     override fun toStringWithoutSymbol(): String =
-        FiatFormat[Key(Locale.getDefault(), currencyCode, includeSymbol = false)]
-            .format(amount)
+        FiatFormat.format(Key(Locale.getDefault(), currencyCode, includeSymbol = false), amount)
             .trim()
 
     override fun toNetworkString(): String =
-        FiatFormat[Key(Locale.US, currencyCode, includeSymbol = false)]
-            .format(amount)
+        FiatFormat.format(Key(Locale.US, currencyCode, includeSymbol = false), amount)
             .trim()
             .removeComma()
 
@@ -4,6 +4,7 @@ import org.amshove.kluent.`should equal`
 import org.junit.Before
 import org.junit.Test
 import java.util.Locale
+import java.util.stream.Collectors
 
 class CryptoCurrencyFormatterTest {
 
@@ -188,6 +189,38 @@ class CryptoCurrencyFormatterTest {
         100_000_000.ether().format(locale = Locale.US) `should equal` "100,000,000.0"
     }
 
+    @Test
+    fun `formatWithUnit ETH keeps every digit at full precision`() {
+        CryptoValue(
+            CryptoCurrency.ETHER, "123456789123456789123456789".toBigInteger()
+        ).formatWithUnit(locale, precision = FormatPrecision.Full) `should equal`
+            "123,456,789.123456789123456789 ETH"
+    }
+
+    @Test
+    fun `format PAX beyond double precision`() {
+        CryptoValue(
+            CryptoCurrency.PAX, "12345678901234567890000000000".toBigInteger()
+        ).format(locale) `should equal` "12,345,678,901.23456789"
+    }
+
+    @Test
+    fun `format negative value as zero`() {
+        CryptoValue(CryptoCurrency.BTC, (-100).toBigInteger()).format(locale) `should equal` "0"
+    }
+
+    @Test
+    fun `format from many threads at once`() {
+        val values = (1L..200L).map { CryptoValue(CryptoCurrency.BTC, (it * 123_456_789L).toBigInteger()) }
+        val expected = values.map { it.format(locale) }
+
+        val results = values.parallelStream()
+            .map { it.format(locale) }
+            .collect(Collectors.toList())
+
+        results `should equal` expected
+    }
+
     private fun Long.formatWeiWithUnit() =
         CryptoValue(CryptoCurrency.ETHER, this.toBigInteger()).formatWithUnit(locale)
 }
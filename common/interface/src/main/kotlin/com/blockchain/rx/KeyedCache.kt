@@ -0,0 +1,133 @@
+package com.blockchain.rx
+
+import io.reactivex.Single
+import java.util.LinkedHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Caches the result of [fetch] per key for [cacheLifetimeMillis].
+ *
+ * - Concurrent requests for a key which isn't cached share a single fetch.
+ * - Once a value has expired it is still returned, while a fresh one is fetched in the background.
+ * - Errors are not cached.
+ * - No more than [maxSize] keys are kept; the least recently used is dropped first.
+ *
+ * Expiry is checked against a monotonic clock when a value is requested, so no timers are needed.
+ */
+class KeyedCache<K, V : Any>(
+    private val cacheLifetimeMillis: Long,
+    private val maxSize: Int = DEFAULT_MAX_SIZE,
+    private val clock: () -> Long = { TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) },
+    private val fetch: (K) -> Single<V>
+) {
+    init {
+        require(maxSize > 0) { "Cache size must be positive" }
+    }
+
+    data class Stats(
+        val hits: Long,
+        val staleHits: Long,
+        val misses: Long,
+        val fetches: Long,
+        val evictions: Long
+    )
+
+    private class Entry<V>(
+        val value: V?,
+        val fetchedAt: Long,
+        val inFlight: Single<V>?
+    )
+
+    private val hits = AtomicLong()
+    private val staleHits = AtomicLong()
+    private val misses = AtomicLong()
+    private val fetches = AtomicLong()
+    private val evictions = AtomicLong()
+
+    // Access ordered, so the eldest entry is the least recently used. Guarded by itself.
+    private val entries = object : LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<K, Entry<V>>): Boolean =
+            (size > maxSize).also { evicted ->
+                if (evicted) evictions.incrementAndGet()
+            }
+    }
+
+    val stats: Stats
+        get() = Stats(hits.get(), staleHits.get(), misses.get(), fetches.get(), evictions.get())
+
+    fun get(key: K): Single<V> =
+        Single.defer {
+            var refresh: Single<V>? = null
+            val result = synchronized(entries) {
+                val entry = entries[key]
+                val value = entry?.value
+                when {
+                    entry == null -> {
+                        misses.incrementAndGet()
+                        startFetch(key, null)
+                    }
+                    value == null -> {
+                        misses.incrementAndGet()
+                        entry.inFlight ?: startFetch(key, entry)
+                    }
+                    clock() - entry.fetchedAt < cacheLifetimeMillis -> {
+                        hits.incrementAndGet()
+                        Single.just(value)
+                    }
+                    else -> {
+                        staleHits.incrementAndGet()
+                        if (entry.inFlight == null) {
+                            refresh = startFetch(key, entry)
+                        }
+                        Single.just(value)
+                    }
+                }
+            }
+            // Nobody waits for a background refresh, so it has to be started here
+            refresh?.subscribe({ }, { })
+            result
+        }
+
+    fun invalidate(key: K) {
+        synchronized(entries) {
+            entries.remove(key)
+        }
+    }
+
+    fun invalidateAll() {
+        synchronized(entries) {
+            entries.clear()
+        }
+    }
+
+    private fun startFetch(key: K, previous: Entry<V>?): Single<V> {
+        fetches.incrementAndGet()
+        lateinit var request: Single<V>
+        request = Single.defer { fetch(key) }
+            .doOnSuccess { value -> complete(key, request, Entry(value, clock(), null)) }
+            .doOnError {
+                complete(key, request, previous?.let { p -> p.value?.let { Entry(it, p.fetchedAt, null) } })
+            }
+            .cache()
+        entries[key] = Entry(previous?.value, previous?.fetchedAt ?: 0, request)
+        return request
+    }
+
+    // Only the latest fetch for a key may update it, and not after the key has been invalidated
+    private fun complete(key: K, request: Single<V>, entry: Entry<V>?) {
+        synchronized(entries) {
+            if (entries[key]?.inFlight === request) {
+                if (entry != null) {
+                    entries[key] = entry
+                } else {
+                    entries.remove(key)
+                }
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 64
+    }
+}
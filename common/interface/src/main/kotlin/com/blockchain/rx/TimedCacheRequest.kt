@@ -1,46 +1,39 @@
 package com.blockchain.rx
 
 import io.reactivex.Single
-import io.reactivex.rxkotlin.subscribeBy
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.atomic.AtomicBoolean
 
-class TimedCacheRequest<T>(
-    private val cacheLifetimeSeconds: Long,
-    private val refreshFn: () -> Single<T>
+class TimedCacheRequest<T : Any>(
+    cacheLifetimeSeconds: Long,
+    refreshFn: () -> Single<T>
 ) {
-    val expired = AtomicBoolean(true)
-    var current = refreshFn.invoke()
-
-    fun getCachedSingle(): Single<T> =
-        Single.defer {
-            if (expired.compareAndSet(true, false)) {
-                current = refreshFn.invoke().cache()
-
-                Single.timer(cacheLifetimeSeconds, TimeUnit.SECONDS)
-                    .subscribeBy(onSuccess = { expired.set(true) })
-            }
-            current
-        }
+    private val cache = KeyedCache<Unit, T>(
+        cacheLifetimeMillis = TimeUnit.SECONDS.toMillis(cacheLifetimeSeconds),
+        maxSize = 1,
+        fetch = { refreshFn() }
+    )
+
+    val stats: KeyedCache.Stats
+        get() = cache.stats
+
+    fun getCachedSingle(): Single<T> = cache.get(Unit)
+
+    fun invalidate() = cache.invalidateAll()
 }
 
-class ParameteredTimedCacheRequest<INPUT, OUTPUT>(
-    private val cacheLifetimeSeconds: Long,
-    private val refreshFn: (INPUT) -> Single<OUTPUT>
+class ParameteredTimedCacheRequest<INPUT, OUTPUT : Any>(
+    cacheLifetimeSeconds: Long,
+    refreshFn: (INPUT) -> Single<OUTPUT>
 ) {
-    val expired = hashMapOf<INPUT, Boolean>()
-    lateinit var current: Single<OUTPUT>
-
-    fun getCachedSingle(input: INPUT): Single<OUTPUT> =
-        Single.defer {
-            if (expired[input] != false) {
-                current = refreshFn.invoke(input).cache().doOnSuccess {
-                    expired[input] = false
-                }
-
-                Single.timer(cacheLifetimeSeconds, TimeUnit.SECONDS)
-                    .subscribeBy(onSuccess = { expired[input] = true })
-            }
-            current
-        }
+    private val cache = KeyedCache(
+        cacheLifetimeMillis = TimeUnit.SECONDS.toMillis(cacheLifetimeSeconds),
+        fetch = refreshFn
+    )
+
+    val stats: KeyedCache.Stats
+        get() = cache.stats
+
+    fun getCachedSingle(input: INPUT): Single<OUTPUT> = cache.get(input)
+
+    fun invalidate(input: INPUT) = cache.invalidate(input)
 }
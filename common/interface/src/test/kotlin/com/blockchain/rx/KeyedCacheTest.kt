@@ -0,0 +1,137 @@
+package com.blockchain.rx
+
+import io.reactivex.Single
+import io.reactivex.subjects.SingleSubject
+import org.amshove.kluent.`should equal`
+import org.junit.Test
+
+class KeyedCacheTest {
+
+    private var now = 0L
+    private val fetched = mutableListOf<String>()
+    private val responses = mutableMapOf<String, SingleSubject<String>>()
+
+    private fun cache(maxSize: Int = KeyedCache.DEFAULT_MAX_SIZE) =
+        KeyedCache<String, String>(
+            cacheLifetimeMillis = 1000,
+            maxSize = maxSize,
+            clock = { now }
+        ) { key ->
+            fetched += key
+            SingleSubject.create<String>().also { responses[key] = it }
+        }
+
+    @Test
+    fun `concurrent requests for a key share one fetch`() {
+        val cache = cache()
+
+        val first = cache.get("A").test()
+        val second = cache.get("A").test()
+        responses.getValue("A").onSuccess("a")
+
+        first.assertValue("a")
+        second.assertValue("a")
+        fetched `should equal` listOf("A")
+    }
+
+    @Test
+    fun `keys are fetched separately`() {
+        val cache = cache()
+
+        val a = cache.get("A").test()
+        val b = cache.get("B").test()
+        responses.getValue("A").onSuccess("a")
+        responses.getValue("B").onSuccess("b")
+
+        a.assertValue("a")
+        b.assertValue("b")
+        fetched `should equal` listOf("A", "B")
+    }
+
+    @Test
+    fun `cached value is returned until it expires`() {
+        val cache = cache()
+        cache.get("A").test()
+        responses.getValue("A").onSuccess("a")
+
+        now = 999
+        cache.get("A").test().assertValue("a")
+
+        fetched `should equal` listOf("A")
+        cache.stats `should equal` KeyedCache.Stats(hits = 1, staleHits = 0, misses = 1, fetches = 1, evictions = 0)
+    }
+
+    @Test
+    fun `expired value is returned while it is refreshed`() {
+        val cache = cache()
+        cache.get("A").test()
+        responses.getValue("A").onSuccess("a")
+
+        now = 1000
+        cache.get("A").test().assertValue("a")
+        cache.get("A").test().assertValue("a")
+        fetched `should equal` listOf("A", "A")
+
+        responses.getValue("A").onSuccess("a2")
+        cache.get("A").test().assertValue("a2")
+        cache.stats.staleHits `should equal` 2L
+    }
+
+    @Test
+    fun `errors are not cached`() {
+        var calls = 0
+        val cache = KeyedCache<String, String>(cacheLifetimeMillis = 1000) {
+            calls++
+            if (calls == 1) Single.error(Exception("Offline")) else Single.just("a")
+        }
+
+        cache.get("A").test().assertErrorMessage("Offline")
+        cache.get("A").test().assertValue("a")
+        cache.get("A").test().assertValue("a")
+        calls `should equal` 2
+    }
+
+    @Test
+    fun `failed refresh keeps the stale value`() {
+        val cache = cache()
+        cache.get("A").test()
+        responses.getValue("A").onSuccess("a")
+
+        now = 2000
+        cache.get("A").test().assertValue("a")
+        responses.getValue("A").onError(Exception("Offline"))
+
+        cache.get("A").test().assertValue("a")
+        fetched `should equal` listOf("A", "A", "A")
+    }
+
+    @Test
+    fun `least recently used key is evicted`() {
+        val cache = cache(maxSize = 2)
+        listOf("A", "B").forEach {
+            cache.get(it).test()
+            responses.getValue(it).onSuccess(it.toLowerCase())
+        }
+        cache.get("A").test().assertValue("a")
+
+        cache.get("C").test()
+        responses.getValue("C").onSuccess("c")
+
+        cache.get("A").test().assertValue("a")
+        cache.get("B").test().assertNoValues()
+        fetched `should equal` listOf("A", "B", "C", "B")
+        cache.stats.evictions `should equal` 2L
+    }
+
+    @Test
+    fun `invalidated key is fetched again`() {
+        val cache = cache()
+        cache.get("A").test()
+        responses.getValue("A").onSuccess("a")
+
+        cache.invalidate("A")
+        cache.get("A").test()
+
+        fetched `should equal` listOf("A", "A")
+    }
+}
@@ -0,0 +1,79 @@
+package com.blockchain.network.cache
+
+import okhttp3.Interceptor
+import okhttp3.Response
+import timber.log.Timber
+import java.util.concurrent.atomic.AtomicLong
+
+class HttpCacheMetrics {
+
+    private val requests = AtomicLong()
+    private val hits = AtomicLong()
+    private val revalidated = AtomicLong()
+    private val bytesSaved = AtomicLong()
+
+    val requestCount: Long
+        get() = requests.get()
+
+    // Responses served from the cache, whether or not the server was asked if they were still valid
+    val hitCount: Long
+        get() = hits.get() + revalidated.get()
+
+    val revalidatedCount: Long
+        get() = revalidated.get()
+
+    val bytesSavedCount: Long
+        get() = bytesSaved.get()
+
+    val hitRate: Double
+        get() = requestCount.let { if (it == 0L) 0.0 else hitCount.toDouble() / it }
+
+    internal fun onResponse(response: Response) {
+        requests.incrementAndGet()
+
+        val cacheResponse = response.cacheResponse ?: return
+        val networkResponse = response.networkResponse
+        when {
+            networkResponse == null -> hits.incrementAndGet()
+            networkResponse.code == HTTP_NOT_MODIFIED -> revalidated.incrementAndGet()
+            else -> return
+        }
+
+        // A body of unknown length is counted as nothing saved
+        bytesSaved.addAndGet(
+            cacheResponse.header("Content-Length")?.toLongOrNull()
+                ?: response.body?.contentLength()?.coerceAtLeast(0)
+                ?: 0
+        )
+    }
+
+    override fun toString(): String =
+        "HTTP cache: $hitCount of $requestCount requests from cache " +
+            "($revalidatedCount revalidated), $bytesSavedCount bytes saved"
+
+    companion object {
+        private const val HTTP_NOT_MODIFIED = 304
+    }
+}
+
+/**
+ * Application interceptor which counts the responses served by the disk cache. Being outside the
+ * cache, it sees whether each response came from the cache, the network or a conditional request
+ * answered with 304 Not Modified.
+ */
+class CacheMetricsInterceptor(
+    private val metrics: HttpCacheMetrics
+) : Interceptor {
+
+    override fun intercept(chain: Interceptor.Chain): Response =
+        chain.proceed(chain.request()).also {
+            metrics.onResponse(it)
+            if (metrics.requestCount % LOG_EVERY == 0L) {
+                Timber.d(metrics.toString())
+            }
+        }
+
+    companion object {
+        private const val LOG_EVERY = 50L
+    }
+}
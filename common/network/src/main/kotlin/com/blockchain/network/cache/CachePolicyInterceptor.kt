@@ -0,0 +1,31 @@
+package com.blockchain.network.cache
+
+import okhttp3.Interceptor
+import okhttp3.Response
+
+/**
+ * Network interceptor which applies our own cache policy to successful GET responses from the
+ * endpoints in [policies], in place of whatever caching headers the server sent. OkHttp then
+ * stores them in its disk cache, and sends conditional requests using their ETag or
+ * Last-Modified headers when they need revalidating.
+ */
+class CachePolicyInterceptor(
+    private val policies: HttpCachePolicies
+) : Interceptor {
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val response = chain.proceed(request)
+
+        if (request.method != "GET" || !response.isSuccessful) {
+            return response
+        }
+
+        val policy = policies.policyFor(request.url) ?: return response
+        return response.newBuilder()
+            .removeHeader("Pragma")
+            .removeHeader("Expires")
+            .header("Cache-Control", policy.cacheControl)
+            .build()
+    }
+}
@@ -0,0 +1,41 @@
+package com.blockchain.network.cache
+
+import okhttp3.HttpUrl
+import java.util.concurrent.TimeUnit
+
+sealed class HttpCachePolicy {
+
+    abstract val cacheControl: String
+
+    // Served from the disk cache, without going to the network, until it is maxAge old
+    class MaxAge(maxAge: Long, unit: TimeUnit) : HttpCachePolicy() {
+        override val cacheControl: String = "max-age=${unit.toSeconds(maxAge)}"
+    }
+
+    // Kept in the disk cache, but always revalidated with If-None-Match or If-Modified-Since, so an
+    // unchanged response costs a 304 rather than the whole body
+    object Revalidate : HttpCachePolicy() {
+        override val cacheControl: String = "no-cache"
+    }
+}
+
+// Rules are checked in order, and the first whose path segment is in the request path applies
+class HttpCachePolicies(private val rules: List<Pair<String, HttpCachePolicy>>) {
+
+    fun policyFor(url: HttpUrl): HttpCachePolicy? =
+        rules.firstOrNull { (path, _) -> url.encodedPath.contains(path) }?.second
+
+    companion object {
+        val default = HttpCachePolicies(
+            listOf(
+                // Historic series only ever grow at the end, by at most one point per
+                // fifteen minutes, the finest interval the app asks for
+                "/price/index-series" to HttpCachePolicy.MaxAge(15, TimeUnit.MINUTES),
+                "/price/index" to HttpCachePolicy.Revalidate,
+                "/mempool/fees/" to HttpCachePolicy.MaxAge(1, TimeUnit.MINUTES),
+                "/wallet-options.json" to HttpCachePolicy.Revalidate,
+                "/multiaddr" to HttpCachePolicy.Revalidate
+            )
+        )
+    }
+}
@@ -0,0 +1,164 @@
+package com.blockchain.network.coalescing
+
+import okhttp3.HttpUrl
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.toResponseBody
+import timber.log.Timber
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+class CoalescingMetrics {
+
+    private val suppressed = ConcurrentHashMap<String, AtomicLong>()
+
+    // Requests which were answered with another in flight request's response, by endpoint
+    val suppressedByEndpoint: Map<String, Long>
+        get() = suppressed.mapValues { it.value.get() }
+
+    val suppressedCount: Long
+        get() = suppressed.values.fold(0L) { total, count -> total + count.get() }
+
+    internal fun onSuppressed(url: HttpUrl) {
+        val endpoint = url.endpoint()
+        val count = suppressed.getOrPut(endpoint) { AtomicLong() }.incrementAndGet()
+        if (count % LOG_EVERY == 0L) {
+            Timber.d("$count duplicate requests to $endpoint suppressed")
+        }
+    }
+
+    // Path segments with digits in are usually addresses or ids, so are left out to keep the
+    // number of endpoints counted bounded
+    private fun HttpUrl.endpoint(): String =
+        host + pathSegments.joinToString(separator = "/", prefix = "/") { segment ->
+            if (segment.any { it.isDigit() }) "{id}" else segment
+        }
+
+    companion object {
+        private const val LOG_EVERY = 20L
+    }
+}
+
+/**
+ * Merges identical GET requests which are in flight at the same time into one network call. The
+ * first request goes to the network, and the others wait for its response, which is buffered and
+ * given to each of them.
+ *
+ * Requests are identical if their URLs and headers are, so responses are only ever shared between
+ * requests made with the same credentials. This should be added after any interceptors which add
+ * headers, so that they are part of the comparison.
+ */
+class RequestCoalescingInterceptor(
+    private val metrics: CoalescingMetrics
+) : Interceptor {
+
+    private val inFlight = ConcurrentHashMap<String, InFlightRequest>()
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        if (!request.canCoalesce()) {
+            return chain.proceed(request)
+        }
+
+        val key = request.coalescingKey()
+        val call = InFlightRequest()
+        val existing = inFlight.putIfAbsent(key, call)
+        if (existing != null) {
+            metrics.onSuppressed(request.url)
+            // Null if the first request was cancelled, which shouldn't cancel this one
+            return existing.await { chain.call().isCanceled() }?.toResponse(request)
+                ?: chain.proceed(request)
+        }
+
+        try {
+            val shared = chain.proceed(request).share()
+            call.complete(shared)
+            return shared.toResponse(request)
+        } catch (e: IOException) {
+            call.fail(if (chain.call().isCanceled()) null else e)
+            throw e
+        } catch (e: RuntimeException) {
+            call.fail(IOException(e))
+            throw e
+        } finally {
+            inFlight.remove(key, call)
+        }
+    }
+
+    private fun Request.canCoalesce(): Boolean =
+        method == "GET" &&
+            header("Upgrade") == null &&
+            header("Accept")?.contains(EVENT_STREAM) != true
+
+    private fun Request.coalescingKey(): String =
+        "$url\n$headers"
+
+    private fun Response.share(): SharedResponse =
+        use {
+            SharedResponse(
+                response = this,
+                contentType = body?.contentType(),
+                bytes = body?.bytes() ?: ByteArray(0)
+            )
+        }
+
+    private class SharedResponse(
+        private val response: Response,
+        private val contentType: MediaType?,
+        private val bytes: ByteArray
+    ) {
+        fun toResponse(request: Request): Response =
+            response.newBuilder()
+                .request(request)
+                .body(bytes.toResponseBody(contentType))
+                .build()
+    }
+
+    private class InFlightRequest {
+        private val done = CountDownLatch(1)
+
+        @Volatile
+        private var response: SharedResponse? = null
+
+        @Volatile
+        private var error: IOException? = null
+
+        fun complete(response: SharedResponse) {
+            this.response = response
+            done.countDown()
+        }
+
+        fun fail(error: IOException?) {
+            this.error = error
+            done.countDown()
+        }
+
+        // Waits in short steps so that a waiter whose own call is cancelled gives up its thread
+        // rather than holding it until the first request completes
+        fun await(isCanceled: () -> Boolean): SharedResponse? {
+            try {
+                while (!done.await(CANCEL_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    if (isCanceled()) {
+                        throw IOException("Canceled")
+                    }
+                }
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                throw InterruptedIOException("Interrupted waiting for in flight request")
+            }
+            error?.let { throw IOException(it.message, it) }
+            return response
+        }
+    }
+
+    companion object {
+        private const val EVENT_STREAM = "text/event-stream"
+        private const val CANCEL_POLL_MS = 50L
+    }
+}
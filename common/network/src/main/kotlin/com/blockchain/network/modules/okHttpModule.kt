@@ -1,6 +1,13 @@
 package com.blockchain.network.modules
 
 import com.blockchain.network.TLSSocketFactory
+import com.blockchain.network.cache.CacheMetricsInterceptor
+import com.blockchain.network.cache.CachePolicyInterceptor
+import com.blockchain.network.cache.HttpCacheMetrics
+import com.blockchain.network.cache.HttpCachePolicies
+import com.blockchain.network.coalescing.CoalescingMetrics
+import com.blockchain.network.coalescing.RequestCoalescingInterceptor
+import okhttp3.Cache
 import okhttp3.ConnectionSpec
 import okhttp3.OkHttpClient
 import org.koin.dsl.module
@@ -9,6 +16,11 @@ import java.util.concurrent.TimeUnit
 private const val API_TIMEOUT = 30L
 private const val PING_INTERVAL = 10L
 val okHttpModule = module {
+
+    single { HttpCacheMetrics() }
+
+    single { CoalescingMetrics() }
+
     single {
         val builder = OkHttpClient.Builder()
             .connectionSpecs(listOf(ConnectionSpec.MODERN_TLS))
@@ -23,6 +35,16 @@ val okHttpModule = module {
             builder.addInterceptor(it)
         }
 
+        // After the interceptors above, so the headers they add decide which requests are identical
+        builder.addInterceptor(RequestCoalescingInterceptor(get()))
+
+        // The disk cache is supplied by the app, as only it knows where to keep it
+        getOrNull<Cache>()?.let {
+            builder.cache(it)
+                .addInterceptor(CacheMetricsInterceptor(get()))
+                .addNetworkInterceptor(CachePolicyInterceptor(HttpCachePolicies.default))
+        }
+
         /*
           Enable TLS specific version V.1.2
           Issue Details : https://github.com/square/okhttp/issues/1934
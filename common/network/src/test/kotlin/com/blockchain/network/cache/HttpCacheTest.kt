@@ -0,0 +1,116 @@
+package com.blockchain.network.cache
+
+import okhttp3.Cache
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.amshove.kluent.`should be`
+import org.amshove.kluent.`should equal`
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class HttpCacheTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val server = MockWebServer()
+    private val metrics = HttpCacheMetrics()
+    private lateinit var cache: Cache
+    private lateinit var client: OkHttpClient
+
+    @Before
+    fun setup() {
+        server.start()
+        cache = Cache(folder.newFolder("http"), 1024 * 1024)
+        client = OkHttpClient.Builder()
+            .cache(cache)
+            .addInterceptor(CacheMetricsInterceptor(metrics))
+            .addNetworkInterceptor(CachePolicyInterceptor(HttpCachePolicies.default))
+            .build()
+    }
+
+    @After
+    fun teardown() {
+        cache.close()
+        server.shutdown()
+    }
+
+    @Test
+    fun `fees are served from the cache while fresh`() {
+        server.enqueue(MockResponse().setBody(FEES).setHeader("Cache-Control", "no-store"))
+
+        get("/mempool/fees/btc") `should equal` FEES
+        get("/mempool/fees/btc") `should equal` FEES
+
+        server.requestCount `should equal` 1
+        metrics.requestCount `should equal` 2L
+        metrics.hitCount `should equal` 1L
+        metrics.bytesSavedCount `should equal` FEES.length.toLong()
+    }
+
+    @Test
+    fun `multiaddr is revalidated with its etag`() {
+        server.enqueue(MockResponse().setBody(MULTIADDR).setHeader("ETag", "\"v1\""))
+        server.enqueue(MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""))
+
+        get("/multiaddr?active=xpub") `should equal` MULTIADDR
+        get("/multiaddr?active=xpub") `should equal` MULTIADDR
+
+        server.requestCount `should equal` 2
+        server.takeRequest().getHeader("If-None-Match") `should equal` null
+        server.takeRequest().getHeader("If-None-Match") `should equal` "\"v1\""
+        metrics.revalidatedCount `should equal` 1L
+        metrics.bytesSavedCount `should equal` MULTIADDR.length.toLong()
+    }
+
+    @Test
+    fun `changed multiaddr is downloaded again`() {
+        server.enqueue(MockResponse().setBody(MULTIADDR).setHeader("ETag", "\"v1\""))
+        server.enqueue(MockResponse().setBody(FEES).setHeader("ETag", "\"v2\""))
+
+        get("/multiaddr?active=xpub")
+        get("/multiaddr?active=xpub") `should equal` FEES
+
+        metrics.hitCount `should equal` 0L
+        metrics.bytesSavedCount `should equal` 0L
+    }
+
+    @Test
+    fun `other endpoints keep the server's caching headers`() {
+        server.enqueue(MockResponse().setBody(FEES).setHeader("Cache-Control", "no-store"))
+        server.enqueue(MockResponse().setBody(FEES).setHeader("Cache-Control", "no-store"))
+
+        get("/wallet")
+        get("/wallet")
+
+        server.requestCount `should equal` 2
+        metrics.hitCount `should equal` 0L
+    }
+
+    @Test
+    fun `historic series are not matched as single prices`() {
+        val policies = HttpCachePolicies.default
+
+        (policies.policyFor("https://api.blockchain.info/price/index-series?base=btc".toHttpUrl())
+            is HttpCachePolicy.MaxAge) `should be` true
+        policies.policyFor("https://api.blockchain.info/price/index?base=btc".toHttpUrl()) `should be`
+            HttpCachePolicy.Revalidate
+        policies.policyFor("https://api.blockchain.info/wallet".toHttpUrl()) `should be` null
+    }
+
+    private fun get(path: String): String =
+        client.newCall(Request.Builder().url(server.url(path)).build())
+            .execute()
+            .use { it.body!!.string() }
+
+    companion object {
+        private const val FEES = "{\"regular\":5,\"priority\":11}"
+        private const val MULTIADDR = "{\"addresses\":[],\"txs\":[]}"
+    }
+}
@@ -0,0 +1,157 @@
+package com.blockchain.network.coalescing
+
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.amshove.kluent.`should equal`
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+class RequestCoalescingInterceptorTest {
+
+    private val server = MockWebServer()
+    private val metrics = CoalescingMetrics()
+    private val executor = Executors.newCachedThreadPool()
+
+    private val firstRequestReceived = CountDownLatch(1)
+    private val release = CountDownLatch(1)
+
+    private val client = OkHttpClient.Builder()
+        .addInterceptor(RequestCoalescingInterceptor(metrics))
+        .build()
+
+    @Before
+    fun setup() {
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                firstRequestReceived.countDown()
+                release.await(5, TimeUnit.SECONDS)
+                return MockResponse().setBody("fees ${request.sequenceNumber}")
+            }
+        }
+        server.start()
+    }
+
+    @After
+    fun teardown() {
+        release.countDown()
+        executor.shutdownNow()
+        server.shutdown()
+    }
+
+    @Test
+    fun `identical requests in flight share one response`() {
+        val first = call(get("/mempool/fees/btc"))
+        firstRequestReceived.await(5, TimeUnit.SECONDS)
+
+        val second = call(get("/mempool/fees/btc"))
+        val third = call(get("/mempool/fees/btc"))
+        awaitSuppressed(2)
+        release.countDown()
+
+        first.get() `should equal` "fees 0"
+        second.get() `should equal` "fees 0"
+        third.get() `should equal` "fees 0"
+        server.requestCount `should equal` 1
+        metrics.suppressedByEndpoint `should equal` mapOf("${server.hostName}/mempool/fees/btc" to 2L)
+    }
+
+    @Test
+    fun `requests after the first has completed go to the network`() {
+        release.countDown()
+
+        call(get("/mempool/fees/btc")).get() `should equal` "fees 0"
+        call(get("/mempool/fees/btc")).get() `should equal` "fees 1"
+
+        server.requestCount `should equal` 2
+        metrics.suppressedCount `should equal` 0L
+    }
+
+    @Test
+    fun `requests with different headers are not merged`() {
+        val first = call(get("/nabu-gateway/user").newBuilder().header("Authorization", "Bearer 1").build())
+        firstRequestReceived.await(5, TimeUnit.SECONDS)
+        val second = call(get("/nabu-gateway/user").newBuilder().header("Authorization", "Bearer 2").build())
+        release.countDown()
+
+        first.get()
+        second.get()
+        server.requestCount `should equal` 2
+        metrics.suppressedCount `should equal` 0L
+    }
+
+    @Test
+    fun `posts are not merged`() {
+        val post = get("/wallet").newBuilder().post("payload".toRequestBody()).build()
+        val first = call(post)
+        firstRequestReceived.await(5, TimeUnit.SECONDS)
+        val second = call(post)
+        release.countDown()
+
+        first.get()
+        second.get()
+        server.requestCount `should equal` 2
+    }
+
+    @Test
+    fun `cancelling the first request doesn't cancel the others`() {
+        val firstCall = client.newCall(get("/multiaddr"))
+        val first = executor.submit<Unit> { runCatching { firstCall.execute().close() } }
+        firstRequestReceived.await(5, TimeUnit.SECONDS)
+
+        val second = call(get("/multiaddr"))
+        awaitSuppressed(1)
+        firstCall.cancel()
+        first.get()
+        release.countDown()
+
+        second.get() `should equal` "fees 1"
+    }
+
+    @Test
+    fun `cancelling a waiting request frees it without waiting for the first`() {
+        val first = call(get("/multiaddr"))
+        firstRequestReceived.await(5, TimeUnit.SECONDS)
+
+        val secondCall = client.newCall(get("/multiaddr"))
+        val second = executor.submit<Boolean> {
+            try {
+                secondCall.execute().close()
+                false
+            } catch (e: IOException) {
+                true
+            }
+        }
+        awaitSuppressed(1)
+        secondCall.cancel()
+
+        second.get(1, TimeUnit.SECONDS) `should equal` true
+        release.countDown()
+        first.get() `should equal` "fees 0"
+    }
+
+    private fun get(path: String): Request =
+        Request.Builder().url(server.url(path)).build()
+
+    private fun call(request: Request): Future<String> =
+        executor.submit<String> {
+            client.newCall(request).execute().use { it.body!!.string() }
+        }
+
+    private fun awaitSuppressed(count: Long) {
+        val end = System.currentTimeMillis() + 5000
+        while (metrics.suppressedCount < count && System.currentTimeMillis() < end) {
+            Thread.sleep(10)
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.blockchain.koin
 
+import android.content.Context
 import android.preference.PreferenceManager
 import com.blockchain.datamanagers.DataManagerPayloadDecrypt
 import com.blockchain.logging.LastTxUpdateDateOnSettingsService
@@ -25,7 +26,10 @@ import com.blockchain.wallet.SeedAccessWithoutPrompt
 import info.blockchain.api.blockexplorer.BlockExplorer
 import info.blockchain.balance.ExchangeRates
 import info.blockchain.wallet.metadata.MetadataDerivation
+import info.blockchain.wallet.multiaddress.FileTransactionSummaryStore
+import info.blockchain.wallet.multiaddress.TransactionSummaryStore
 import info.blockchain.wallet.util.PrivateKeyFactory
+import okhttp3.Cache
 import org.bitcoinj.params.BitcoinMainNetParams
 import org.koin.dsl.bind
 import org.koin.dsl.module
@@ -37,10 +41,13 @@ import piuk.blockchain.androidcore.data.auth.AuthDataManager
 import piuk.blockchain.androidcore.data.auth.AuthService
 import piuk.blockchain.androidcore.data.bitcoincash.BchDataStore
 import piuk.blockchain.androidcore.data.erc20.datastores.Erc20DataStore
+import piuk.blockchain.androidcore.data.ethereum.EthFeeResolver
 import piuk.blockchain.androidcore.data.ethereum.datastores.EthDataStore
+import piuk.blockchain.androidcore.data.ethereum.datastores.EthFeeStore
 import piuk.blockchain.androidcore.data.exchangerate.ExchangeRateDataManager
 import piuk.blockchain.androidcore.data.exchangerate.ExchangeRateService
 import piuk.blockchain.androidcore.data.exchangerate.datastore.ExchangeRateDataStore
+import piuk.blockchain.androidcore.data.exchangerate.datastore.HistoricPriceStore
 import piuk.blockchain.androidcore.data.fees.FeeDataManager
 import piuk.blockchain.androidcore.data.metadata.MetadataManager
 import piuk.blockchain.androidcore.data.metadata.MoshiMetadataRepositoryAdapter
@@ -69,12 +76,34 @@ import piuk.blockchain.androidcore.utils.EncryptedPrefs
 import piuk.blockchain.androidcore.utils.PersistentPrefs
 import piuk.blockchain.androidcore.utils.PrefsUtil
 import piuk.blockchain.androidcore.utils.UUIDGenerator
+import java.io.File
 import java.util.UUID
 
+private const val HTTP_CACHE_SIZE = 10L * 1024 * 1024
+
 val coreModule = module {
 
     single { RxBus() }
 
+    single {
+        FileTransactionSummaryStore(File(get<Context>().filesDir, "transaction_summaries"))
+    }.bind(TransactionSummaryStore::class)
+
+    single {
+        Cache(File(get<Context>().cacheDir, "http"), HTTP_CACHE_SIZE)
+    }
+
+    single {
+        EthFeeStore(File(get<Context>().filesDir, "eth_fees"))
+    }
+
+    single {
+        HistoricPriceStore(
+            exchangeRateService = get(),
+            directory = File(get<Context>().filesDir, "historic_prices")
+        )
+    }
+
     factory { AuthService(get(), get()) }
 
     factory { PrivateKeyFactory() }
@@ -83,6 +112,13 @@ val coreModule = module {
 
         factory { PayloadService(get()) }
 
+        scoped {
+            EthFeeResolver(
+                ethAccountApi = get(),
+                feeStore = get()
+            )
+        }
+
         factory { PayloadDataManager(get(), get(), get(), get(), get()) }
 
         factory {
@@ -137,7 +173,7 @@ val coreModule = module {
 
         factory { ExchangeRateDataManager(get(), get()) }.bind(ExchangeRates::class)
 
-        scoped { ExchangeRateDataStore(get(), get()) }
+        scoped { ExchangeRateDataStore(get(), get(), get()) }
 
         scoped { FeeDataManager(get(), get(), get()) }
 
@@ -11,6 +11,7 @@ import info.blockchain.wallet.coin.GenericMetadataAccount
 import info.blockchain.wallet.coin.GenericMetadataWallet
 import info.blockchain.wallet.crypto.DeterministicAccount
 import info.blockchain.wallet.multiaddress.TransactionSummary
+import info.blockchain.wallet.multiaddress.TransactionSummaryStore
 import info.blockchain.wallet.payload.data.isArchived
 import io.reactivex.Completable
 import io.reactivex.Maybe
@@ -36,7 +37,8 @@ class BchDataManager(
     private val blockExplorer: BlockExplorer,
     private val defaultLabels: DefaultLabels,
     private val metadataManager: MetadataManager,
-    rxBus: RxBus
+    rxBus: RxBus,
+    private val transactionSummaryStore: TransactionSummaryStore? = null
 ) {
 
     private val rxPinning = RxPinning(rxBus)
@@ -202,6 +204,7 @@ class BchDataManager(
                 walletMetadata.accounts[i].xpub = account.xpub
             }
         }
+        transactionSummaryStore?.let { bchDataStore.bchWallet?.setTransactionSummaryStore(it) }
     }
 
     /**
@@ -253,6 +256,7 @@ class BchDataManager(
             bchDataStore.bchWallet?.addAccount()
             bchDataStore.bchMetadata!!.accounts[i].xpub = account.xpub
         }
+        transactionSummaryStore?.let { bchDataStore.bchWallet?.setTransactionSummaryStore(it) }
     }
 
     /**
@@ -435,6 +439,8 @@ class BchDataManager(
 
     fun isOwnAddress(address: String) = bchDataStore.bchWallet?.isOwnAddress(address) ?: false
 
+    fun isImportedAddress(address: String) = bchDataStore.bchWallet?.isImportedAddress(address) ?: false
+
     /**
      * Converts any Bitcoin Cash address to a label.
      *
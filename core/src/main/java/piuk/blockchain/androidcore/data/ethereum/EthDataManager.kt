@@ -50,6 +50,7 @@ class EthDataManager(
     private val metadataManager: MetadataManager,
     private val environmentSettings: EnvironmentConfig,
     private val lastTxUpdater: LastTxUpdater,
+    private val feeResolver: EthFeeResolver,
     rxBus: RxBus
 ) {
 
@@ -348,6 +349,14 @@ class EthDataManager(
                 .applySchedulers()
         }
 
+    /**
+     * Returns the fee paid by the transaction with the given hash. Lookups are batched and
+     * the fees of confirmed transactions are stored, see [EthFeeResolver].
+     */
+    fun getTransactionFee(hash: String): Observable<BigInteger> =
+        feeResolver.getFee(hash)
+            .applySchedulers()
+
     fun getNonce(): Single<BigInteger> =
         fetchEthAddress()
             .singleOrError()
@@ -0,0 +1,98 @@
+package piuk.blockchain.androidcore.data.ethereum
+
+import info.blockchain.wallet.ethereum.EthAccountApi
+import info.blockchain.wallet.ethereum.data.EthTransaction
+import info.blockchain.wallet.ethereum.data.TransactionState
+import io.reactivex.Completable
+import io.reactivex.Observable
+import io.reactivex.Scheduler
+import io.reactivex.Single
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.subjects.PublishSubject
+import io.reactivex.subjects.SingleSubject
+import piuk.blockchain.androidcore.data.ethereum.datastores.EthFeeStore
+import timber.log.Timber
+import java.math.BigInteger
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Resolves the fees paid by ETH transactions, eg. for the ERC20 transfers in an activity list.
+ *
+ * Hashes requested within a short window of each other, as the rows on screen are bound, are
+ * fetched together, with a bounded number of requests in flight, and each hash is only ever
+ * fetched once at a time. Fees of confirmed transactions are kept in the [EthFeeStore], so are
+ * only ever fetched once.
+ */
+class EthFeeResolver(
+    private val ethAccountApi: EthAccountApi,
+    private val feeStore: EthFeeStore,
+    private val scheduler: Scheduler = Schedulers.io()
+) {
+    private val pending = ConcurrentHashMap<String, SingleSubject<BigInteger>>()
+    private val batches = PublishSubject.create<List<String>>().toSerialized()
+
+    // Guarded by this
+    private var queued = mutableListOf<String>()
+    private var flushScheduled = false
+
+    init {
+        batches.flatMapIterable { it }
+            .flatMap({ hash -> fetch(hash).toObservable<Unit>() }, MAX_CONCURRENT_REQUESTS)
+            .subscribe()
+    }
+
+    fun getFee(hash: String): Observable<BigInteger> =
+        Observable.defer {
+            feeStore.get(hash)?.let { Observable.just(it) } ?: request(hash).toObservable()
+        }
+
+    private fun request(hash: String): Single<BigInteger> {
+        val request = SingleSubject.create<BigInteger>()
+        pending.putIfAbsent(hash, request)?.let { return it }
+
+        synchronized(this) {
+            queued.add(hash)
+            if (!flushScheduled) {
+                flushScheduled = true
+                scheduler.scheduleDirect({ flush() }, BATCH_WINDOW_MS, TimeUnit.MILLISECONDS)
+            }
+        }
+        return request
+    }
+
+    private fun flush() {
+        val batch = synchronized(this) {
+            queued.also {
+                queued = mutableListOf()
+                flushScheduled = false
+            }
+        }
+        batches.onNext(batch)
+    }
+
+    private fun fetch(hash: String): Completable =
+        ethAccountApi.getTransaction(hash)
+            .singleOrError()
+            .doOnSuccess { transaction ->
+                val fee = transaction.gasUsed * transaction.gasPrice
+                if (transaction.isConfirmed()) {
+                    feeStore.put(hash, fee)
+                }
+                pending.remove(hash)?.onSuccess(fee)
+            }
+            .doOnError { e ->
+                Timber.e(e, "Unable to fetch fee for $hash")
+                pending.remove(hash)?.onError(e)
+            }
+            .ignoreElement()
+            .onErrorComplete()
+
+    private fun EthTransaction.isConfirmed() =
+        state == TransactionState.CONFIRMED.name && (blockNumber ?: 0L) > 0L
+
+    companion object {
+        private const val BATCH_WINDOW_MS = 100L
+        private const val MAX_CONCURRENT_REQUESTS = 4
+    }
+}
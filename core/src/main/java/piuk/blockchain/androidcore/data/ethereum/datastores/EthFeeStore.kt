@@ -0,0 +1,66 @@
+package piuk.blockchain.androidcore.data.ethereum.datastores
+
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import java.math.BigInteger
+
+/**
+ * Keeps the fees paid by confirmed ETH transactions, which never change, in a file of one
+ * "hash fee" pair per line. Lines are appended and never rewritten, and only complete lines are read
+ * back, so a line truncated by the process dying mid-write is skipped rather than read as a wrong fee.
+ */
+class EthFeeStore(private val file: File) {
+
+    private var fees: MutableMap<String, BigInteger>? = null
+
+    @Synchronized
+    fun get(hash: String): BigInteger? = loaded()[hash]
+
+    @Synchronized
+    fun put(hash: String, fee: BigInteger) {
+        val fees = loaded()
+        if (fees.containsKey(hash)) {
+            return
+        }
+        fees[hash] = fee
+
+        try {
+            file.parentFile?.mkdirs()
+            file.appendText("$hash $fee\n")
+        } catch (e: IOException) {
+            Timber.e(e, "Unable to store ETH fee")
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        fees = null
+        if (file.exists() && !file.delete()) {
+            Timber.e("Unable to delete ETH fee store")
+        }
+    }
+
+    private fun loaded(): MutableMap<String, BigInteger> =
+        fees ?: read().also { fees = it }
+
+    private fun read(): MutableMap<String, BigInteger> {
+        val fees = mutableMapOf<String, BigInteger>()
+        if (!file.exists()) {
+            return fees
+        }
+
+        try {
+            file.readText().split('\n').dropLast(1).forEach { line ->
+                val parts = line.split(' ')
+                val fee = parts.getOrNull(1)?.toBigIntegerOrNull()
+                if (parts.size == 2 && fee != null) {
+                    fees[parts[0]] = fee
+                }
+            }
+        } catch (e: IOException) {
+            Timber.e(e, "Unable to read ETH fee store")
+        }
+        return fees
+    }
+}
@@ -30,11 +30,11 @@ class ExchangeRateDataManager(
         rxPinning.call { exchangeRateDataStore.updateExchangeRates() }
             .subscribeOn(Schedulers.io())
 
-    override fun getLastPrice(cryptoCurrency: CryptoCurrency, currencyName: String) =
-        BigDecimal(exchangeRateDataStore.getLastPrice(cryptoCurrency, currencyName))
+    override fun getLastPrice(cryptoCurrency: CryptoCurrency, currencyName: String): BigDecimal =
+        exchangeRateDataStore.getLastPrice(cryptoCurrency, currencyName)
 
-    override fun getLastPriceOfFiat(targetFiat: String, sourceFiat: String) =
-        BigDecimal(exchangeRateDataStore.getFiatLastPrice(targetFiat = targetFiat, sourceFiat = sourceFiat))
+    override fun getLastPriceOfFiat(targetFiat: String, sourceFiat: String): BigDecimal =
+        exchangeRateDataStore.getFiatLastPrice(targetFiat = targetFiat, sourceFiat = sourceFiat)
 
     fun getHistoricPrice(value: Money, fiat: String, timeInSeconds: Long): Single<FiatValue> =
         exchangeRateDataStore.getHistoricPrice(
@@ -3,102 +3,134 @@ package piuk.blockchain.androidcore.data.exchangerate.datastore
 import info.blockchain.balance.CryptoCurrency
 import info.blockchain.wallet.prices.data.PriceDatum
 import io.reactivex.Completable
+import io.reactivex.Scheduler
 import io.reactivex.Single
+import io.reactivex.schedulers.Schedulers
 import piuk.blockchain.androidcore.data.exchangerate.ExchangeRateService
 import piuk.blockchain.androidcore.utils.PersistentPrefs
 import timber.log.Timber
 import java.math.BigDecimal
+import java.math.MathContext
+import java.util.EnumMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+
+private typealias RateTable = Map<CryptoCurrency, Map<String, BigDecimal>>
 
 class ExchangeRateDataStore(
     private val exchangeRateService: ExchangeRateService,
-    private val prefs: PersistentPrefs
+    private val prefs: PersistentPrefs,
+    private val historicPrices: HistoricPriceStore,
+    private val persistScheduler: Scheduler = Schedulers.io()
 ) {
 
-    // Ticker data
-    private var btcTickerData: Map<String, PriceDatum>? = null
-    private var ethTickerData: Map<String, PriceDatum>? = null
-    private var bchTickerData: Map<String, PriceDatum>? = null
-    private var xlmTickerData: Map<String, PriceDatum>? = null
-    private var paxTickerData: Map<String, PriceDatum>? = null
-    private var algTickerData: Map<String, PriceDatum>? = null
-    private var usdtTickerData: Map<String, PriceDatum>? = null
-    private var dgldTickerData: Map<String, PriceDatum>? = null
+    // Latest prices by asset and then fiat. The table is never modified, a refreshed copy is
+    // swapped in instead, so readers always see a consistent snapshot without locking.
+    private val rates = AtomicReference<RateTable>(emptyMap())
+
+    // Last known prices already read from prefs, or waiting to be written to them
+    private val lastKnown = ConcurrentHashMap<String, BigDecimal>()
+    private val unsaved = ConcurrentHashMap<String, BigDecimal>()
+    private val saveScheduled = AtomicBoolean(false)
 
     fun updateExchangeRates(): Completable = Single.merge(
-        listOf(
-            exchangeRateService.getExchangeRateMap(CryptoCurrency.BTC)
-                .doOnSuccess { btcTickerData = it.toMap() },
-            exchangeRateService.getExchangeRateMap(CryptoCurrency.BCH)
-                .doOnSuccess { bchTickerData = it.toMap() },
-            exchangeRateService.getExchangeRateMap(CryptoCurrency.ETHER)
-                .doOnSuccess { ethTickerData = it.toMap() },
-            exchangeRateService.getExchangeRateMap(CryptoCurrency.XLM)
-                .doOnSuccess { xlmTickerData = it.toMap() },
-            exchangeRateService.getExchangeRateMap(CryptoCurrency.PAX)
-                .doOnSuccess { paxTickerData = it.toMap() },
-            exchangeRateService.getExchangeRateMap(CryptoCurrency.ALGO)
-                .doOnSuccess { algTickerData = it.toMap() },
-            exchangeRateService.getExchangeRateMap(CryptoCurrency.USDT)
-                .doOnSuccess { usdtTickerData = it.toMap() },
-            exchangeRateService.getExchangeRateMap(CryptoCurrency.DGLD)
-                .doOnSuccess { dgldTickerData = it.toMap() }
-        )
+        CryptoCurrency.values()
+            .filterNot { it.hasFeature(CryptoCurrency.STUB_ASSET) }
+            .map { cryptoCurrency ->
+                exchangeRateService.getExchangeRateMap(cryptoCurrency)
+                    .doOnSuccess { swapRates(cryptoCurrency, it.toPrices()) }
+            }
     ).ignoreElements()
 
-    fun getCurrencyLabels(): Array<String> = btcTickerData!!.keys.toTypedArray()
+    private fun swapRates(cryptoCurrency: CryptoCurrency, prices: Map<String, BigDecimal>) {
+        while (true) {
+            val current = rates.get()
+            val updated = EnumMap<CryptoCurrency, Map<String, BigDecimal>>(CryptoCurrency::class.java)
+                .apply {
+                    putAll(current)
+                    put(cryptoCurrency, prices)
+                }
+            if (rates.compareAndSet(current, updated)) {
+                return
+            }
+        }
+    }
+
+    fun getCurrencyLabels(): Array<String> = rates.get()[CryptoCurrency.BTC]!!.keys.toTypedArray()
 
-    fun getLastPrice(cryptoCurrency: CryptoCurrency, fiatCurrency: String): Double {
+    fun getLastPrice(cryptoCurrency: CryptoCurrency, fiatCurrency: String): BigDecimal {
         if (fiatCurrency.isEmpty()) {
             throw IllegalArgumentException("No currency supplied")
         }
 
-        val tickerData = cryptoCurrency.tickerData()
-
         val prefsKey = "LAST_KNOWN_${cryptoCurrency.networkTicker}_VALUE_FOR_CURRENCY_$fiatCurrency"
+        val lastPrice = rates.get()[cryptoCurrency]?.get(fiatCurrency)
+
+        return if (lastPrice != null) {
+            if (lastKnown.put(prefsKey, lastPrice) != lastPrice) {
+                save(prefsKey, lastPrice)
+            }
+            lastPrice
+        } else {
+            lastKnown.getOrPut(prefsKey) { readLastKnown(prefsKey) }
+        }
+    }
+
+    fun getFiatLastPrice(targetFiat: String, sourceFiat: String): BigDecimal {
+        val btcRates = rates.get()[CryptoCurrency.BTC] ?: return BigDecimal.ZERO
+        val targetCurrencyPrice = btcRates[targetFiat] ?: return BigDecimal.ZERO
+        val sourceCurrencyPrice = btcRates[sourceFiat] ?: return BigDecimal.ZERO
+        // An unpriced currency can't be converted from
+        if (sourceCurrencyPrice.signum() == 0) return BigDecimal.ZERO
+        return targetCurrencyPrice.divide(sourceCurrencyPrice, MathContext.DECIMAL64)
+    }
 
-        val lastKnown = try {
-            prefs.getValue(prefsKey, "0.0").toDouble()
+    private fun readLastKnown(prefsKey: String): BigDecimal =
+        try {
+            BigDecimal(prefs.getValue(prefsKey, "0.0"))
         } catch (e: NumberFormatException) {
             Timber.e(e)
             prefs.setValue(prefsKey, "0.0")
-            0.0
+            BigDecimal.ZERO
         }
 
-        val lastPrice: Double? = tickerData?.get(fiatCurrency)?.price
-
-        if (lastPrice != null) {
-            prefs.setValue("$prefsKey$fiatCurrency", lastPrice.toString())
+    // Prices are written in batches, off the calling thread, a short while after they change
+    private fun save(prefsKey: String, price: BigDecimal) {
+        unsaved[prefsKey] = price
+        if (saveScheduled.compareAndSet(false, true)) {
+            persistScheduler.scheduleDirect({ saveLastKnown() }, SAVE_DELAY_MS, TimeUnit.MILLISECONDS)
         }
-
-        return lastPrice ?: lastKnown
     }
 
-    fun getFiatLastPrice(targetFiat: String, sourceFiat: String): Double {
-        val targetCurrencyPrice =
-            CryptoCurrency.BTC.tickerData()?.get(targetFiat)?.price ?: return 0.0
-        val sourceCurrencyPrice =
-            CryptoCurrency.BTC.tickerData()?.get(sourceFiat)?.price ?: return 0.0
-        return targetCurrencyPrice.div(sourceCurrencyPrice)
-    }
-
-    private fun CryptoCurrency.tickerData() =
-        when (this) {
-            CryptoCurrency.BTC -> btcTickerData
-            CryptoCurrency.ETHER -> ethTickerData
-            CryptoCurrency.BCH -> bchTickerData
-            CryptoCurrency.XLM -> xlmTickerData
-            CryptoCurrency.PAX -> paxTickerData
-            CryptoCurrency.STX -> TODO("STUB: STX NOT IMPLEMENTED")
-            CryptoCurrency.ALGO -> algTickerData
-            CryptoCurrency.USDT -> usdtTickerData
-            CryptoCurrency.DGLD -> dgldTickerData
+    private fun saveLastKnown() {
+        saveScheduled.set(false)
+        for (prefsKey in unsaved.keys) {
+            unsaved.remove(prefsKey)?.let { price ->
+                prefs.setValue(prefsKey, price.toPlainString())
+            }
         }
+    }
 
     fun getHistoricPrice(
         cryptoCurrency: CryptoCurrency,
         fiat: String,
         timeInSeconds: Long
     ): Single<BigDecimal> =
-        exchangeRateService.getHistoricPrice(cryptoCurrency, fiat, timeInSeconds)
-            .map { it.toBigDecimal() }
+        historicPrices.getHistoricPrice(cryptoCurrency, fiat, timeInSeconds)
+
+    companion object {
+        private const val SAVE_DELAY_MS = 1000L
+    }
+}
+
+// Double.toBigDecimal goes through the shortest decimal representation of the double, which is
+// the price as it was sent by the API, rather than the binary expansion of the double
+private fun Map<String, PriceDatum>.toPrices(): Map<String, BigDecimal> {
+    val prices = HashMap<String, BigDecimal>(size)
+    for ((fiat, datum) in this) {
+        datum.price?.let { prices[fiat] = it.toBigDecimal() }
+    }
+    return prices
 }
@@ -0,0 +1,220 @@
+package piuk.blockchain.androidcore.data.exchangerate.datastore
+
+import info.blockchain.balance.CryptoCurrency
+import info.blockchain.wallet.prices.TimeInterval
+import io.reactivex.Completable
+import io.reactivex.Single
+import piuk.blockchain.androidcore.data.exchangerate.ExchangeRateService
+import piuk.blockchain.androidcore.data.exchangerate.TimeSpan
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import java.math.BigDecimal
+import java.math.MathContext
+import java.util.TreeMap
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Answers historic price lookups, eg. the fiat value of a transaction when it was executed, from
+ * locally held price series rather than one price API call per lookup.
+ *
+ * Series are downloaded in bulk, daily for all time and every two hours for the last month, and
+ * prices between two points are interpolated. A lookup which still can't be answered fetches the
+ * single price it needs, which is then kept with the series. Past prices never change, so every
+ * point is written to a file per asset and fiat, and is never downloaded again.
+ */
+class HistoricPriceStore(
+    private val exchangeRateService: ExchangeRateService,
+    private val directory: File,
+    private val clock: () -> Long = { System.currentTimeMillis() / 1000 }
+) {
+    private val histories = ConcurrentHashMap<String, PriceHistory>()
+
+    fun getHistoricPrice(
+        cryptoCurrency: CryptoCurrency,
+        fiat: String,
+        timeInSeconds: Long
+    ): Single<BigDecimal> =
+        Single.defer {
+            val history = histories.getOrPut("${cryptoCurrency.networkTicker}_$fiat") {
+                PriceHistory(File(directory, "${cryptoCurrency.networkTicker}_$fiat"))
+            }
+            val maxGap = maxGapAt(timeInSeconds)
+
+            history.priceAt(timeInSeconds, maxGap)?.let { Single.just(it) }
+                ?: fetchSeries(history, cryptoCurrency, fiat, seriesFor(timeInSeconds))
+                    .andThen(Single.defer {
+                        history.priceAt(timeInSeconds, maxGap)?.let { Single.just(it) }
+                            ?: fetchPrice(history, cryptoCurrency, fiat, timeInSeconds)
+                    })
+        }
+
+    private fun isRecent(timeInSeconds: Long) =
+        timeInSeconds > clock() - RECENT_SECONDS
+
+    private fun seriesFor(timeInSeconds: Long) =
+        if (isRecent(timeInSeconds)) TimeSpan.MONTH else TimeSpan.ALL_TIME
+
+    private fun maxGapAt(timeInSeconds: Long): Long =
+        if (isRecent(timeInSeconds)) {
+            TimeInterval.TWO_HOURS.intervalSeconds + GAP_TOLERANCE_SECONDS
+        } else {
+            TimeInterval.ONE_DAY.intervalSeconds + GAP_TOLERANCE_SECONDS
+        }
+
+    // Each series is downloaded at most once at a time, and, as newer points are added to it,
+    // at most once a refresh period. A failed download is left to the single price fallback.
+    private fun fetchSeries(
+        history: PriceHistory,
+        cryptoCurrency: CryptoCurrency,
+        fiat: String,
+        timeSpan: TimeSpan
+    ): Completable {
+        val now = clock()
+        val lastFetched = history.seriesFetched[timeSpan]
+        if (lastFetched != null && now - lastFetched < SERIES_REFRESH_SECONDS) {
+            return Completable.complete()
+        }
+
+        return history.seriesInFlight.getOrPut(timeSpan) {
+            Single.defer {
+                exchangeRateService.getHistoricPriceSeries(
+                    cryptoCurrency,
+                    fiat,
+                    timeSpan,
+                    if (timeSpan == TimeSpan.ALL_TIME) TimeInterval.ONE_DAY else TimeInterval.TWO_HOURS
+                )
+            }.doOnSuccess { series ->
+                history.add(series.mapNotNull { datum ->
+                    datum.price?.let { datum.timestamp to it.toBigDecimal() }
+                })
+                history.seriesFetched[timeSpan] = now
+            }.doOnError {
+                Timber.e(it, "Unable to fetch $timeSpan ${cryptoCurrency.networkTicker} prices")
+            }.ignoreElement()
+                .onErrorComplete()
+                .doFinally { history.seriesInFlight.remove(timeSpan) }
+                .cache()
+        }
+    }
+
+    private fun fetchPrice(
+        history: PriceHistory,
+        cryptoCurrency: CryptoCurrency,
+        fiat: String,
+        timeInSeconds: Long
+    ): Single<BigDecimal> =
+        exchangeRateService.getHistoricPrice(cryptoCurrency, fiat, timeInSeconds)
+            .map { it.toBigDecimal() }
+            .doOnSuccess { history.add(listOf(timeInSeconds to it)) }
+
+    /**
+     * The known prices of one asset in one fiat, as a table sorted by time which is never
+     * modified. New points are merged into a copy which is swapped in, so lookups don't lock.
+     */
+    private class PriceHistory(private val file: File) {
+
+        val seriesFetched = ConcurrentHashMap<TimeSpan, Long>()
+        val seriesInFlight = ConcurrentHashMap<TimeSpan, Completable>()
+
+        @Volatile
+        private var table: PriceTable? = null
+
+        fun priceAt(time: Long, maxGap: Long): BigDecimal? =
+            (table ?: loaded()).priceAt(time, maxGap)
+
+        @Synchronized
+        fun add(points: List<Pair<Long, BigDecimal>>) {
+            val current = loaded()
+            val added = points.filter { (time, _) -> current.indexOf(time) < 0 }
+            if (added.isEmpty()) {
+                return
+            }
+            table = current.plus(added)
+
+            try {
+                file.parentFile?.mkdirs()
+                file.appendText(added.joinToString(separator = "") { (time, price) ->
+                    "$time ${price.toPlainString()}\n"
+                })
+            } catch (e: IOException) {
+                Timber.e(e, "Unable to store historic prices")
+            }
+        }
+
+        @Synchronized
+        private fun loaded(): PriceTable =
+            table ?: read().also { table = it }
+
+        // Only complete lines are read, so a line truncated by the process dying mid-write is
+        // skipped rather than read as a wrong price
+        private fun read(): PriceTable {
+            val points = mutableListOf<Pair<Long, BigDecimal>>()
+            if (file.exists()) {
+                try {
+                    file.readText().split('\n').dropLast(1).forEach { line ->
+                        val parts = line.split(' ')
+                        val time = parts.getOrNull(0)?.toLongOrNull()
+                        val price = parts.getOrNull(1)?.toBigDecimalOrNull()
+                        if (parts.size == 2 && time != null && price != null) {
+                            points.add(time to price)
+                        }
+                    }
+                } catch (e: IOException) {
+                    Timber.e(e, "Unable to read historic prices")
+                }
+            }
+            return PriceTable.EMPTY.plus(points)
+        }
+    }
+
+    private class PriceTable(
+        private val times: LongArray,
+        private val prices: Array<BigDecimal>
+    ) {
+        fun indexOf(time: Long): Int = times.binarySearch(time)
+
+        // The price at the given time, interpolated between the points either side of it if
+        // they are no more than maxGap apart
+        fun priceAt(time: Long, maxGap: Long): BigDecimal? {
+            val index = indexOf(time)
+            if (index >= 0) {
+                return prices[index]
+            }
+
+            val after = -index - 1
+            if (after == 0 || after == times.size) {
+                return null
+            }
+            val before = after - 1
+            val gap = times[after] - times[before]
+            if (gap > maxGap) {
+                return null
+            }
+
+            val fraction = BigDecimal(time - times[before])
+                .divide(BigDecimal(gap), MathContext.DECIMAL64)
+            return prices[before] + (prices[after] - prices[before]).multiply(fraction, MathContext.DECIMAL64)
+        }
+
+        fun plus(points: List<Pair<Long, BigDecimal>>): PriceTable {
+            if (points.isEmpty()) {
+                return this
+            }
+            val merged = TreeMap<Long, BigDecimal>()
+            times.forEachIndexed { i, time -> merged[time] = prices[i] }
+            points.forEach { (time, price) -> merged[time] = price }
+            return PriceTable(merged.keys.toLongArray(), merged.values.toTypedArray())
+        }
+
+        companion object {
+            val EMPTY = PriceTable(LongArray(0), emptyArray())
+        }
+    }
+
+    companion object {
+        private const val RECENT_SECONDS = 30L * 24 * 60 * 60
+        private const val GAP_TOLERANCE_SECONDS = 60L * 60
+        private const val SERIES_REFRESH_SECONDS = 60L * 60
+    }
+}
@@ -530,6 +530,27 @@ class PayloadDataManager(
         payloadManager.subtractAmountFromAddressBalance(address, BigInteger.valueOf(spentAmount))
     }
 
+    /**
+     * Applies the balance changes of a single transaction without fetching all balances again.
+     *
+     * @param txHash The hash of the transaction
+     * @param txTimeSeconds The time the network first saw the transaction, in epoch seconds
+     * @param deltas Credits and debits in satoshis, keyed by xpub or address
+     * @return false if a full [updateAllBalances] is needed instead
+     */
+    fun applyTransactionBalanceDeltas(
+        txHash: String,
+        txTimeSeconds: Long,
+        deltas: Map<String, BigInteger>
+    ): Boolean =
+        payloadManager.applyTransactionBalanceDeltas(txHash, txTimeSeconds, deltas)
+
+    /**
+     * @return true if balances kept up to date by [applyTransactionBalanceDeltas] are due a full
+     * [updateAllBalances]
+     */
+    fun isBalanceReconcileDue(): Boolean = payloadManager.isBalanceReconcileDue
+
     /**
      * Increments the index on the receive chain for an [Account] object.
      *
@@ -574,6 +595,14 @@ class PayloadDataManager(
      */
     fun isOwnHDAddress(address: String): Boolean = payloadManager.isOwnHDAddress(address)
 
+    /**
+     * Returns true if the supplied address is one of the user's imported addresses.
+     *
+     * @param address The address you want to query as a String
+     * @return true if the address is imported
+     */
+    fun isImportedAddress(address: String): Boolean = payloadManager.isImportedAddress(address)
+
     // /////////////////////////////////////////////////////////////////////////
     // CONTACTS/METADATA/IWCS/CRYPTO-MATRIX METHODS
     // /////////////////////////////////////////////////////////////////////////
@@ -593,6 +622,28 @@ class PayloadDataManager(
                     .filter { !it.isWatchOnly }
             }
 
+    /**
+     * Emits the transactions of an account, or of the whole wallet if no xPub is passed, one by one
+     * as they are summarised. The next page is fetched in the background while the current one is
+     * being consumed, and fetching stops as soon as the subscriber disposes.
+     *
+     * @param xpub The xPub to get transactions from, or null for all transactions
+     * @param pageSize Amount of transactions fetched per page
+     */
+    fun streamAccountTransactions(xpub: String?, pageSize: Int): Observable<TransactionSummary> =
+        Observable.using(
+            { payloadManager.getAccountTransactionsCursor(xpub, pageSize) },
+            { cursor ->
+                Observable.create<TransactionSummary> { emitter ->
+                    while (!emitter.isDisposed && cursor.hasNext()) {
+                        cursor.next().takeIf { !it.isWatchOnly }?.let { emitter.onNext(it) }
+                    }
+                    emitter.onComplete()
+                }
+            },
+            { cursor -> cursor.close() }
+        )
+
     /**
      * Returns the transaction notes for a given transaction hash. May return null if not found.
      *
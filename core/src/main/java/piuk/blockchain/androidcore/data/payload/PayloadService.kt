@@ -4,6 +4,7 @@ import info.blockchain.api.data.Balance
 import info.blockchain.wallet.exceptions.ApiException
 import info.blockchain.wallet.exceptions.DecryptionException
 import info.blockchain.wallet.exceptions.HDWalletException
+import info.blockchain.wallet.exceptions.ServerConnectionException
 import info.blockchain.wallet.payload.PayloadManager
 import info.blockchain.wallet.payload.data.Account
 import info.blockchain.wallet.payload.data.ImportedAddress
@@ -139,13 +140,14 @@ class PayloadService(private val payloadManager: PayloadManager) {
     // /////////////////////////////////////////////////////////////////////////
 
     /**
-     * Returns a [Completable] which saves the current payload to the server.
+     * Returns a [Completable] which saves the current payload to the server. Syncs requested in
+     * quick succession, eg while editing several labels, are made as a single upload.
      *
      * @return A [Completable] object
      */
     @WebRequest
-    internal fun syncPayloadWithServer(): Completable = Completable.fromCallable {
-        if (!payloadManager.save()) throw ApiException("Sync failed")
+    internal fun syncPayloadWithServer(): Completable = Completable.defer {
+        payloadManager.scheduleSave().mapSaveFailure()
     }
 
     /**
@@ -196,10 +198,10 @@ class PayloadService(private val payloadManager: PayloadManager) {
      * @return A [Completable] object
      */
     @WebRequest
-    internal fun updateTransactionNotes(transactionHash: String, notes: String): Completable {
-        payloadManager.payload!!.txNotes[transactionHash] = notes
-        return syncPayloadWithServer()
-    }
+    internal fun updateTransactionNotes(transactionHash: String, notes: String): Completable =
+        Completable.defer {
+            payloadManager.scheduleUpdateTransactionNote(transactionHash, notes).mapSaveFailure()
+        }
 
     // /////////////////////////////////////////////////////////////////////////
     // ACCOUNTS AND ADDRESS METHODS
@@ -266,8 +268,8 @@ class PayloadService(private val payloadManager: PayloadManager) {
      */
     @WebRequest
     internal fun addImportedAddress(importedAddress: ImportedAddress): Completable =
-        Completable.fromCallable {
-            payloadManager.addImportedAddress(importedAddress)
+        Completable.defer {
+            payloadManager.scheduleAddImportedAddress(importedAddress)
         }
 
     /**
@@ -278,8 +280,13 @@ class PayloadService(private val payloadManager: PayloadManager) {
      */
     @WebRequest
     internal fun updateImportedAddress(importedAddress: ImportedAddress): Completable =
-        Completable.fromCallable {
-            payloadManager.updateImportedAddress(importedAddress)
+        Completable.defer {
+            payloadManager.scheduleUpdateImportedAddress(importedAddress)
+        }
+
+    private fun Completable.mapSaveFailure(): Completable =
+        onErrorResumeNext {
+            Completable.error(if (it is ServerConnectionException) ApiException("Sync failed") else it)
         }
 
     // /////////////////////////////////////////////////////////////////////////
@@ -5,6 +5,7 @@ import info.blockchain.balance.CryptoCurrency
 import info.blockchain.wallet.api.dust.DustService
 import info.blockchain.wallet.exceptions.ApiException
 import info.blockchain.wallet.exceptions.TransactionHashApiException
+import info.blockchain.wallet.payment.BranchAndBound
 import info.blockchain.wallet.payment.Payment
 import info.blockchain.wallet.payment.SpendableUnspentOutputs
 import io.reactivex.Observable
@@ -23,6 +24,10 @@ class PaymentService(
     private val dustService: DustService
 ) {
 
+    // Looks for a selection which needs no change output before falling back to largest coins
+    // first. Replay protected (BCH) selections always use their own ordering.
+    private val coinSelection = BranchAndBound()
+
     /**
      * Submits a BTC payment to a specified Bitcoin address and returns the transaction hash if
      * successful
@@ -178,8 +183,8 @@ class PaymentService(
     /**
      * Returns a [SpendableUnspentOutputs] object from a given [UnspentOutputs] object,
      * given the payment amount and the current fee per kB. This method selects the minimum number
-     * of inputs necessary to allow a successful payment by selecting from the largest inputs
-     * first.
+     * of inputs necessary to allow a successful payment, preferring a selection which needs no
+     * change output and otherwise selecting from the largest inputs first.
      *
      * @param unspentCoins The addresses' [UnspentOutputs]
      * @param paymentAmount The amount you wish to send, as a [BigInteger]
@@ -195,7 +200,13 @@ class PaymentService(
         feePerKb: BigInteger,
         includeReplayProtection: Boolean
     ): SpendableUnspentOutputs =
-        payment.getSpendableCoins(unspentCoins, paymentAmount, feePerKb, includeReplayProtection)
+        payment.getSpendableCoins(
+            unspentCoins,
+            paymentAmount,
+            feePerKb,
+            includeReplayProtection,
+            coinSelection
+        )
 
     /**
      * Calculates the total amount of bitcoin that can be swept from an [UnspentOutputs]
@@ -156,8 +156,8 @@ class SendDataManager(
     /**
      * Returns a [SpendableUnspentOutputs] object from a given [UnspentOutputs] object,
      * given the payment amount and the current fee per kB. This method selects the minimum number
-     * of inputs necessary to allow a successful payment by selecting from the largest inputs
-     * first.
+     * of inputs necessary to allow a successful payment, preferring a selection which needs no
+     * change output and otherwise selecting from the largest inputs first.
      *
      * @param unspentCoins The addresses' [UnspentOutputs]
      * @param paymentAmount The amount you wish to send, as a [CryptoValue]
@@ -3,11 +3,14 @@ package piuk.blockchain.androidcore.data.rxjava;
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.reactivex.Observable;
+import io.reactivex.Observer;
+import io.reactivex.functions.Action;
 import io.reactivex.subjects.PublishSubject;
 import io.reactivex.subjects.Subject;
 import timber.log.Timber;
@@ -16,37 +19,42 @@ import timber.log.Timber;
  * A class that allows callers to register {@link PublishSubject} objects by passing in the class
  * type that you wish to emit as an event. It is intended to be instantiated as a Singleton via
  * DI.
+ *
+ * Registering, unregistering and emitting are all safe to call from any thread. Emitting never
+ * takes a lock; registering and unregistering share one.
  */
 public class RxBus {
 
     /**
-     * A map of lists of {@link PublishSubject} objects, where their type is used as the
-     * key for lookups. This holds weak references, in order to prevent potential memory leaks.
+     * A map of lists of registered subjects, where their type is used as the key for lookups.
+     * The lists are copy-on-write, so emitting iterates over a snapshot and registering on another
+     * thread at the same time is safe.
      */
     @SuppressWarnings("WeakerAccess")
     @VisibleForTesting
-    WeakHashMap<Object, List<Subject>> subjectsMap = new WeakHashMap<>();
+    final ConcurrentHashMap<Class<?>, List<Registration<?>>> subjectsMap = new ConcurrentHashMap<>();
+
+    // Held while adding to or removing from subjectsMap, so that a list isn't dropped as empty
+    // just as something is added to it
+    private final Object registrationLock = new Object();
+
+    private final ConcurrentHashMap<Class<?>, AtomicLong> emissionCounts = new ConcurrentHashMap<>();
 
     /**
      * Registers a new {@link PublishSubject} whose type matches the class {@code type} passed to
      * the method. Returns the PublishSubject so it can be subscribed to, events acted upon and
      * threading applied.
      *
+     * Once everything subscribed to the returned Observable has been disposed, it is unregistered
+     * automatically. Subscribing to it again registers it again.
+     *
      * @param type The class type of the events you wish to emit
-     * @return A {@link PublishSubject} with type {@code type}
+     * @return An {@link Observable} of events with type {@code type}
      */
-    @SuppressWarnings("Java8MapApi")
     public <T> Observable<T> register(@NonNull Class<T> type) {
-        List<Subject> subjects = subjectsMap.get(type);
-        if (subjects == null) {
-            subjects = new ArrayList<>();
-            subjectsMap.put(type, subjects);
-        }
-
-        Subject<T> subject = PublishSubject.create();
-        subjects.add(subject);
-
-        return subject;
+        Registration<T> registration = new Registration<>(type);
+        add(type, registration);
+        return registration;
     }
 
     /**
@@ -57,16 +65,8 @@ public class RxBus {
      * @param observable An {@link Observable} of type {@code type} which is currently subscribed to
      *                   it's associated {@link PublishSubject}
      */
-    @SuppressWarnings("SuspiciousMethodCalls")
     public void unregister(@NonNull Class type, @NonNull Observable observable) {
-        List<Subject> subjects = subjectsMap.get(type);
-        if (subjects != null) {
-            subjects.remove(observable);
-
-            if (subjects.isEmpty()) {
-                subjectsMap.remove(type);
-            }
-        } else {
+        if (!remove(type, observable)) {
             Timber.w("unregister of type " + type.getSimpleName() + " failed, as no PublishSubject with a matching type was found");
         }
     }
@@ -81,13 +81,93 @@ public class RxBus {
      */
     @SuppressWarnings("unchecked")
     public void emitEvent(@NonNull Class type, @NonNull Object content) {
-        List<Subject> subjects = subjectsMap.get(type);
-        if (subjects != null && !subjects.isEmpty()) {
-            for (Subject subject : subjects) {
-                subject.onNext(content);
+        emissionCount(type).incrementAndGet();
+
+        List<Registration<?>> registrations = subjectsMap.get(type);
+        if (registrations != null && !registrations.isEmpty()) {
+            for (Registration registration : registrations) {
+                registration.subject.onNext(content);
             }
         } else {
             Timber.i("emitEvent of type " + type.getSimpleName() + " failed, as no PublishSubject was registered");
         }
     }
+
+    /**
+     * @return The number of events of type {@code type} emitted so far, whether or not anything
+     * was registered to receive them
+     */
+    public long getEmissionCount(@NonNull Class type) {
+        AtomicLong count = emissionCounts.get(type);
+        return count != null ? count.get() : 0L;
+    }
+
+    private AtomicLong emissionCount(Class<?> type) {
+        AtomicLong count = emissionCounts.get(type);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = emissionCounts.putIfAbsent(type, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        return count;
+    }
+
+    private void add(Class<?> type, Registration<?> registration) {
+        synchronized (registrationLock) {
+            List<Registration<?>> registrations = subjectsMap.get(type);
+            if (registrations == null) {
+                registrations = new CopyOnWriteArrayList<>();
+                subjectsMap.put(type, registrations);
+            }
+
+            if (!registrations.contains(registration)) {
+                registrations.add(registration);
+            }
+        }
+    }
+
+    @SuppressWarnings("SuspiciousMethodCalls")
+    private boolean remove(Class<?> type, Object registration) {
+        synchronized (registrationLock) {
+            List<Registration<?>> registrations = subjectsMap.get(type);
+            if (registrations == null) {
+                return false;
+            }
+
+            boolean removed = registrations.remove(registration);
+            if (registrations.isEmpty()) {
+                subjectsMap.remove(type);
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * The {@link Observable} handed out by {@link #register(Class)}. Keeps track of its
+     * subscribers so it can be dropped from the bus once they have all gone.
+     */
+    final class Registration<T> extends Observable<T> {
+
+        private final Class<T> type;
+        final Subject<T> subject = PublishSubject.<T>create().toSerialized();
+
+        Registration(Class<T> type) {
+            this.type = type;
+        }
+
+        @Override
+        protected void subscribeActual(Observer<? super T> observer) {
+            add(type, this);
+            subject.doFinally(new Action() {
+                @Override
+                public void run() {
+                    if (!subject.hasObservers()) {
+                        remove(type, Registration.this);
+                    }
+                }
+            }).subscribe(observer);
+        }
+    }
 }
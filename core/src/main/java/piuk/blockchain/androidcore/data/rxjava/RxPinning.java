@@ -15,7 +15,6 @@ public class RxPinning {
 
     public RxPinning(RxBus rxBus) {
         this.rxBus = rxBus;
-        rxBus.register(ConnectionEvent.class);
     }
 
     /**
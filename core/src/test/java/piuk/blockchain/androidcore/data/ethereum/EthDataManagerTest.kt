@@ -63,6 +63,7 @@ class EthDataManagerTest {
     private val metadataManager: MetadataManager = mock()
     private val environmentSettings: EnvironmentConfig = mock()
     private val lastTxUpdater: LastTxUpdater = mock()
+    private val feeResolver: EthFeeResolver = mock()
     private val rxBus = RxBus()
 
     private val subject = EthDataManager(
@@ -74,6 +75,7 @@ class EthDataManagerTest {
             metadataManager,
             environmentSettings,
             lastTxUpdater,
+            feeResolver,
             rxBus
         )
 
@@ -0,0 +1,126 @@
+package piuk.blockchain.androidcore.data.ethereum
+
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.verifyZeroInteractions
+import com.nhaarman.mockito_kotlin.whenever
+import info.blockchain.wallet.ethereum.EthAccountApi
+import info.blockchain.wallet.ethereum.data.EthTransaction
+import io.reactivex.Observable
+import io.reactivex.schedulers.TestScheduler
+import org.amshove.kluent.`should equal`
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import piuk.blockchain.androidcore.data.ethereum.datastores.EthFeeStore
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+class EthFeeResolverTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val ethAccountApi: EthAccountApi = mock()
+    private val scheduler = TestScheduler()
+
+    private val file: File by lazy { File(folder.root, "eth_fees") }
+    private val store: EthFeeStore by lazy { EthFeeStore(file) }
+    private val subject: EthFeeResolver by lazy { EthFeeResolver(ethAccountApi, store, scheduler) }
+
+    @Test
+    fun `fees requested together are fetched once per transaction`() {
+        givenTransaction(HASH_1, confirmed = true)
+        givenTransaction(HASH_2, confirmed = true)
+
+        val first = subject.getFee(HASH_1).test()
+        val second = subject.getFee(HASH_2).test()
+        val duplicate = subject.getFee(HASH_1).test()
+        verifyZeroInteractions(ethAccountApi)
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+
+        first.assertValue(200.toBigInteger()).assertComplete()
+        second.assertValue(200.toBigInteger()).assertComplete()
+        duplicate.assertValue(200.toBigInteger()).assertComplete()
+        verify(ethAccountApi).getTransaction(HASH_1)
+        verify(ethAccountApi).getTransaction(HASH_2)
+    }
+
+    @Test
+    fun `confirmed fees are stored and not fetched again`() {
+        givenTransaction(HASH_1, confirmed = true)
+
+        subject.getFee(HASH_1).test()
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+
+        subject.getFee(HASH_1).test().assertValue(200.toBigInteger())
+        EthFeeStore(file).get(HASH_1) `should equal` 200.toBigInteger()
+        verify(ethAccountApi, times(1)).getTransaction(HASH_1)
+    }
+
+    @Test
+    fun `pending fees are not stored`() {
+        givenTransaction(HASH_1, confirmed = false)
+
+        subject.getFee(HASH_1).test()
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+        subject.getFee(HASH_1).test()
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+
+        store.get(HASH_1) `should equal` null
+        verify(ethAccountApi, times(2)).getTransaction(HASH_1)
+    }
+
+    @Test
+    fun `failed fetches are reported and retried on the next request`() {
+        whenever(ethAccountApi.getTransaction(HASH_1))
+            .thenReturn(Observable.error(RuntimeException()))
+
+        val failed = subject.getFee(HASH_1).test()
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+        failed.assertError(RuntimeException::class.java)
+
+        givenTransaction(HASH_1, confirmed = true)
+        val retried = subject.getFee(HASH_1).test()
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+        retried.assertValue(200.toBigInteger())
+    }
+
+    @Test
+    fun `truncated lines in the store are skipped`() {
+        file.writeText("$HASH_1 200\n$HASH_2 ")
+
+        store.get(HASH_1) `should equal` 200.toBigInteger()
+        store.get(HASH_2) `should equal` null
+    }
+
+    @Test
+    fun `a fee cut short mid-write is not read back`() {
+        file.writeText("$HASH_1 200\n$HASH_2 20")
+
+        store.get(HASH_1) `should equal` 200.toBigInteger()
+        store.get(HASH_2) `should equal` null
+    }
+
+    private fun givenTransaction(hash: String, confirmed: Boolean) {
+        whenever(ethAccountApi.getTransaction(hash))
+            .thenReturn(
+                Observable.just(
+                    EthTransaction(
+                        blockNumber = if (confirmed) 100L else null,
+                        hash = hash,
+                        gasPrice = 100.toBigInteger(),
+                        gasUsed = 2.toBigInteger(),
+                        state = if (confirmed) "CONFIRMED" else "PENDING"
+                    )
+                )
+            )
+    }
+
+    companion object {
+        private const val HASH_1 = "0xfd7d583fa54bf55f6cfbfec97c0c55cc6af8c121b71addb7d06a9e1e305ae8ff"
+        private const val HASH_2 = "0x07e47e6c58b7d9b5bd1e1ad7a2d9ef4bbb1fd2b4ad5e1b0de4a1bdc2a04e6e1c"
+    }
+}
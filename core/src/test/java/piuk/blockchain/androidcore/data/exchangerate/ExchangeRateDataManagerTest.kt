@@ -112,7 +112,7 @@ class ExchangeRateDataManagerTest {
     @Test
     fun `toCrypto yields full precision of the currency - ETH`() {
         givenExchangeRate(CryptoCurrency.ETHER, "USD", 5610.83)
-        val expected = BigDecimal("0.178372896701557526").ether()
+        val expected = BigDecimal("0.178372896701557524").ether()
 
         val result = BigDecimal(1000.82).usd().toCrypto(subject, CryptoCurrency.ETHER)
         result `should equal` expected
@@ -135,7 +135,8 @@ class ExchangeRateDataManagerTest {
         currencyName: String,
         exchangeRate: Double
     ) {
-        whenever(exchangeRateDataStore.getLastPrice(cryptoCurrency, currencyName)).thenReturn(exchangeRate)
+        whenever(exchangeRateDataStore.getLastPrice(cryptoCurrency, currencyName))
+            .thenReturn(exchangeRate.toBigDecimal())
     }
 
     private fun givenHistoricExchangeRate(
@@ -0,0 +1,110 @@
+package piuk.blockchain.androidcore.data.exchangerate.datastore
+
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.whenever
+import info.blockchain.balance.CryptoCurrency
+import info.blockchain.wallet.prices.data.PriceDatum
+import io.reactivex.Single
+import io.reactivex.schedulers.TestScheduler
+import org.amshove.kluent.`it returns`
+import org.amshove.kluent.`should equal`
+import org.junit.Test
+import piuk.blockchain.androidcore.data.exchangerate.ExchangeRateService
+import piuk.blockchain.androidcore.utils.PersistentPrefs
+import java.math.BigDecimal
+import java.util.concurrent.TimeUnit
+
+class ExchangeRateDataStoreTest {
+
+    private val exchangeRateService: ExchangeRateService = mock {
+        on { getExchangeRateMap(any()) } `it returns` Single.just(emptyMap())
+    }
+    private val prefs: PersistentPrefs = mock()
+    private val historicPrices: HistoricPriceStore = mock()
+    private val scheduler = TestScheduler()
+
+    private val subject = ExchangeRateDataStore(exchangeRateService, prefs, historicPrices, scheduler)
+
+    private val btcUsdKey = "LAST_KNOWN_BTC_VALUE_FOR_CURRENCY_USD"
+
+    private fun givenRates(cryptoCurrency: CryptoCurrency, vararg prices: Pair<String, Double>) {
+        whenever(exchangeRateService.getExchangeRateMap(cryptoCurrency))
+            .thenReturn(Single.just(prices.map { (fiat, price) -> fiat to PriceDatum(price = price) }.toMap()))
+    }
+
+    @Test
+    fun `prices are kept as the decimals sent by the api`() {
+        givenRates(CryptoCurrency.ETHER, "USD" to 5610.83)
+        subject.updateExchangeRates().test().assertComplete()
+
+        subject.getLastPrice(CryptoCurrency.ETHER, "USD") `should equal` BigDecimal("5610.83")
+    }
+
+    @Test
+    fun `last known prices are saved once, after a delay`() {
+        givenRates(CryptoCurrency.BTC, "USD" to 9000.5, "GBP" to 7000.25)
+        subject.updateExchangeRates().test().assertComplete()
+
+        repeat(100) {
+            subject.getLastPrice(CryptoCurrency.BTC, "USD")
+            subject.getLastPrice(CryptoCurrency.BTC, "GBP")
+        }
+        verify(prefs, never()).setValue(any(), any<String>())
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+
+        verify(prefs, times(1)).setValue(btcUsdKey, "9000.5")
+        verify(prefs, times(1)).setValue("LAST_KNOWN_BTC_VALUE_FOR_CURRENCY_GBP", "7000.25")
+    }
+
+    @Test
+    fun `refreshed prices are saved again`() {
+        givenRates(CryptoCurrency.BTC, "USD" to 9000.5)
+        subject.updateExchangeRates().test().assertComplete()
+        subject.getLastPrice(CryptoCurrency.BTC, "USD")
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+
+        givenRates(CryptoCurrency.BTC, "USD" to 9100.0)
+        subject.updateExchangeRates().test().assertComplete()
+        subject.getLastPrice(CryptoCurrency.BTC, "USD") `should equal` BigDecimal("9100.0")
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+
+        verify(prefs).setValue(btcUsdKey, "9000.5")
+        verify(prefs).setValue(btcUsdKey, "9100.0")
+    }
+
+    @Test
+    fun `saved price is used, and only read once, before rates are loaded`() {
+        whenever(prefs.getValue(btcUsdKey, "0.0")).thenReturn("8123.45")
+
+        subject.getLastPrice(CryptoCurrency.BTC, "USD") `should equal` BigDecimal("8123.45")
+        subject.getLastPrice(CryptoCurrency.BTC, "USD") `should equal` BigDecimal("8123.45")
+
+        verify(prefs, times(1)).getValue(btcUsdKey, "0.0")
+    }
+
+    @Test
+    fun `fiat price is derived from bitcoin prices`() {
+        givenRates(CryptoCurrency.BTC, "USD" to 10000.0, "GBP" to 8000.0)
+        subject.updateExchangeRates().test().assertComplete()
+
+        subject.getFiatLastPrice(targetFiat = "GBP", sourceFiat = "USD") `should equal` BigDecimal("0.8")
+    }
+
+    @Test
+    fun `fiat price is zero when the source currency is unpriced`() {
+        givenRates(CryptoCurrency.BTC, "USD" to 0.0, "GBP" to 8000.0)
+        subject.updateExchangeRates().test().assertComplete()
+
+        subject.getFiatLastPrice(targetFiat = "GBP", sourceFiat = "USD") `should equal` BigDecimal.ZERO
+    }
+
+    @Test
+    fun `fiat price is zero before rates are loaded`() {
+        subject.getFiatLastPrice(targetFiat = "GBP", sourceFiat = "USD") `should equal` BigDecimal.ZERO
+    }
+}
@@ -0,0 +1,125 @@
+package piuk.blockchain.androidcore.data.exchangerate.datastore
+
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.never
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.verifyZeroInteractions
+import com.nhaarman.mockito_kotlin.whenever
+import info.blockchain.balance.CryptoCurrency
+import info.blockchain.wallet.prices.TimeInterval
+import info.blockchain.wallet.prices.data.PriceDatum
+import io.reactivex.Single
+import org.amshove.kluent.`it returns`
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import piuk.blockchain.androidcore.data.exchangerate.ExchangeRateService
+import piuk.blockchain.androidcore.data.exchangerate.TimeSpan
+import java.math.BigDecimal
+
+class HistoricPriceStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val exchangeRateService: ExchangeRateService = mock {
+        on { getHistoricPriceSeries(any(), any(), any(), any()) } `it returns` Single.just(emptyList())
+    }
+
+    private val subject: HistoricPriceStore by lazy {
+        HistoricPriceStore(exchangeRateService, folder.root) { NOW }
+    }
+
+    @Test
+    fun `old prices are interpolated from one download of the daily series`() {
+        givenSeries(TimeSpan.ALL_TIME, TimeInterval.ONE_DAY, YEAR_AGO to 100.0, YEAR_AGO + DAY to 200.0)
+
+        subject.getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO + DAY / 4).test()
+            .assertValue { it.compareTo(BigDecimal(125)) == 0 }
+        subject.getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO + DAY).test()
+            .assertValue(BigDecimal("200.0"))
+
+        verify(exchangeRateService, times(1))
+            .getHistoricPriceSeries(CryptoCurrency.BTC, "USD", TimeSpan.ALL_TIME, TimeInterval.ONE_DAY)
+        verify(exchangeRateService, never()).getHistoricPrice(any(), any(), any())
+    }
+
+    @Test
+    fun `downloaded prices are kept across sessions`() {
+        givenSeries(TimeSpan.ALL_TIME, TimeInterval.ONE_DAY, YEAR_AGO to 100.0, YEAR_AGO + DAY to 200.0)
+        subject.getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO).test()
+
+        val offline: ExchangeRateService = mock()
+        HistoricPriceStore(offline, folder.root) { NOW }
+            .getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO + DAY / 2).test()
+            .assertValue { it.compareTo(BigDecimal(150)) == 0 }
+
+        verifyZeroInteractions(offline)
+    }
+
+    @Test
+    fun `recent prices come from the finer monthly series`() {
+        givenSeries(TimeSpan.ALL_TIME, TimeInterval.ONE_DAY, NOW - DAY to 100.0, NOW to 200.0)
+        givenSeries(TimeSpan.MONTH, TimeInterval.TWO_HOURS, NOW - 2 * HOUR to 180.0, NOW to 200.0)
+
+        subject.getHistoricPrice(CryptoCurrency.BTC, "USD", NOW - HOUR).test()
+            .assertValue { it.compareTo(BigDecimal(190)) == 0 }
+
+        verify(exchangeRateService, never())
+            .getHistoricPriceSeries(CryptoCurrency.BTC, "USD", TimeSpan.ALL_TIME, TimeInterval.ONE_DAY)
+    }
+
+    @Test
+    fun `prices outside the series are fetched once and kept`() {
+        givenSeries(TimeSpan.ALL_TIME, TimeInterval.ONE_DAY, YEAR_AGO to 100.0)
+        whenever(exchangeRateService.getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO - DAY))
+            .thenReturn(Single.just(90.0))
+
+        subject.getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO - DAY).test()
+            .assertValue(BigDecimal("90.0"))
+        subject.getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO - DAY).test()
+            .assertValue(BigDecimal("90.0"))
+
+        verify(exchangeRateService, times(1)).getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO - DAY)
+        verify(exchangeRateService, times(1))
+            .getHistoricPriceSeries(CryptoCurrency.BTC, "USD", TimeSpan.ALL_TIME, TimeInterval.ONE_DAY)
+    }
+
+    @Test
+    fun `failed series downloads fall back to a single price`() {
+        whenever(exchangeRateService.getHistoricPriceSeries(any(), any(), any(), any()))
+            .thenReturn(Single.error(RuntimeException()))
+        whenever(exchangeRateService.getHistoricPrice(CryptoCurrency.ETHER, "GBP", YEAR_AGO))
+            .thenReturn(Single.just(300.0))
+
+        subject.getHistoricPrice(CryptoCurrency.ETHER, "GBP", YEAR_AGO).test()
+            .assertValue(BigDecimal("300.0"))
+    }
+
+    @Test
+    fun `truncated lines are not read back`() {
+        folder.root.resolve("BTC_USD").writeText("$YEAR_AGO 100.0\n${YEAR_AGO + DAY} 20")
+        givenSeries(TimeSpan.ALL_TIME, TimeInterval.ONE_DAY)
+        whenever(exchangeRateService.getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO + DAY))
+            .thenReturn(Single.just(200.0))
+
+        subject.getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO).test()
+            .assertValue(BigDecimal("100.0"))
+        subject.getHistoricPrice(CryptoCurrency.BTC, "USD", YEAR_AGO + DAY).test()
+            .assertValue(BigDecimal("200.0"))
+    }
+
+    private fun givenSeries(timeSpan: TimeSpan, interval: TimeInterval, vararg prices: Pair<Long, Double>) {
+        whenever(exchangeRateService.getHistoricPriceSeries(CryptoCurrency.BTC, "USD", timeSpan, interval))
+            .thenReturn(Single.just(prices.map { (time, price) -> PriceDatum(timestamp = time, price = price) }))
+    }
+
+    companion object {
+        private const val HOUR = 60L * 60
+        private const val DAY = 24 * HOUR
+        private const val NOW = 1600000000L
+        private const val YEAR_AGO = NOW - 365 * DAY
+    }
+}
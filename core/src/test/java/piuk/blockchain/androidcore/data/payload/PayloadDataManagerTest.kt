@@ -8,6 +8,8 @@ import com.nhaarman.mockito_kotlin.verify
 import com.nhaarman.mockito_kotlin.verifyNoMoreInteractions
 import com.nhaarman.mockito_kotlin.whenever
 import info.blockchain.api.data.Balance
+import info.blockchain.wallet.multiaddress.TransactionSummary
+import info.blockchain.wallet.multiaddress.TransactionSummaryCursor
 import info.blockchain.wallet.payload.PayloadManager
 import info.blockchain.wallet.payload.data.Account
 import info.blockchain.wallet.payload.data.ImportedAddress
@@ -781,4 +783,36 @@ class PayloadDataManagerTest {
         // Assert
         result shouldEqual true
     }
-}
\ No newline at end of file
+
+    @Test
+    fun streamAccountTransactions() {
+        // Arrange
+        val summary: TransactionSummary = mock()
+        val cursor: TransactionSummaryCursor = mock {
+            on { hasNext() }.thenReturn(true, false)
+            on { next() }.thenReturn(summary)
+        }
+        whenever(payloadManager.getAccountTransactionsCursor("XPUB", 50)).thenReturn(cursor)
+        // Act
+        val testObserver = subject.streamAccountTransactions("XPUB", 50).test()
+        // Assert
+        testObserver.assertValue(summary)
+        testObserver.assertComplete()
+        verify(cursor).close()
+    }
+
+    @Test
+    fun `streamAccountTransactions closes the cursor when disposed`() {
+        // Arrange
+        val cursor: TransactionSummaryCursor = mock {
+            on { hasNext() } itReturns true
+            on { next() } itReturns mock()
+        }
+        whenever(payloadManager.getAccountTransactionsCursor(null, 50)).thenReturn(cursor)
+        // Act
+        val testObserver = subject.streamAccountTransactions(null, 50).take(3).test()
+        // Assert
+        testObserver.assertValueCount(3)
+        verify(cursor).close()
+    }
+}
@@ -1,16 +1,17 @@
 package piuk.blockchain.androidcore.data.payload
 
-import com.nhaarman.mockito_kotlin.atLeastOnce
 import com.nhaarman.mockito_kotlin.mock
 import com.nhaarman.mockito_kotlin.verify
 import com.nhaarman.mockito_kotlin.verifyNoMoreInteractions
 import com.nhaarman.mockito_kotlin.whenever
 import info.blockchain.api.data.Balance
 import info.blockchain.wallet.exceptions.ApiException
+import info.blockchain.wallet.exceptions.ServerConnectionException
 import info.blockchain.wallet.payload.PayloadManager
 import info.blockchain.wallet.payload.data.Account
 import info.blockchain.wallet.payload.data.ImportedAddress
 import info.blockchain.wallet.payload.data.Wallet
+import io.reactivex.Completable
 import org.amshove.kluent.mock
 import org.bitcoinj.core.ECKey
 import org.bitcoinj.params.BitcoinMainNetParams
@@ -160,11 +161,11 @@ class PayloadServiceTest {
     @Test
     fun `syncPayloadWithServer successful`() {
         // Arrange
-        whenever(mockPayloadManager.save()).thenReturn(true)
+        whenever(mockPayloadManager.scheduleSave()).thenReturn(Completable.complete())
         // Act
         val testObserver = subject.syncPayloadWithServer().test()
         // Assert
-        verify(mockPayloadManager).save()
+        verify(mockPayloadManager).scheduleSave()
         verifyNoMoreInteractions(mockPayloadManager)
         testObserver.assertComplete()
     }
@@ -172,11 +173,12 @@ class PayloadServiceTest {
     @Test
     fun `syncPayloadWithServer failed`() {
         // Arrange
-        whenever(mockPayloadManager.save()).thenReturn(false)
+        whenever(mockPayloadManager.scheduleSave())
+            .thenReturn(Completable.error(ServerConnectionException("Failed to save wallet.")))
         // Act
         val testObserver = subject.syncPayloadWithServer().test()
         // Assert
-        verify(mockPayloadManager).save()
+        verify(mockPayloadManager).scheduleSave()
         verifyNoMoreInteractions(mockPayloadManager)
         testObserver.assertNotComplete()
         testObserver.assertError(ApiException::class.java)
@@ -282,17 +284,29 @@ class PayloadServiceTest {
         // Arrange
         val txHash = "TX_HASH"
         val note = "NOTE"
-        whenever(mockPayloadManager.payload?.txNotes).thenReturn(mutableMapOf())
-        whenever(mockPayloadManager.save()).thenReturn(true)
+        whenever(mockPayloadManager.scheduleUpdateTransactionNote(txHash, note))
+            .thenReturn(Completable.complete())
         // Act
         val testObserver = subject.updateTransactionNotes(txHash, note).test()
         // Assert
-        verify(mockPayloadManager, atLeastOnce()).payload
-        verify(mockPayloadManager).save()
+        verify(mockPayloadManager).scheduleUpdateTransactionNote(txHash, note)
         verifyNoMoreInteractions(mockPayloadManager)
         testObserver.assertComplete()
     }
 
+    @Test
+    fun `updateTransactionNotes failed`() {
+        // Arrange
+        val txHash = "TX_HASH"
+        val note = "NOTE"
+        whenever(mockPayloadManager.scheduleUpdateTransactionNote(txHash, note))
+            .thenReturn(Completable.error(ServerConnectionException("Failed to save wallet.")))
+        // Act
+        val testObserver = subject.updateTransactionNotes(txHash, note).test()
+        // Assert
+        testObserver.assertError(ApiException::class.java)
+    }
+
     @Test
     fun createNewAccount() {
         // Arrange
@@ -336,10 +350,12 @@ class PayloadServiceTest {
     fun addImportedAddress() {
         // Arrange
         val mockImportedAddress: ImportedAddress = mock()
+        whenever(mockPayloadManager.scheduleAddImportedAddress(mockImportedAddress))
+            .thenReturn(Completable.complete())
         // Act
         val testObserver = subject.addImportedAddress(mockImportedAddress).test()
         // Assert
-        verify(mockPayloadManager).addImportedAddress(mockImportedAddress)
+        verify(mockPayloadManager).scheduleAddImportedAddress(mockImportedAddress)
         verifyNoMoreInteractions(mockPayloadManager)
         testObserver.assertComplete()
     }
@@ -348,10 +364,12 @@ class PayloadServiceTest {
     fun updateImportedAddress() {
         // Arrange
         val mockImportedAddress: ImportedAddress = mock()
+        whenever(mockPayloadManager.scheduleUpdateImportedAddress(mockImportedAddress))
+            .thenReturn(Completable.complete())
         // Act
         val testObserver = subject.updateImportedAddress(mockImportedAddress).test()
         // Assert
-        verify(mockPayloadManager).updateImportedAddress(mockImportedAddress)
+        verify(mockPayloadManager).scheduleUpdateImportedAddress(mockImportedAddress)
         verifyNoMoreInteractions(mockPayloadManager)
         testObserver.assertComplete()
     }
@@ -11,6 +11,7 @@ import info.blockchain.wallet.api.dust.DustService
 import info.blockchain.wallet.api.dust.data.DustInput
 import info.blockchain.wallet.exceptions.ApiException
 import info.blockchain.wallet.exceptions.TransactionHashApiException
+import info.blockchain.wallet.payment.BranchAndBound
 import info.blockchain.wallet.payment.InsufficientMoneyException
 import info.blockchain.wallet.payment.Payment
 import info.blockchain.wallet.payment.SpendableUnspentOutputs
@@ -32,6 +33,7 @@ import org.junit.Rule
 import org.junit.Test
 import org.mockito.ArgumentMatchers.any
 import org.mockito.ArgumentMatchers.eq
+import org.mockito.ArgumentMatchers.isA
 import org.mockito.Mockito.atLeastOnce
 import org.mockito.Mockito.mock
 import org.mockito.Mockito.never
@@ -560,13 +562,24 @@ class PaymentServiceTest {
         val mockPayment = mock(BigInteger::class.java)
         val mockFee = mock(BigInteger::class.java)
         val mockOutputs = mock(SpendableUnspentOutputs::class.java)
-        whenever(payment.getSpendableCoins(mockUnspent, mockPayment, mockFee, false))
-            .thenReturn(mockOutputs)
+        whenever(payment.getSpendableCoins(
+            eq(mockUnspent),
+            eq(mockPayment),
+            eq(mockFee),
+            eq(false),
+            isA(BranchAndBound::class.java)
+        )).thenReturn(mockOutputs)
         // Act
         val result = subject.getSpendableCoins(mockUnspent, mockPayment, mockFee, false)
         // Assert
         assertEquals(mockOutputs, result)
-        verify(payment).getSpendableCoins(mockUnspent, mockPayment, mockFee, false)
+        verify(payment).getSpendableCoins(
+            eq(mockUnspent),
+            eq(mockPayment),
+            eq(mockFee),
+            eq(false),
+            isA(BranchAndBound::class.java)
+        )
         verifyNoMoreInteractions(payment)
     }
 
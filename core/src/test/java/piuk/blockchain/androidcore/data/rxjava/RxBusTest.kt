@@ -8,6 +8,10 @@ import org.amshove.kluent.shouldNotHaveKey
 import org.junit.Before
 import org.junit.Test
 import piuk.blockchain.android.testutils.RxTest
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 class RxBusTest : RxTest() {
 
@@ -130,4 +134,101 @@ class RxBusTest : RxTest() {
         testObserver.assertNoErrors()
         testObserver.assertNoValues()
     }
-}
\ No newline at end of file
+
+    @Test
+    fun observerIsUnregisteredWhenDisposed() {
+        // Arrange
+        val type = String::class.java
+        val observable = subject.register(type)
+        val first = observable.test()
+        val second = observable.test()
+        // Act
+        first.dispose()
+        // Assert
+        subject.subjectsMap[type]!!.size shouldEqual 1
+        second.dispose()
+        subject.subjectsMap shouldNotHaveKey type
+    }
+
+    @Test
+    fun observerIsRegisteredAgainWhenResubscribed() {
+        // Arrange
+        val type = String::class.java
+        val observable = subject.register(type)
+        observable.test().dispose()
+        // Act
+        val testObserver = observable.test()
+        subject.emitEvent(type, "VALUE")
+        // Assert
+        subject.subjectsMap[type]!!.size shouldEqual 1
+        testObserver.assertValue("VALUE")
+    }
+
+    @Test
+    fun emissionsAreCountedPerType() {
+        // Act
+        subject.emitEvent(String::class.java, "VALUE")
+        subject.emitEvent(String::class.java, "VALUE")
+        subject.emitEvent(Integer::class.java, 1)
+        // Assert
+        subject.getEmissionCount(String::class.java) shouldEqual 2L
+        subject.getEmissionCount(Integer::class.java) shouldEqual 1L
+        subject.getEmissionCount(Double::class.java) shouldEqual 0L
+    }
+
+    @Test
+    fun emittingWhileRegisteringOnOtherThreads() {
+        // Arrange
+        val type = String::class.java
+        val testObserver = subject.register(type).test()
+        val executor = Executors.newFixedThreadPool(4)
+        val done = CountDownLatch(4)
+        // Act
+        repeat(4) { thread ->
+            executor.execute {
+                repeat(250) {
+                    if (thread % 2 == 0) {
+                        subject.emitEvent(type, "VALUE")
+                    } else {
+                        subject.register(type).test().dispose()
+                    }
+                }
+                done.countDown()
+            }
+        }
+        done.await(10, TimeUnit.SECONDS)
+        executor.shutdown()
+        // Assert
+        testObserver.assertNoErrors()
+        testObserver.valueCount() shouldEqual 500
+        subject.subjectsMap[type]!!.size shouldEqual 1
+    }
+
+    @Test
+    fun registrationsAreKeptWhileOthersOfTheSameTypeAreRemoved() {
+        // Arrange
+        val type = String::class.java
+        val executor = Executors.newFixedThreadPool(4)
+        val done = CountDownLatch(4)
+        val lost = AtomicInteger()
+        // Act
+        repeat(4) {
+            executor.execute {
+                repeat(250) {
+                    val registration = subject.register(type)
+                    val observer = registration.test()
+                    if (subject.subjectsMap[type]?.any { it === registration } != true) {
+                        lost.incrementAndGet()
+                    }
+                    observer.dispose()
+                }
+                done.countDown()
+            }
+        }
+        done.await(10, TimeUnit.SECONDS)
+        executor.shutdown()
+        // Assert
+        lost.get() shouldEqual 0
+        subject.subjectsMap shouldNotHaveKey type
+    }
+}
@@ -3,6 +3,8 @@ package com.blockchain.koin
 import info.blockchain.wallet.api.dust.BchDustService
 import info.blockchain.wallet.api.dust.DustApi
 import info.blockchain.wallet.api.dust.DustService
+import info.blockchain.wallet.bip44.HDAddressCache
+import info.blockchain.wallet.crypto.WalletCryptoSession
 import info.blockchain.wallet.metadata.MetadataService
 import info.blockchain.wallet.metadata.MetadataInteractor
 import info.blockchain.wallet.multiaddress.MultiAddressFactory
@@ -24,7 +26,11 @@ val walletModule = module {
 
         scoped { PayloadManager(get(), get(), get(), get()) }
 
-        factory { MultiAddressFactory(get()) }
+        factory {
+            MultiAddressFactory(get()).apply {
+                setTransactionSummaryStore(get())
+            }
+        }
 
         factory { BalanceManagerBtc(get()) }
 
@@ -58,6 +64,8 @@ val walletModule = module {
                 if (!payloadScope.closed) {
                     payloadScope.close()
                 }
+                WalletCryptoSession.getInstance().clear()
+                HDAddressCache.getInstance().clear()
             }
         }
     }.bind(PayloadManagerWiper::class)
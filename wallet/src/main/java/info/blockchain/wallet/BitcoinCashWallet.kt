@@ -2,11 +2,15 @@ package info.blockchain.wallet
 
 import info.blockchain.api.blockexplorer.BlockExplorer
 import info.blockchain.api.data.UnspentOutput
+import info.blockchain.wallet.bip44.HDAddressCache
 import info.blockchain.wallet.crypto.DeterministicAccount
+import info.blockchain.wallet.crypto.DeterministicChain
 import info.blockchain.wallet.crypto.DeterministicWallet
 import info.blockchain.wallet.exceptions.HDWalletException
+import info.blockchain.wallet.multiaddress.AddressOwnershipIndex
 import info.blockchain.wallet.multiaddress.MultiAddressFactoryBch
 import info.blockchain.wallet.multiaddress.TransactionSummary
+import info.blockchain.wallet.multiaddress.TransactionSummaryStore
 import info.blockchain.wallet.payload.BalanceManagerBch
 import info.blockchain.wallet.payload.data.ImportedAddress
 import io.reactivex.Completable
@@ -79,10 +83,34 @@ open class BitcoinCashWallet : DeterministicWallet {
             Completable.complete()
         } else {
             Completable.fromCallable {
+                updateOwnershipIndex(importedAddressList)
                 balanceManager.updateAllBalances(allAccountsAndAddresses, importedAddressList)
             }.subscribeOn(Schedulers.io())
         }
 
+    /**
+     * Tracks every account in the index behind [isOwnAddress] and [getXpubFromAddress], so that
+     * their addresses are known before any transactions have been summarized.
+     */
+    private fun updateOwnershipIndex(importedAddressList: Set<String>) {
+        multiAddressFactory.ownershipIndex.setImportedAddresses(importedAddressList)
+        accounts.forEachIndexed { index, account ->
+            val xpub = getAccountPubB58(index)
+            multiAddressFactory.ownershipIndex.trackAccount(
+                xpub,
+                account.chains[DeterministicChain.RECEIVE_CHAIN].toAddressChain(),
+                account.chains[DeterministicChain.CHANGE_CHAIN].toAddressChain(),
+                multiAddressFactory.getNextReceiveAddressIndex(xpub, listOf()),
+                multiAddressFactory.getNextChangeAddressIndex(xpub)
+            )
+        }
+    }
+
+    private fun DeterministicChain.toAddressChain() =
+        AddressOwnershipIndex.AddressChain { startIndex, endIndex ->
+            HDAddressCache.getInstance().getAddresses(params, node, startIndex, endIndex)
+        }
+
     /**
      * Returns the balance of all imported addresses, excluding those belonging to
      * archived addresses.
@@ -107,6 +135,14 @@ open class BitcoinCashWallet : DeterministicWallet {
         if (isTestnet()) {
             // TODO(bch testnet explorer coming soon)
             mutableListOf()
+        } else if (multiAddressFactory.isCachingTransactions) {
+            multiAddressFactory.getCachedAccountTransactionsPage(
+                activeXpubs,
+                context,
+                limit,
+                offset,
+                BCH_FORK_HEIGHT
+            )
         } else {
             multiAddressFactory.getAccountTransactions(
                 activeXpubs,
@@ -118,6 +154,13 @@ open class BitcoinCashWallet : DeterministicWallet {
             ).toMutableList()
         }
 
+    /**
+     * Enables the local cache of confirmed transactions used by [getTransactions].
+     */
+    fun setTransactionSummaryStore(store: TransactionSummaryStore) {
+        multiAddressFactory.setTransactionSummaryStore(store)
+    }
+
     /**
      * Generates a Base58 Bitcoin Cash receive address for an account at a given position. The
      * address returned will be the next unused in the chain.
@@ -240,6 +283,14 @@ open class BitcoinCashWallet : DeterministicWallet {
     fun isOwnAddress(address: String) =
         multiAddressFactory.isOwnHDAddress(address)
 
+    /**
+     * Returns whether or not an address is one of this wallet's imported addresses.
+     * @param address The base58 address you want to query
+     * @return
+     */
+    fun isImportedAddress(address: String) =
+        multiAddressFactory.ownershipIndex.isImportedAddress(address)
+
     /**
      * Returns an xPub from an address if the address belongs to this wallet.
      * @param address The Bitcoin Cash base58 address you want to query
@@ -0,0 +1,183 @@
+package info.blockchain.wallet.bip44;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * HDAddressCache.java : address strings derived from BIP44 chains
+ *
+ * Deriving an address costs an elliptic curve multiplication, and the same addresses are asked
+ * for again and again, eg the lookahead addresses synced on every wallet save. Only address
+ * strings are kept, never keys, and only for the most recently used chains.
+ */
+public class HDAddressCache {
+
+    private static final int MAX_CHAINS = 32;
+    private static final int MAX_ADDRESSES_PER_CHAIN = 1000;
+    // Smaller batches than this are quicker to derive on the calling thread
+    private static final int PARALLEL_THRESHOLD = 8;
+
+    private static final HDAddressCache instance = new HDAddressCache(
+            new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()))
+    );
+
+    public static HDAddressCache getInstance() {
+        return instance;
+    }
+
+    private final ForkJoinPool pool;
+
+    // Both the chains and their addresses are access ordered, so the least recently used are
+    // dropped first. Guarded by itself.
+    private final Map<String, Map<Integer, String>> chains =
+            new LinkedHashMap<String, Map<Integer, String>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<Integer, String>> eldest) {
+                    return size() > MAX_CHAINS;
+                }
+            };
+
+    HDAddressCache(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Return the address strings of a chain from startIndex up to, but not including, endIndex.
+     *
+     * @param params   NetworkParameters
+     * @param chainKey deterministic key of the chain
+     * @return A non-null List of addresses as Strings
+     */
+    public List<String> getAddresses(NetworkParameters params,
+                                     DeterministicKey chainKey,
+                                     int startIndex,
+                                     int endIndex) {
+        String key = cacheKey(params, chainKey);
+        String[] addresses = new String[Math.max(endIndex - startIndex, 0)];
+        List<Integer> missing = new ArrayList<>();
+
+        synchronized (chains) {
+            Map<Integer, String> cached = chains.get(key);
+            for (int i = startIndex; i < endIndex; i++) {
+                String address = cached != null ? cached.get(i) : null;
+                if (address != null) {
+                    addresses[i - startIndex] = address;
+                } else {
+                    missing.add(i);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            // Public derivation gives the same addresses, without also computing the private keys
+            DeterministicKey publicKey = chainKey.isPubKeyOnly() ? chainKey : chainKey.dropPrivateBytes();
+            String[] derived = derive(params, publicKey, missing);
+
+            synchronized (chains) {
+                Map<Integer, String> cached = chains.get(key);
+                if (cached == null) {
+                    cached = newChain();
+                    chains.put(key, cached);
+                }
+                for (int i = 0; i < derived.length; i++) {
+                    cached.put(missing.get(i), derived[i]);
+                }
+            }
+
+            for (int i = 0; i < derived.length; i++) {
+                addresses[missing.get(i) - startIndex] = derived[i];
+            }
+        }
+
+        return new ArrayList<>(Arrays.asList(addresses));
+    }
+
+    public void clear() {
+        synchronized (chains) {
+            chains.clear();
+        }
+    }
+
+    private String[] derive(NetworkParameters params, DeterministicKey chainKey, List<Integer> indexes) {
+        String[] derived = new String[indexes.size()];
+        DeriveTask task = new DeriveTask(params, chainKey, indexes, derived, 0, indexes.size());
+        if (indexes.size() < PARALLEL_THRESHOLD) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        return derived;
+    }
+
+    private static String cacheKey(NetworkParameters params, DeterministicKey chainKey) {
+        return params.getId() + ":" + Utils.HEX.encode(chainKey.getPubKey())
+                + ":" + Utils.HEX.encode(chainKey.getChainCode());
+    }
+
+    private static Map<Integer, String> newChain() {
+        return new LinkedHashMap<Integer, String>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > MAX_ADDRESSES_PER_CHAIN;
+            }
+        };
+    }
+
+    /**
+     * Derives the addresses at indexes[from, to) into the matching slots of derived, splitting
+     * the range in half until it's small enough to be worth deriving on one thread.
+     */
+    private static class DeriveTask extends RecursiveAction {
+
+        private final NetworkParameters params;
+        private final DeterministicKey chainKey;
+        private final List<Integer> indexes;
+        private final String[] derived;
+        private final int from;
+        private final int to;
+
+        DeriveTask(NetworkParameters params,
+                   DeterministicKey chainKey,
+                   List<Integer> indexes,
+                   String[] derived,
+                   int from,
+                   int to) {
+            this.params = params;
+            this.chainKey = chainKey;
+            this.indexes = indexes;
+            this.derived = derived;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    DeterministicKey key = HDKeyDerivation.deriveChildKey(
+                            chainKey,
+                            new ChildNumber(indexes.get(i), false)
+                    );
+                    derived[i] = key.toAddress(params).toBase58();
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new DeriveTask(params, chainKey, indexes, derived, from, middle),
+                        new DeriveTask(params, chainKey, indexes, derived, middle, to)
+                );
+            }
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.crypto.HDKeyDerivation;
 
+import java.util.List;
+
 /**
  * HDChain.java : a chain in a BIP44 wallet account
  */
@@ -56,6 +58,16 @@ public class HDChain {
         return new HDAddress(params, cKey, addrIdx);
     }
 
+    /**
+     * Return the address strings from startIndex up to, but not including, endIndex. Addresses
+     * which have been derived before are taken from {@link HDAddressCache}.
+     *
+     * @return A non-null List of addresses as Strings
+     */
+    public List<String> getAddressStrings(int startIndex, int endIndex) {
+        return HDAddressCache.getInstance().getAddresses(params, cKey, startIndex, endIndex);
+    }
+
     /**
      * Return BIP44 path for this chain (m / purpose' / coin_type' / account' / chain).
      *
@@ -4,6 +4,7 @@ import info.blockchain.wallet.exceptions.DecryptionException;
 import info.blockchain.wallet.exceptions.EncryptionException;
 import java.io.UnsupportedEncodingException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import javax.annotation.Nullable;
 import org.apache.commons.codec.binary.Base64;
 import org.spongycastle.crypto.BlockCipher;
@@ -55,17 +56,41 @@ public class AESUtil {
 
     public static String decryptWithSetMode(String ciphertext, String password, int iterations, int mode, @Nullable BlockCipherPadding padding) throws InvalidCipherTextException, UnsupportedEncodingException, DecryptionException {
 
-        byte[] cipherdata = Base64.decodeBase64(ciphertext.getBytes());
+        byte[] cipherdata = decodeCiphertext(ciphertext);
+        byte[] key = deriveKey(password, ivOf(cipherdata), iterations);
+        try {
+            return decryptWithSetMode(cipherdata, key, mode, padding);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
 
-        //Separate the IV and cipher data
-        byte[] iv = copyOfRange(cipherdata, 0, AESBlockSize * 4);
-        byte[] input = copyOfRange(cipherdata, AESBlockSize * 4, cipherdata.length);
+    static byte[] decodeCiphertext(String ciphertext) {
+        return Base64.decodeBase64(ciphertext.getBytes());
+    }
+
+    // The IV doubles as the PBKDF2 salt
+    static byte[] ivOf(byte[] cipherdata) {
+        return copyOfRange(cipherdata, 0, AESBlockSize * 4);
+    }
 
+    /**
+     * PBKDF2 derivation of a 256 bit AES key, as used for the wallet payload and double encryption.
+     */
+    static byte[] deriveKey(String password, byte[] salt, int iterations) {
         PBEParametersGenerator generator = new PKCS5S2ParametersGenerator();
-        generator.init(PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(password.toCharArray()), iv, iterations);
-        KeyParameter keyParam = (KeyParameter) generator.generateDerivedParameters(256);
+        generator.init(PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(password.toCharArray()), salt, iterations);
+        return ((KeyParameter) generator.generateDerivedParameters(KEY_BIT_LEN)).getKey();
+    }
 
-        CipherParameters params = new ParametersWithIV(keyParam, iv);
+    static String decryptWithSetMode(byte[] cipherdata, byte[] key, int mode, @Nullable BlockCipherPadding padding)
+        throws InvalidCipherTextException, UnsupportedEncodingException, DecryptionException {
+
+        //Separate the IV and cipher data
+        byte[] iv = ivOf(cipherdata);
+        byte[] input = copyOfRange(cipherdata, AESBlockSize * 4, cipherdata.length);
+
+        CipherParameters params = new ParametersWithIV(new KeyParameter(key), iv);
 
         BlockCipher cipherMode;
         if (mode == MODE_CBC) {
@@ -118,18 +143,21 @@ public class AESUtil {
             throw  new EncryptionException("Password null");
         }
 
-        // Use secure random to generate a 16 byte iv
-        SecureRandom random = new SecureRandom();
-        byte iv[] = new byte[AESBlockSize * 4];
-        random.nextBytes(iv);
+        byte[] iv = getSalt();
+        byte[] key = deriveKey(password, iv, iterations);
+        try {
+            return encryptWithSetMode(cleartext, iv, key, mode, padding);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
 
-        byte[] clearbytes = cleartext.getBytes("UTF-8");
+    static String encryptWithSetMode(String cleartext, byte[] iv, byte[] key, int mode, @Nullable BlockCipherPadding padding)
+        throws UnsupportedEncodingException {
 
-        PBEParametersGenerator generator = new PKCS5S2ParametersGenerator();
-        generator.init(PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(password.toCharArray()), iv, iterations);
-        KeyParameter keyParam = (KeyParameter) generator.generateDerivedParameters(256);
+        byte[] clearbytes = cleartext.getBytes("UTF-8");
 
-        CipherParameters params = new ParametersWithIV(keyParam, iv);
+        CipherParameters params = new ParametersWithIV(new KeyParameter(key), iv);
 
         BlockCipher cipherMode;
         if (mode == MODE_CBC) {
@@ -185,7 +213,7 @@ public class AESUtil {
      * Use secure random to generate a 16 byte iv
      * @return
      */
-    private static byte[] getSalt() {
+    static byte[] getSalt() {
 
         SecureRandom random = new SecureRandom();
         byte iv[] = new byte[AESBlockSize * 4];
@@ -0,0 +1,170 @@
+package info.blockchain.wallet.crypto;
+
+import info.blockchain.wallet.exceptions.DecryptionException;
+import info.blockchain.wallet.exceptions.EncryptionException;
+
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.macs.HMac;
+import org.spongycastle.crypto.paddings.ISO10126d2Padding;
+import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WalletCryptoSession.java : {@link AESUtil#encrypt} and {@link AESUtil#decrypt} for an unlocked
+ * wallet, deriving each PBKDF2 key only once.
+ *
+ * Wallet ciphertexts use their IV as the PBKDF2 salt, so every ciphertext has a key of its own.
+ * Keys are kept per password, salt and iteration count, which makes decrypting the same
+ * double encrypted private keys again, eg for every transaction signed, free after the first time.
+ * Encrypting still derives a key for the fresh IV, which is then kept for decrypting the result.
+ *
+ * Keys are held in direct buffers outside the Java heap, so they aren't copied around by the
+ * garbage collector, and are overwritten with zeros when evicted or when {@link #clear()} is
+ * called on logout. Passwords are never kept, only their HMAC under a random per session secret.
+ */
+public class WalletCryptoSession {
+
+    private static final int MAX_KEYS = 512;
+    private static final int KEY_LENGTH = 32;
+
+    private static final WalletCryptoSession instance = new WalletCryptoSession();
+
+    public static WalletCryptoSession getInstance() {
+        return instance;
+    }
+
+    // Access ordered, so the least recently used key is the first dropped. Guarded by itself.
+    private final Map<String, ByteBuffer> keys =
+        new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ByteBuffer> eldest) {
+                if (size() > MAX_KEYS) {
+                    zero(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+    private final AtomicLong derivations = new AtomicLong();
+    private final byte[] secret = new byte[KEY_LENGTH];
+
+    WalletCryptoSession() {
+        new SecureRandom().nextBytes(secret);
+    }
+
+    // AES 256 PBKDF2 CBC iso10126 decryption, as AESUtil.decrypt
+    public String decrypt(String ciphertext, String password, int iterations)
+        throws UnsupportedEncodingException, InvalidCipherTextException, DecryptionException {
+
+        byte[] cipherdata = AESUtil.decodeCiphertext(ciphertext);
+        byte[] key = getKey(password, AESUtil.ivOf(cipherdata), iterations);
+        try {
+            return AESUtil.decryptWithSetMode(cipherdata, key, AESUtil.MODE_CBC, new ISO10126d2Padding());
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    // AES 256 PBKDF2 CBC iso10126 encryption, as AESUtil.encrypt
+    public String encrypt(String cleartext, String password, int iterations)
+        throws EncryptionException, UnsupportedEncodingException {
+
+        if (password == null) {
+            throw new EncryptionException("Password null");
+        }
+
+        // Never reuse an IV, and with it a key, for a different ciphertext
+        byte[] iv = AESUtil.getSalt();
+        byte[] key = getKey(password, iv, iterations);
+        try {
+            return AESUtil.encryptWithSetMode(cleartext, iv, key, AESUtil.MODE_CBC, new ISO10126d2Padding());
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * Zeroes and forgets every key. Call when the wallet is locked or logged out of.
+     */
+    public void clear() {
+        synchronized (keys) {
+            Iterator<ByteBuffer> iterator = keys.values().iterator();
+            while (iterator.hasNext()) {
+                zero(iterator.next());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return The number of PBKDF2 derivations made since the session was created
+     */
+    public long getDerivationCount() {
+        return derivations.get();
+    }
+
+    /**
+     * @return A copy of the key, which the caller should zero once done with
+     */
+    private byte[] getKey(String password, byte[] salt, int iterations)
+        throws UnsupportedEncodingException {
+
+        String id = keyId(password, salt, iterations);
+        byte[] key = new byte[KEY_LENGTH];
+
+        synchronized (keys) {
+            ByteBuffer cached = keys.get(id);
+            if (cached != null) {
+                cached.duplicate().get(key);
+                return key;
+            }
+        }
+
+        byte[] derived = AESUtil.deriveKey(password, salt, iterations);
+        derivations.incrementAndGet();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(KEY_LENGTH);
+        buffer.put(derived).flip();
+        System.arraycopy(derived, 0, key, 0, KEY_LENGTH);
+        Arrays.fill(derived, (byte) 0);
+
+        synchronized (keys) {
+            ByteBuffer previous = keys.put(id, buffer);
+            if (previous != null) {
+                zero(previous);
+            }
+        }
+        return key;
+    }
+
+    private String keyId(String password, byte[] salt, int iterations)
+        throws UnsupportedEncodingException {
+
+        byte[] passwordBytes = password.getBytes("UTF-8");
+        HMac mac = new HMac(new SHA256Digest());
+        mac.init(new KeyParameter(secret));
+        mac.update(passwordBytes, 0, passwordBytes.length);
+        byte[] passwordMac = new byte[mac.getMacSize()];
+        mac.doFinal(passwordMac, 0);
+        Arrays.fill(passwordBytes, (byte) 0);
+
+        return iterations + ":" + Hex.toHexString(salt) + ":" + Hex.toHexString(passwordMac);
+    }
+
+    private static void zero(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package info.blockchain.wallet.multiaddress;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size Bloom filter over address strings. Never gives a false negative, so an address it
+ * rejects is certainly not in the set it was built from.
+ */
+final class AddressBloomFilter {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final AtomicLongArray bits;
+    private final int bitCount;
+    private final int hashCount;
+    private final int capacity;
+
+    AddressBloomFilter(int capacity) {
+        this.capacity = capacity;
+        double optimalBits = -capacity * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2));
+        int words = Math.max(1, (int) Math.ceil(optimalBits / Long.SIZE));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * Long.SIZE;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+    }
+
+    /**
+     * @return The number of addresses this filter was sized for. Beyond that the false positive
+     * rate climbs, and the filter should be rebuilt larger.
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    void put(String address) {
+        int h1 = address.hashCode();
+        int h2 = secondHash(address);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = index(h1 + i * h2);
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    boolean mightContain(String address) {
+        int h1 = address.hashCode();
+        int h2 = secondHash(address);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = index(h1 + i * h2);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(int hash) {
+        return (hash & Integer.MAX_VALUE) % bitCount;
+    }
+
+    // FNV-1a, so that the probes aren't all derived from String.hashCode()
+    private static int secondHash(String address) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < address.length(); i++) {
+            hash ^= address.charAt(i);
+            hash *= 0x01000193;
+        }
+        // An even step could cycle through only part of the filter
+        return hash | 1;
+    }
+}
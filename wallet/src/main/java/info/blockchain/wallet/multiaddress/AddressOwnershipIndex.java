@@ -0,0 +1,253 @@
+package info.blockchain.wallet.multiaddress;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AddressOwnershipIndex.java : answers whether an address belongs to the wallet, and to which
+ * xpub, without scanning accounts or imported addresses.
+ *
+ * The addresses of every tracked account are derived ahead of time, from the start of each chain
+ * up to a window past the next unused index, and the window moves forward with that index.
+ * Addresses learned from transaction summaries are added as well. Lookups are lock free, and
+ * addresses which aren't ours, by far the most common case when checking transaction outputs, are
+ * usually turned away by a Bloom filter before touching the maps.
+ */
+public class AddressOwnershipIndex {
+
+    /**
+     * Default number of addresses derived past the next unused index of each chain, matching the
+     * BIP44 gap limit.
+     */
+    public static final int DEFAULT_WINDOW = 20;
+
+    private static final int INITIAL_FILTER_CAPACITY = 256;
+
+    /**
+     * A chain of addresses, eg the receive chain of an HD account.
+     */
+    public interface AddressChain {
+
+        /**
+         * @return The addresses from startIndex up to, but not including, endIndex
+         */
+        List<String> getAddressStrings(int startIndex, int endIndex);
+    }
+
+    private final int window;
+
+    private final ConcurrentHashMap<String, String> addressToXpub = new ConcurrentHashMap<>();
+
+    // The imported addresses and a filter which already holds them, published together so that a
+    // lookup never sees one without the other
+    private volatile Lookup lookup = Lookup.empty();
+
+    // Guarded by this
+    private final Map<String, TrackedAccount> accounts = new HashMap<>();
+    private int filterSize;
+
+    public AddressOwnershipIndex() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window Number of addresses derived past the next unused index of each chain
+     */
+    public AddressOwnershipIndex(int window) {
+        this.window = window;
+    }
+
+    /**
+     * Starts deriving the addresses of an account. Calling this again for the same xpub only
+     * derives addresses which haven't been derived yet.
+     *
+     * @param xpub               The account's xpub, which its addresses map to
+     * @param receive            The account's receive chain
+     * @param change             The account's change chain
+     * @param nextReceiveIndex   Index of the next unused receive address
+     * @param nextChangeIndex    Index of the next unused change address
+     */
+    public void trackAccount(String xpub,
+                             AddressChain receive,
+                             AddressChain change,
+                             int nextReceiveIndex,
+                             int nextChangeIndex) {
+        TrackedAccount account;
+        synchronized (this) {
+            account = accounts.get(xpub);
+            if (account == null) {
+                account = new TrackedAccount(xpub, receive, change);
+                accounts.put(xpub, account);
+            }
+        }
+        account.extend(nextReceiveIndex, nextChangeIndex);
+    }
+
+    /**
+     * Moves the derivation window of a tracked account forward. Does nothing for an xpub which
+     * isn't tracked.
+     */
+    public void advance(String xpub, int nextReceiveIndex, int nextChangeIndex) {
+        TrackedAccount account;
+        synchronized (this) {
+            account = accounts.get(xpub);
+        }
+        if (account != null) {
+            account.extend(nextReceiveIndex, nextChangeIndex);
+        }
+    }
+
+    /**
+     * Adds addresses to the index, eg those which transaction summaries found to belong to an xpub.
+     *
+     * @param addressesToXpubs Map of address to the xpub it belongs to
+     */
+    public void putAll(Map<String, String> addressesToXpubs) {
+        for (Map.Entry<String, String> entry : addressesToXpubs.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Replaces the set of imported addresses.
+     */
+    public void setImportedAddresses(Collection<String> addresses) {
+        Set<String> imported = Collections.unmodifiableSet(new HashSet<>(addresses));
+        synchronized (this) {
+            // Addresses can't be taken out of a Bloom filter, so start a fresh one
+            rebuildFilter(imported);
+        }
+    }
+
+    /**
+     * @return The xpub the address belongs to, or null if it isn't an HD address of this wallet
+     */
+    public String getXpub(String address) {
+        if (address == null || !lookup.filter.mightContain(address)) {
+            return null;
+        }
+        return addressToXpub.get(address);
+    }
+
+    public boolean isOwnHDAddress(String address) {
+        return getXpub(address) != null;
+    }
+
+    public boolean isImportedAddress(String address) {
+        if (address == null) {
+            return false;
+        }
+        Lookup current = lookup;
+        return current.filter.mightContain(address) && current.importedAddresses.contains(address);
+    }
+
+    /**
+     * @return True if the address is either an HD address or an imported address of this wallet
+     */
+    public boolean isOwnAddress(String address) {
+        if (address == null) {
+            return false;
+        }
+        Lookup current = lookup;
+        if (!current.filter.mightContain(address)) {
+            return false;
+        }
+        return addressToXpub.containsKey(address) || current.importedAddresses.contains(address);
+    }
+
+    public synchronized void clear() {
+        accounts.clear();
+        addressToXpub.clear();
+        lookup = Lookup.empty();
+        filterSize = 0;
+    }
+
+    private void put(String address, String xpub) {
+        if (address == null || xpub == null || xpub.equals(addressToXpub.get(address))) {
+            return;
+        }
+        synchronized (this) {
+            // The filter is updated before the map, so a lookup can't see the address in the map
+            // yet be rejected by the filter
+            if (filterSize >= lookup.filter.getCapacity()) {
+                rebuildFilter(lookup.importedAddresses);
+            }
+            lookup.filter.put(address);
+            filterSize++;
+            addressToXpub.put(address, xpub);
+        }
+    }
+
+    // Must be called holding the lock. The filter is filled before it is published with the
+    // imported addresses, and leaves room for at least one more address.
+    private void rebuildFilter(Set<String> importedAddresses) {
+        int size = addressToXpub.size() + importedAddresses.size();
+        int capacity = INITIAL_FILTER_CAPACITY;
+        while (capacity < (size + 1) * 2) {
+            capacity *= 2;
+        }
+
+        AddressBloomFilter rebuilt = new AddressBloomFilter(capacity);
+        for (String address : addressToXpub.keySet()) {
+            rebuilt.put(address);
+        }
+        for (String address : importedAddresses) {
+            rebuilt.put(address);
+        }
+        lookup = new Lookup(rebuilt, importedAddresses);
+        filterSize = size;
+    }
+
+    private static final class Lookup {
+
+        final AddressBloomFilter filter;
+        final Set<String> importedAddresses;
+
+        Lookup(AddressBloomFilter filter, Set<String> importedAddresses) {
+            this.filter = filter;
+            this.importedAddresses = importedAddresses;
+        }
+
+        static Lookup empty() {
+            return new Lookup(new AddressBloomFilter(INITIAL_FILTER_CAPACITY), Collections.<String>emptySet());
+        }
+    }
+
+    private class TrackedAccount {
+
+        private final String xpub;
+        private final AddressChain receive;
+        private final AddressChain change;
+
+        // Guarded by this
+        private int receiveEnd;
+        private int changeEnd;
+
+        TrackedAccount(String xpub, AddressChain receive, AddressChain change) {
+            this.xpub = xpub;
+            this.receive = receive;
+            this.change = change;
+        }
+
+        synchronized void extend(int nextReceiveIndex, int nextChangeIndex) {
+            receiveEnd = extend(receive, receiveEnd, nextReceiveIndex + window);
+            changeEnd = extend(change, changeEnd, nextChangeIndex + window);
+        }
+
+        private int extend(AddressChain chain, int from, int to) {
+            if (to <= from) {
+                return from;
+            }
+            for (String address : chain.getAddressStrings(from, to)) {
+                put(address, xpub);
+            }
+            return to;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package info.blockchain.wallet.multiaddress;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link TransactionSummaryStore} which keeps one file per key in the given directory, holding a
+ * JSON encoded {@link TransactionSummary} per line. Rows are appended and never rewritten, and a
+ * truncated trailing line (eg. if the process died mid-write) is skipped when read back. Summaries
+ * are copied in and out, so callers can't change the ones held in memory.
+ */
+public class FileTransactionSummaryStore implements TransactionSummaryStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FileTransactionSummaryStore.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final Map<String, List<TransactionSummary>> memoryCache = new LinkedHashMap<>();
+
+    public FileTransactionSummaryStore(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized List<TransactionSummary> get(String key) {
+        return copies(loaded(key));
+    }
+
+    @Override
+    public synchronized void append(String key, List<TransactionSummary> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+
+        List<TransactionSummary> stored = new ArrayList<>(loaded(key));
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            log.warn("Unable to create transaction cache directory " + directory);
+            return;
+        }
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(fileFor(key), true), UTF_8)) {
+            for (TransactionSummary summary : summaries) {
+                writer.write(summary.toJson());
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write to transaction cache", e);
+            return;
+        }
+
+        stored.addAll(copies(summaries));
+        memoryCache.put(key, dedupe(stored));
+    }
+
+    @Override
+    public synchronized void clear() {
+        memoryCache.clear();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                log.warn("Unable to delete " + file);
+            }
+        }
+    }
+
+    private List<TransactionSummary> loaded(String key) {
+        List<TransactionSummary> summaries = memoryCache.get(key);
+        if (summaries == null) {
+            summaries = read(fileFor(key));
+            memoryCache.put(key, summaries);
+        }
+        return summaries;
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, DigestUtils.sha256Hex(key));
+    }
+
+    private List<TransactionSummary> read(File file) {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+
+        List<TransactionSummary> summaries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), UTF_8))) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    summaries.add(TransactionSummary.fromJson(line));
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable transaction cache row", e);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read transaction cache", e);
+        }
+        return dedupe(summaries);
+    }
+
+    private static List<TransactionSummary> copies(List<TransactionSummary> summaries) {
+        List<TransactionSummary> copies = new ArrayList<>(summaries.size());
+        for (TransactionSummary summary : summaries) {
+            copies.add(summary.copy());
+        }
+        return copies;
+    }
+
+    private static List<TransactionSummary> dedupe(List<TransactionSummary> summaries) {
+        Map<String, TransactionSummary> byHash = new LinkedHashMap<>();
+        for (TransactionSummary summary : summaries) {
+            byHash.remove(summary.getHash());
+            byHash.put(summary.getHash(), summary);
+        }
+        return new ArrayList<>(byHash.values());
+    }
+}
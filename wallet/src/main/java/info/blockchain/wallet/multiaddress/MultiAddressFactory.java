@@ -6,9 +6,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import info.blockchain.api.blockexplorer.BlockExplorer;
 import info.blockchain.api.blockexplorer.FilterType;
@@ -22,6 +27,7 @@ import info.blockchain.wallet.bip44.HDChain;
 import info.blockchain.wallet.exceptions.ApiException;
 import info.blockchain.wallet.multiaddress.TransactionSummary.TransactionType;
 import info.blockchain.wallet.payload.data.AddressLabel;
+import org.apache.commons.codec.digest.DigestUtils;
 import retrofit2.Call;
 import retrofit2.Response;
 
@@ -33,23 +39,67 @@ public class MultiAddressFactory {
     private HashMap<String, Integer> nextChangeAddressMap;
 
     //Field for testing if address belongs to us - Quicker than derivation
-    private HashMap<String, String> addressToXpubMap;
+    private final AddressOwnershipIndex ownershipIndex;
+
+    private TransactionSummaryStore transactionSummaryStore;
+
+    // The history being merged by the last refresh of each cache key, which pages are served from
+    private final ConcurrentHashMap<String, History> histories = new ConcurrentHashMap<>();
 
     public static final String ADDRESS_DECODE_ERROR = "[--address_decode_error--]";
 
+    //Number of consecutive, already cached, confirmed transactions to see before trusting the cache
+    private static final int CACHE_OVERLAP = 10;
+
     public MultiAddressFactory(BlockExplorer blockExplorer) {
+        this(blockExplorer, new AddressOwnershipIndex());
+    }
+
+    public MultiAddressFactory(BlockExplorer blockExplorer, AddressOwnershipIndex ownershipIndex) {
         this.blockExplorer = blockExplorer;
-        this.addressToXpubMap = new HashMap<>();
+        this.ownershipIndex = ownershipIndex;
         this.nextReceiveAddressMap = new HashMap<>();
         this.nextChangeAddressMap = new HashMap<>();
     }
 
     public String getXpubFromAddress(String address) {
-        return addressToXpubMap.get(address);
+        return ownershipIndex.getXpub(address);
     }
 
-    private MultiAddress getMultiAddress(List<String> allActive, String onlyShow, int limit,
-                                         int offset) throws IOException, ApiException {
+    /**
+     * The index behind {@link #isOwnHDAddress(String)} and {@link #getXpubFromAddress(String)},
+     * which also holds the wallet's imported addresses.
+     */
+    public AddressOwnershipIndex getOwnershipIndex() {
+        return ownershipIndex;
+    }
+
+    /**
+     * Derives the addresses of an HD account into the ownership index, up to a window past the
+     * next unused receive and change addresses. The window follows the next address indexes as
+     * they advance.
+     */
+    public void trackAccount(String xpub, final HDChain receive, final HDChain change) {
+        ownershipIndex.trackAccount(
+            xpub,
+            new AddressOwnershipIndex.AddressChain() {
+                @Override
+                public List<String> getAddressStrings(int startIndex, int endIndex) {
+                    return receive.getAddressStrings(startIndex, endIndex);
+                }
+            },
+            new AddressOwnershipIndex.AddressChain() {
+                @Override
+                public List<String> getAddressStrings(int startIndex, int endIndex) {
+                    return change.getAddressStrings(startIndex, endIndex);
+                }
+            },
+            getNextReceiveAddressIndex(xpub),
+            getNextChangeAddressIndex(xpub));
+    }
+
+    MultiAddress getMultiAddress(List<String> allActive, String onlyShow, int limit,
+                                 int offset) throws IOException, ApiException {
 
         Response<MultiAddress> call = getMultiAddress(allActive, limit, offset, onlyShow).execute();
 
@@ -71,6 +121,26 @@ public class MultiAddressFactory {
         return blockExplorer;
     }
 
+    /**
+     * Prefix for keys in the {@link TransactionSummaryStore}, so that coins sharing xpubs don't
+     * share cached transactions.
+     */
+    protected String getCacheNamespace() {
+        return "btc";
+    }
+
+    public void setTransactionSummaryStore(TransactionSummaryStore transactionSummaryStore) {
+        this.transactionSummaryStore = transactionSummaryStore;
+        for (History history : histories.values()) {
+            history.close();
+        }
+        histories.clear();
+    }
+
+    public boolean isCachingTransactions() {
+        return transactionSummaryStore != null;
+    }
+
     /**
      * @param all          A list of all xpubs and imported addresses whose transactions are to
      *                     be retrieved from API.
@@ -95,7 +165,305 @@ public class MultiAddressFactory {
             return new ArrayList<>();
         }
 
-        return summarize(all, multiAddress, activeImported, startingBlockHeight);
+        return summarize(
+            new HashSet<>(all),
+            multiAddress,
+            activeImported != null ? new HashSet<>(activeImported) : null,
+            startingBlockHeight);
+    }
+
+    /**
+     * Streaming counterpart of {@link #getAccountTransactions(List, List, String, int, int, int)}.
+     * Returns a cursor which summarizes transactions one at a time and fetches the following page
+     * in the background while the current one is consumed.
+     *
+     * @param pageSize Amount of transactions fetched per page
+     */
+    public TransactionSummaryCursor getAccountTransactionsCursor(
+        List<String> all,
+        List<String> activeImported,
+        String onlyShow,
+        int pageSize,
+        int startingBlockHeight) {
+
+        return new TransactionSummaryCursor(
+            this,
+            new ArrayList<>(all),
+            new HashSet<>(all),
+            activeImported != null ? new HashSet<>(activeImported) : null,
+            onlyShow,
+            pageSize,
+            startingBlockHeight);
+    }
+
+    /**
+     * Returns the full transaction history for a set of xpubs and addresses, most recent first.
+     * Confirmed transactions are read from the {@link TransactionSummaryStore}, and only
+     * transactions which are unconfirmed or newer than the cached ones are fetched and summarized.
+     * Newly confirmed transactions are appended to the store.
+     *
+     * @param all                 A list of all xpubs and imported addresses whose transactions are
+     *                            to be retrieved from API.
+     * @param onlyShow            Xpub or imported address, or Null for a consolidated list
+     * @param pageSize            Amount of transactions fetched per page
+     * @param startingBlockHeight Transactions confirmed before this height are ignored
+     */
+    public List<TransactionSummary> getCachedAccountTransactions(
+        List<String> all,
+        String onlyShow,
+        int pageSize,
+        int startingBlockHeight) throws IOException, ApiException {
+
+        History history = refresh(all, onlyShow, pageSize, startingBlockHeight);
+        return page(history, all, onlyShow, pageSize, 0, Integer.MAX_VALUE, startingBlockHeight);
+    }
+
+    /**
+     * Returns a page of the history returned by
+     * {@link #getCachedAccountTransactions(List, String, int, int)}. The first page starts a
+     * refresh of the history, which is only walked and merged as far as the pages requested so
+     * far, and the following pages carry on from where the previous one stopped.
+     *
+     * @param limit  Amount of transactions per page
+     * @param offset Page offset
+     */
+    public List<TransactionSummary> getCachedAccountTransactionsPage(
+        List<String> all,
+        String onlyShow,
+        int limit,
+        int offset,
+        int startingBlockHeight) throws IOException, ApiException {
+
+        History history = histories.get(getCacheKey(all, onlyShow));
+        if (offset == 0 || history == null) {
+            history = refresh(all, onlyShow, limit, startingBlockHeight);
+        }
+        return page(history, all, onlyShow, limit, offset, limit, startingBlockHeight);
+    }
+
+    private List<TransactionSummary> page(History history,
+                                          List<String> all,
+                                          String onlyShow,
+                                          int pageSize,
+                                          int offset,
+                                          int limit,
+                                          int startingBlockHeight) throws IOException, ApiException {
+        while (true) {
+            List<TransactionSummary> page = history.page(offset, limit);
+            if (page != null) {
+                return page;
+            }
+            // Replaced by another refresh while merging, so serve the page from the newer history
+            // rather than refreshing again and closing that one in turn
+            History newer = histories.get(history.key);
+            if (newer == null || newer == history) {
+                newer = refresh(all, onlyShow, pageSize, startingBlockHeight);
+            }
+            history = newer;
+        }
+    }
+
+    private History refresh(List<String> all, String onlyShow, int pageSize, int startingBlockHeight) {
+        if (transactionSummaryStore == null) {
+            throw new IllegalStateException("No TransactionSummaryStore set");
+        }
+
+        String key = getCacheKey(all, onlyShow);
+        History history = new History(
+            key,
+            transactionSummaryStore,
+            getAccountTransactionsCursor(all, null, onlyShow, pageSize, startingBlockHeight),
+            startingBlockHeight);
+        History previous = histories.put(key, history);
+        if (previous != null) {
+            previous.close();
+        }
+        return history;
+    }
+
+    private static List<TransactionSummary> copies(List<TransactionSummary> summaries) {
+        List<TransactionSummary> copies = new ArrayList<>(summaries.size());
+        for (TransactionSummary summary : summaries) {
+            copies.add(summary.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Summaries depend on which addresses are ours, so the key covers every xpub and imported
+     * address, even when only one of them is shown.
+     */
+    private String getCacheKey(List<String> all, String onlyShow) {
+        List<String> sorted = new ArrayList<>(all);
+        Collections.sort(sorted);
+        StringBuilder addresses = new StringBuilder();
+        for (String address : sorted) {
+            addresses.append(':').append(address);
+        }
+
+        return getCacheNamespace()
+            + ":" + (onlyShow != null ? onlyShow : "all")
+            + ":" + DigestUtils.sha256Hex(addresses.toString());
+    }
+
+    /**
+     * The history of one cache key, merged from the store and the API as far as it has been paged
+     * through. Fetched transactions arrive most recent first, so once the cursor has moved past a
+     * point in time, everything more recent, fetched or cached, is in its final place.
+     */
+    private class History {
+
+        private final String key;
+        private final TransactionSummaryStore store;
+        private final TransactionSummaryCursor cursor;
+        private final int startingBlockHeight;
+
+        // Guarded by this
+        private final List<TransactionSummary> cached;
+        private final HashMap<String, Long> cachedHeights = new HashMap<>();
+        private long highestCachedBlock;
+        private int cachedIndex;
+
+        private final LinkedList<TransactionSummary> fetched = new LinkedList<>();
+        private final HashSet<String> fetchedHashes = new HashSet<>();
+        private final List<TransactionSummary> newlyConfirmed = new ArrayList<>();
+        private long oldestFetchedTime = Long.MAX_VALUE;
+        private int overlap;
+        private boolean complete;
+
+        private final List<TransactionSummary> merged = new ArrayList<>();
+
+        History(String key,
+                TransactionSummaryStore store,
+                TransactionSummaryCursor cursor,
+                int startingBlockHeight) {
+            this.key = key;
+            this.store = store;
+            this.cursor = cursor;
+            this.startingBlockHeight = startingBlockHeight;
+
+            cached = store.get(key);
+            Collections.sort(cached, new SummaryMostRecentDateComparator());
+            for (TransactionSummary summary : cached) {
+                cachedHeights.put(summary.getHash(), summary.getBlockHeight());
+                highestCachedBlock = Math.max(highestCachedBlock, summary.getBlockHeight());
+            }
+        }
+
+        // Returns null if the history was closed before it was merged as far as the page
+        synchronized List<TransactionSummary> page(int offset, int limit) throws IOException, ApiException {
+            long end = (long) offset + limit;
+            try {
+                while (!complete && merged.size() < end) {
+                    if (!advance()) {
+                        return null;
+                    }
+                }
+            } catch (IOException | ApiException e) {
+                // Start again from the first page next time
+                histories.remove(key, this);
+                close();
+                throw e;
+            } finally {
+                if (!newlyConfirmed.isEmpty()) {
+                    store.append(key, newlyConfirmed);
+                    newlyConfirmed.clear();
+                }
+            }
+
+            if (offset >= merged.size()) {
+                return new ArrayList<>();
+            }
+            return copies(merged.subList(offset, (int) Math.min(merged.size(), end)));
+        }
+
+        void close() {
+            cursor.close();
+        }
+
+        // Must be called holding the lock. Returns false if the cursor was closed before the
+        // history was exhausted.
+        private boolean advance() throws IOException, ApiException {
+            if (overlap >= CACHE_OVERLAP || !cursor.hasNext()) {
+                if (overlap < CACHE_OVERLAP && cursor.isClosed()) {
+                    return false;
+                }
+                //Already cached, everything older should be as well
+                mergeNewerThan(Long.MIN_VALUE);
+                complete = true;
+                cursor.close();
+                return true;
+            }
+
+            TransactionSummary summary;
+            try {
+                summary = cursor.next();
+            } catch (NoSuchElementException e) {
+                // Closed since hasNext()
+                return false;
+            }
+            long blockHeight = summary.getBlockHeight();
+            Long cachedHeight = cachedHeights.get(summary.getHash());
+
+            if (blockHeight > 0 && blockHeight <= highestCachedBlock
+                && cachedHeight != null && cachedHeight == blockHeight) {
+                overlap++;
+            } else {
+                overlap = 0;
+                fetched.add(summary);
+                fetchedHashes.add(summary.getHash());
+                if (blockHeight > 0) {
+                    newlyConfirmed.add(summary);
+                }
+            }
+
+            oldestFetchedTime = Math.min(oldestFetchedTime, summary.getTime());
+            mergeNewerThan(oldestFetchedTime);
+            return true;
+        }
+
+        // Moves fetched summaries, and cached ones more recent than the given time, onto the merged
+        // list. Nothing fetched later can be more recent than what has been fetched so far.
+        private void mergeNewerThan(long time) {
+            Collections.sort(fetched, new SummaryMostRecentDateComparator());
+            while (true) {
+                TransactionSummary nextFetched = fetched.peekFirst();
+                TransactionSummary nextCached = nextCached();
+
+                if (nextCached != null
+                    && (nextFetched == null || nextCached.getTime() > nextFetched.getTime())) {
+                    // May still be fetched again if it's as old as the cursor's position
+                    if (nextCached.getTime() <= time) {
+                        return;
+                    }
+                    cachedIndex++;
+                    long latestBlock = cursor.getLatestBlock();
+                    if (latestBlock > 0) {
+                        nextCached.setConfirmations((int) ((latestBlock - nextCached.getBlockHeight()) + 1));
+                    }
+                    ownershipIndex.putAll(nextCached.getInputsXpubMap());
+                    ownershipIndex.putAll(nextCached.getOutputsXpubMap());
+                    merged.add(nextCached);
+                } else if (nextFetched != null) {
+                    merged.add(fetched.removeFirst());
+                } else {
+                    return;
+                }
+            }
+        }
+
+        // The next cached summary which hasn't been fetched again, or null if there are none left
+        private TransactionSummary nextCached() {
+            while (cachedIndex < cached.size()) {
+                TransactionSummary summary = cached.get(cachedIndex);
+                if (!fetchedHashes.contains(summary.getHash())
+                    && (summary.getBlockHeight() == 0 || summary.getBlockHeight() >= startingBlockHeight)) {
+                    return summary;
+                }
+                cachedIndex++;
+            }
+            return null;
+        }
     }
 
     public int getNextChangeAddressIndex(String xpub) {
@@ -106,6 +474,11 @@ public class MultiAddressFactory {
         return nextChangeAddressMap.get(xpub);
     }
 
+    private int getNextReceiveAddressIndex(String xpub) {
+        Integer index = nextReceiveAddressMap.get(xpub);
+        return index != null ? index : 0;
+    }
+
     public int getNextReceiveAddressIndex(String xpub, List<AddressLabel> reservedAddresses) {
         if (!nextReceiveAddressMap.containsKey(xpub)) {
             return 0;
@@ -131,7 +504,7 @@ public class MultiAddressFactory {
     }
 
     public boolean isOwnHDAddress(String address) {
-        return addressToXpubMap.containsKey(address);
+        return ownershipIndex.isOwnHDAddress(address);
     }
 
     public void incrementNextReceiveAddress(String xpub, List<AddressLabel> reservedAddresses) {
@@ -140,6 +513,7 @@ public class MultiAddressFactory {
         receiveIndex++;
 
         nextReceiveAddressMap.put(xpub, receiveIndex);
+        ownershipIndex.advance(xpub, receiveIndex, getNextChangeAddressIndex(xpub));
     }
 
     public void incrementNextChangeAddress(String xpub) {
@@ -147,6 +521,7 @@ public class MultiAddressFactory {
         index++;
 
         nextChangeAddressMap.put(xpub, index);
+        ownershipIndex.advance(xpub, getNextReceiveAddressIndex(xpub), index);
     }
 
     public class TxMostRecentDateComparator implements Comparator<Transaction> {
@@ -172,18 +547,50 @@ public class MultiAddressFactory {
         }
     }
 
+    private static class SummaryMostRecentDateComparator implements Comparator<TransactionSummary> {
+
+        public int compare(TransactionSummary t1, TransactionSummary t2) {
+            //noinspection UseCompareMethod -> Long.compare() can break on specific Android versions
+            if (t1.getTime() > t2.getTime()) {
+                return -1;
+            } else if (t1.getTime() < t2.getTime()) {
+                return 1;
+            } else {
+                return 0;
+            }
+        }
+    }
+
     public List<TransactionSummary> summarize(List<String> ownAddressesAndXpubs,
                                               MultiAddress multiAddress,
                                               List<String> imported,
                                               int startingBlockHeight) {
+        return summarize(
+            new HashSet<>(ownAddressesAndXpubs),
+            multiAddress,
+            imported != null ? new HashSet<>(imported) : null,
+            startingBlockHeight);
+    }
+
+    /**
+     * Summarizes a page of transactions. Ownership checks are made against hashed sets so that
+     * summarizing is linear in the size of the page, regardless of how many imported addresses the
+     * wallet holds.
+     *
+     * @param ownAddressesAndXpubs All xpubs and addresses belonging to the wallet. HD addresses
+     *                             discovered while summarizing are added to this set.
+     * @param multiAddress         The page of transactions returned by the API
+     * @param imported             Imported addresses to filter by, or Null for no filtering
+     * @param startingBlockHeight  Transactions confirmed before this height are ignored
+     */
+    public List<TransactionSummary> summarize(Set<String> ownAddressesAndXpubs,
+                                              MultiAddress multiAddress,
+                                              Set<String> imported,
+                                              int startingBlockHeight) {
 
         List<TransactionSummary> summaryList = new ArrayList<>();
 
-        //Set next address indexes
-        for (AddressSummary address : multiAddress.getAddresses()) {
-            nextReceiveAddressMap.put(address.getAddress(), address.getAccountIndex());
-            nextChangeAddressMap.put(address.getAddress(), address.getChangeIndex());
-        }
+        updateAddressIndexes(multiAddress);
 
         List<Transaction> txs = multiAddress.getTxs();
         if (txs == null) {
@@ -191,184 +598,219 @@ public class MultiAddressFactory {
             return summaryList;
         }
 
+        long latestBlock = multiAddress.getInfo().getLatestBlock().getHeight();
         for (Transaction tx : txs) {
-
-            if (tx.getBlockHeight() != 0 && tx.getBlockHeight() < startingBlockHeight) {
-                //Filter out txs before blockHeight (mainly for BCH)
-                //Block height will be 0 until included in a block
-                continue;
+            TransactionSummary txSummary = summarizeTransaction(
+                ownAddressesAndXpubs,
+                tx,
+                imported,
+                startingBlockHeight,
+                latestBlock);
+            if (txSummary != null) {
+                summaryList.add(txSummary);
             }
+        }
 
-            boolean isImported = false;
+        return summaryList;
+    }
 
-            TransactionSummary txSummary = new TransactionSummary();
-            txSummary.inputsMap = new HashMap<>();
-            txSummary.outputsMap = new HashMap<>();
+    void updateAddressIndexes(MultiAddress multiAddress) {
+        //Set next address indexes
+        for (AddressSummary address : multiAddress.getAddresses()) {
+            nextReceiveAddressMap.put(address.getAddress(), address.getAccountIndex());
+            nextChangeAddressMap.put(address.getAddress(), address.getChangeIndex());
+            ownershipIndex.advance(
+                address.getAddress(),
+                address.getAccountIndex(),
+                address.getChangeIndex());
+        }
+    }
 
-            //Map which address belongs to which xpub.
-            txSummary.inputsXpubMap = new HashMap<>();
-            txSummary.outputsXpubMap = new HashMap<>();
+    /**
+     * Summarizes a single transaction.
+     *
+     * @return The summary, or Null if the transaction is filtered out by block height or by the
+     * imported address filter
+     */
+    TransactionSummary summarizeTransaction(Set<String> ownAddressesAndXpubs,
+                                            Transaction tx,
+                                            Set<String> imported,
+                                            int startingBlockHeight,
+                                            long latestBlock) {
+
+        if (tx.getBlockHeight() != 0 && tx.getBlockHeight() < startingBlockHeight) {
+            //Filter out txs before blockHeight (mainly for BCH)
+            //Block height will be 0 until included in a block
+            return null;
+        }
 
-            if (tx.getResult().add(tx.getFee()).signum() == 0) {
-                txSummary.setTransactionType(TransactionType.TRANSFERRED);
-            } else if (tx.getResult().signum() > 0) {
-                txSummary.setTransactionType(TransactionType.RECEIVED);
-            } else {
-                txSummary.setTransactionType(TransactionType.SENT);
-            }
+        boolean isImported = false;
 
-            //Inputs
-            String inputAddr;
-            BigInteger inputValue;
-            for (Input input : tx.getInputs()) {
-
-                Output prevOut = input.getPrevOut();
-                if (prevOut != null) {
-
-                    inputAddr = prevOut.getAddr();
-                    inputValue = prevOut.getValue();
-                    if (inputAddr != null) {
-
-                        //Transaction from HD account
-                        Xpub xpubBody = prevOut.getXpub();
-                        if (xpubBody != null) {
-                            //xpubBody will only show if it belongs to our account
-                            //inputAddr belongs to our own account - add it, it's a transfer/send
-                            ownAddressesAndXpubs.add(inputAddr);
-                            txSummary.inputsXpubMap.put(inputAddr, xpubBody.getM());
-                        }
+        TransactionSummary txSummary = new TransactionSummary();
+        txSummary.inputsMap = new HashMap<>();
+        txSummary.outputsMap = new HashMap<>();
 
-                        //Flag as imported address
-                        if (imported != null && imported.contains(inputAddr)) {
-                            isImported = true;
-                        }
+        //Map which address belongs to which xpub.
+        txSummary.inputsXpubMap = new HashMap<>();
+        txSummary.outputsXpubMap = new HashMap<>();
 
-                        //Keep track of inputs
-                        BigInteger existingBalance = txSummary.inputsMap.containsKey(inputAddr)
-                            ? txSummary.inputsMap.get(inputAddr) : BigInteger.ZERO;
-                        txSummary.inputsMap.put(inputAddr, existingBalance.add(inputValue));
+        if (tx.getResult().add(tx.getFee()).signum() == 0) {
+            txSummary.setTransactionType(TransactionType.TRANSFERRED);
+        } else if (tx.getResult().signum() > 0) {
+            txSummary.setTransactionType(TransactionType.RECEIVED);
+        } else {
+            txSummary.setTransactionType(TransactionType.SENT);
+        }
 
-                    } else {
-                        //No input address available
-                        txSummary.inputsMap.put(ADDRESS_DECODE_ERROR, inputValue);
+        //Inputs
+        String inputAddr;
+        BigInteger inputValue;
+        for (Input input : tx.getInputs()) {
+
+            Output prevOut = input.getPrevOut();
+            if (prevOut != null) {
+
+                inputAddr = prevOut.getAddr();
+                inputValue = prevOut.getValue();
+                if (inputAddr != null) {
+
+                    //Transaction from HD account
+                    Xpub xpubBody = prevOut.getXpub();
+                    if (xpubBody != null) {
+                        //xpubBody will only show if it belongs to our account
+                        //inputAddr belongs to our own account - add it, it's a transfer/send
+                        ownAddressesAndXpubs.add(inputAddr);
+                        txSummary.inputsXpubMap.put(inputAddr, xpubBody.getM());
                     }
 
+                    //Flag as imported address
+                    if (imported != null && imported.contains(inputAddr)) {
+                        isImported = true;
+                    }
+
+                    //Keep track of inputs
+                    BigInteger existingBalance = txSummary.inputsMap.containsKey(inputAddr)
+                        ? txSummary.inputsMap.get(inputAddr) : BigInteger.ZERO;
+                    txSummary.inputsMap.put(inputAddr, existingBalance.add(inputValue));
+
                 } else {
-                    //Newly generated coin
+                    //No input address available
+                    txSummary.inputsMap.put(ADDRESS_DECODE_ERROR, inputValue);
                 }
+
+            } else {
+                //Newly generated coin
             }
+        }
 
-            HashMap<String, BigInteger> changeMap = new HashMap<>();
-            String outputAddr;
-            BigInteger outputValue;
-            for (Output output : tx.getOut()) {
+        HashMap<String, BigInteger> changeMap = new HashMap<>();
+        String outputAddr;
+        BigInteger outputValue;
+        for (Output output : tx.getOut()) {
+
+            outputAddr = output.getAddr();
+            outputValue = output.getValue();
+            if (outputAddr != null) {
+
+                Xpub xpubBody = output.getXpub();
+                if (xpubBody != null) {
+
+                    //inputAddr belongs to our own account - add it
+                    ownAddressesAndXpubs.add(outputAddr);
+                    if (xpubBody.getPath().startsWith("M/" + HDChain.RECEIVE_CHAIN + "/")) {
+                        BigInteger existingBalance = txSummary.outputsMap.containsKey(outputAddr)
+                            ? txSummary.outputsMap.get(outputAddr) : BigInteger.ZERO;
+                        txSummary.outputsMap.put(outputAddr, existingBalance.add(outputValue));
+                        txSummary.outputsXpubMap.put(outputAddr, xpubBody.getM());
+                    } else {
+                        //Change
+                        changeMap.put(outputAddr, outputValue);
+                    }
 
-                outputAddr = output.getAddr();
-                outputValue = output.getValue();
-                if (outputAddr != null) {
+                } else {
+                    //If we own this address and it's not change coming back, it's a transfer
+                    if (ownAddressesAndXpubs.contains(outputAddr)
+                        && !txSummary.inputsMap.containsKey(outputAddr)) {
 
-                    Xpub xpubBody = output.getXpub();
-                    if (xpubBody != null) {
+                        if (txSummary.getTransactionType() == TransactionType.SENT) {
+                            txSummary.setTransactionType(TransactionType.TRANSFERRED);
+                        }
 
-                        //inputAddr belongs to our own account - add it
-                        ownAddressesAndXpubs.add(outputAddr);
-                        if (xpubBody.getPath().startsWith("M/" + HDChain.RECEIVE_CHAIN + "/")) {
+                        //Don't add change coming back
+                        if (!txSummary.inputsMap.containsKey(outputAddr)) {
                             BigInteger existingBalance = txSummary.outputsMap.containsKey(outputAddr)
                                 ? txSummary.outputsMap.get(outputAddr) : BigInteger.ZERO;
                             txSummary.outputsMap.put(outputAddr, existingBalance.add(outputValue));
-                            txSummary.outputsXpubMap.put(outputAddr, xpubBody.getM());
                         } else {
-                            //Change
                             changeMap.put(outputAddr, outputValue);
                         }
 
+                    } else if (txSummary.inputsMap.containsKey(outputAddr)) {
+                        //Our change
+                        changeMap.put(outputAddr, outputValue);
                     } else {
-                        //If we own this address and it's not change coming back, it's a transfer
-                        if (ownAddressesAndXpubs.contains(outputAddr)
-                            && !txSummary.inputsMap.keySet().contains(outputAddr)) {
-
-                            if (txSummary.getTransactionType() == TransactionType.SENT) {
-                                txSummary.setTransactionType(TransactionType.TRANSFERRED);
-                            }
-
-                            //Don't add change coming back
-                            if (!txSummary.inputsMap.containsKey(outputAddr)) {
-                                BigInteger existingBalance = txSummary.outputsMap.containsKey(outputAddr)
-                                    ? txSummary.outputsMap.get(outputAddr) : BigInteger.ZERO;
-                                txSummary.outputsMap.put(outputAddr, existingBalance.add(outputValue));
-                            } else {
-                                changeMap.put(outputAddr, outputValue);
-                            }
-
-                        } else if (txSummary.inputsMap.keySet().contains(outputAddr)) {
-                            //Our change
-                            changeMap.put(outputAddr, outputValue);
-                        } else {
-                            //Address does not belong to us
-                            BigInteger existingBalance = txSummary.outputsMap.containsKey(outputAddr)
-                                ? txSummary.outputsMap.get(outputAddr) : BigInteger.ZERO;
-                            txSummary.outputsMap.put(outputAddr, existingBalance.add(outputValue));
-                        }
+                        //Address does not belong to us
+                        BigInteger existingBalance = txSummary.outputsMap.containsKey(outputAddr)
+                            ? txSummary.outputsMap.get(outputAddr) : BigInteger.ZERO;
+                        txSummary.outputsMap.put(outputAddr, existingBalance.add(outputValue));
                     }
+                }
 
-                    //Flag as imported address
-                    if (imported != null && imported.contains(outputAddr)) {
-                        isImported = true;
-                    }
-                } else {
-                    //No output address available
-                    txSummary.outputsMap.put(ADDRESS_DECODE_ERROR, outputValue);
+                //Flag as imported address
+                if (imported != null && imported.contains(outputAddr)) {
+                    isImported = true;
                 }
+            } else {
+                //No output address available
+                txSummary.outputsMap.put(ADDRESS_DECODE_ERROR, outputValue);
             }
+        }
 
-            //If we are filtering for imported and nothing found
-            if (imported != null && !isImported) {
-                continue;
-            }
+        //If we are filtering for imported and nothing found
+        if (imported != null && !isImported) {
+            return null;
+        }
 
-            //Remove input addresses not ours
-            filterOwnedAddresses(
-                ownAddressesAndXpubs,
+        //Remove input addresses not ours
+        filterOwnedAddresses(
+            ownAddressesAndXpubs,
+            txSummary.inputsMap,
+            txSummary.outputsMap,
+            txSummary.getTransactionType());
+
+        txSummary.setHash(tx.getHash());
+        txSummary.setTime(tx.getTime());
+        txSummary.setDoubleSpend(tx.isDoubleSpend());
+        txSummary.setFee(tx.getFee());
+
+        if (txSummary.getTransactionType() == TransactionType.RECEIVED) {
+            BigInteger total = calculateTotalReceived(txSummary.outputsMap);
+            txSummary.setTotal(total);
+        } else {
+            BigInteger total = calculateTotalSent(
                 txSummary.inputsMap,
-                txSummary.outputsMap,
+                changeMap,
+                tx.getFee(),
                 txSummary.getTransactionType());
+            txSummary.setTotal(total);
+        }
 
-            txSummary.setHash(tx.getHash());
-            txSummary.setTime(tx.getTime());
-            txSummary.setDoubleSpend(tx.isDoubleSpend());
-            txSummary.setFee(tx.getFee());
-
-            if (txSummary.getTransactionType() == TransactionType.RECEIVED) {
-                BigInteger total = calculateTotalReceived(txSummary.outputsMap);
-                txSummary.setTotal(total);
-            } else {
-                BigInteger total = calculateTotalSent(
-                    txSummary.inputsMap,
-                    changeMap,
-                    tx.getFee(),
-                    txSummary.getTransactionType());
-                txSummary.setTotal(total);
-            }
-
-            //Set confirmations
-            long latestBlock = multiAddress.getInfo().getLatestBlock().getHeight();
-            long txBlockHeight = tx.getBlockHeight();
-            if (latestBlock > 0 && txBlockHeight > 0) {
-                txSummary.setConfirmations((int) ((latestBlock - txBlockHeight) + 1));
-            } else {
-                txSummary.setConfirmations(0);
-            }
-
-            addressToXpubMap.putAll(txSummary.getInputsXpubMap());
-            addressToXpubMap.putAll(txSummary.getOutputsXpubMap());
-
-            summaryList.add(txSummary);
+        //Set confirmations
+        long txBlockHeight = tx.getBlockHeight();
+        txSummary.setBlockHeight(txBlockHeight);
+        if (latestBlock > 0 && txBlockHeight > 0) {
+            txSummary.setConfirmations((int) ((latestBlock - txBlockHeight) + 1));
+        } else {
+            txSummary.setConfirmations(0);
         }
 
-        return summaryList;
+        ownershipIndex.putAll(txSummary.getInputsXpubMap());
+        ownershipIndex.putAll(txSummary.getOutputsXpubMap());
+
+        return txSummary;
     }
 
-    private void filterOwnedAddresses(List<String> ownAddressesAndXpubs,
+    private void filterOwnedAddresses(Set<String> ownAddressesAndXpubs,
                                       HashMap<String, BigInteger> inputsMap,
                                       HashMap<String, BigInteger> outputsMap, TransactionType transactionType) {
 
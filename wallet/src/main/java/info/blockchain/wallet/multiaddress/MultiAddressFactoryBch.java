@@ -17,6 +17,11 @@ public class MultiAddressFactoryBch extends MultiAddressFactory {
         super(blockExplorer);
     }
 
+    @Override
+    protected String getCacheNamespace() {
+        return "bch";
+    }
+
     @Override
     protected Call<MultiAddress> getMultiAddress(List<String> allActive, int limit, int offset, String context) {
         return getBlockExplorer().getMultiAddress("bch", allActive, context, FilterType.RemoveUnspendable, limit, offset);
@@ -1,8 +1,14 @@
 package info.blockchain.wallet.multiaddress;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.HashMap;
 
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class TransactionSummary {
 
     public enum TransactionType {
@@ -16,6 +22,7 @@ public class TransactionSummary {
     private TransactionType transactionType;
     private long time;
     private int confirmations;
+    private long blockHeight;//0 until included in a block
     private boolean isDoubleSpend;
     private boolean isPending;//Sent to server but not confirmed
 
@@ -59,6 +66,14 @@ public class TransactionSummary {
         this.confirmations = confirmations;
     }
 
+    public long getBlockHeight() {
+        return blockHeight;
+    }
+
+    public void setBlockHeight(long blockHeight) {
+        this.blockHeight = blockHeight;
+    }
+
     public BigInteger getTotal() {
         return total;
     }
@@ -122,4 +137,33 @@ public class TransactionSummary {
     public void setPending(boolean pending) {
         isPending = pending;
     }
+
+    /**
+     * @return A copy which can be changed without affecting this summary
+     */
+    public TransactionSummary copy() {
+        TransactionSummary copy = new TransactionSummary();
+        copy.hash = hash;
+        copy.total = total;
+        copy.fee = fee;
+        copy.transactionType = transactionType;
+        copy.time = time;
+        copy.confirmations = confirmations;
+        copy.blockHeight = blockHeight;
+        copy.isDoubleSpend = isDoubleSpend;
+        copy.isPending = isPending;
+        copy.inputsMap = new HashMap<>(inputsMap);
+        copy.outputsMap = new HashMap<>(outputsMap);
+        copy.inputsXpubMap = new HashMap<>(inputsXpubMap);
+        copy.outputsXpubMap = new HashMap<>(outputsXpubMap);
+        return copy;
+    }
+
+    public static TransactionSummary fromJson(String json) throws IOException {
+        return new ObjectMapper().readValue(json, TransactionSummary.class);
+    }
+
+    public String toJson() throws JsonProcessingException {
+        return new ObjectMapper().writeValueAsString(this);
+    }
 }
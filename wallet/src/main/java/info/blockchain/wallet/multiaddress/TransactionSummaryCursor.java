@@ -0,0 +1,266 @@
+package info.blockchain.wallet.multiaddress;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import info.blockchain.api.data.MultiAddress;
+import info.blockchain.api.data.Transaction;
+import info.blockchain.wallet.exceptions.ApiException;
+
+/**
+ * Walks the transaction history of a set of xpubs and addresses one {@link TransactionSummary} at
+ * a time. Transactions are only summarized when they are requested, and while a page is being
+ * consumed the following page is fetched in the background. No more than one page is ever held
+ * ahead of the consumer.
+ *
+ * Cursors are not reusable and should be closed once the caller is done with them. Pages are
+ * fetched on a small pool of daemon threads shared by every cursor.
+ */
+public class TransactionSummaryCursor implements Closeable {
+
+    private static final int PREFETCH_THREADS = 2;
+
+    private final MultiAddressFactory multiAddressFactory;
+    private final List<String> all;
+    private final Set<String> ownAddressesAndXpubs;
+    private final Set<String> imported;
+    private final String onlyShow;
+    private final int pageSize;
+    private final int startingBlockHeight;
+
+    // Consumer state, guarded by lock. Pages are waited for without holding it, so that close()
+    // never waits for a fetch to finish.
+    private final Object lock = new Object();
+    private List<Transaction> page = Collections.emptyList();
+    private int pageIndex;
+    private long latestBlock;
+    private int nextOffset;
+    private boolean lastPage;
+    private TransactionSummary next;
+
+    private volatile Future<MultiAddress> nextPage;
+    private volatile boolean closed;
+
+    TransactionSummaryCursor(MultiAddressFactory multiAddressFactory,
+                             List<String> all,
+                             Set<String> ownAddressesAndXpubs,
+                             Set<String> imported,
+                             String onlyShow,
+                             int pageSize,
+                             int startingBlockHeight) {
+
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+
+        this.multiAddressFactory = multiAddressFactory;
+        this.all = all;
+        this.ownAddressesAndXpubs = ownAddressesAndXpubs;
+        this.imported = imported;
+        this.onlyShow = onlyShow;
+        this.pageSize = pageSize;
+        this.startingBlockHeight = startingBlockHeight;
+    }
+
+    /**
+     * @return true if there's another transaction to consume. May block while the next page is
+     * being fetched.
+     */
+    public boolean hasNext() throws IOException, ApiException {
+        while (true) {
+            Future<MultiAddress> pending;
+            synchronized (lock) {
+                if (closed) {
+                    return false;
+                }
+                if (next != null) {
+                    return true;
+                }
+                if (pageIndex < page.size()) {
+                    next = multiAddressFactory.summarizeTransaction(
+                        ownAddressesAndXpubs,
+                        page.get(pageIndex++),
+                        imported,
+                        startingBlockHeight,
+                        latestBlock);
+                    continue;
+                }
+                if (lastPage) {
+                    return false;
+                }
+                pending = nextPage;
+                if (pending == null) {
+                    pending = fetch(nextOffset);
+                    if (pending == null) {
+                        return false;
+                    }
+                    nextPage = pending;
+                    // close() may have looked for a page to cancel before this one was set
+                    if (closed) {
+                        pending.cancel(true);
+                        return false;
+                    }
+                }
+            }
+
+            MultiAddress multiAddress = awaitPage(pending);
+
+            synchronized (lock) {
+                if (closed) {
+                    return false;
+                }
+                // Another caller may have taken this page while we waited
+                if (nextPage == pending) {
+                    nextPage = null;
+                    applyPage(multiAddress);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The next {@link TransactionSummary}, in the order returned by the API
+     * @throws NoSuchElementException if the history has been exhausted
+     */
+    public TransactionSummary next() throws IOException, ApiException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        synchronized (lock) {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            TransactionSummary summary = next;
+            next = null;
+            return summary;
+        }
+    }
+
+    /**
+     * @return The latest block height reported with the most recently fetched page, or 0 if no
+     * page has been fetched yet
+     */
+    public long getLatestBlock() {
+        synchronized (lock) {
+            return latestBlock;
+        }
+    }
+
+    /**
+     * @return true once {@link #close()} has been called. {@link #hasNext()} returns false from
+     * then on, so this tells a closed cursor apart from an exhausted one.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Cancels any page being fetched. Never waits for the fetch, so this is safe to call from any
+     * thread, including while another thread is blocked in {@link #hasNext()}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Future<MultiAddress> pending = nextPage;
+        if (pending != null) {
+            pending.cancel(true);
+        }
+    }
+
+    // Must be called holding the lock
+    private void applyPage(MultiAddress multiAddress) {
+        nextOffset += pageSize;
+
+        if (multiAddress == null || multiAddress.getTxs() == null) {
+            page = Collections.emptyList();
+            lastPage = true;
+            return;
+        }
+
+        multiAddressFactory.updateAddressIndexes(multiAddress);
+        page = multiAddress.getTxs();
+        pageIndex = 0;
+        latestBlock = multiAddress.getInfo().getLatestBlock().getHeight();
+        lastPage = page.size() < pageSize;
+
+        if (!lastPage) {
+            Future<MultiAddress> prefetched = fetch(nextOffset);
+            if (prefetched != null) {
+                nextPage = prefetched;
+                if (closed) {
+                    prefetched.cancel(true);
+                }
+            }
+        }
+    }
+
+    // Returns null if the cursor was closed
+    private Future<MultiAddress> fetch(final int offset) {
+        if (closed) {
+            return null;
+        }
+        Future<MultiAddress> future = Prefetch.EXECUTOR.submit(new Callable<MultiAddress>() {
+            @Override
+            public MultiAddress call() throws Exception {
+                return multiAddressFactory.getMultiAddress(all, onlyShow, pageSize, offset);
+            }
+        });
+        // Closed while submitting, so close() may have missed it
+        if (closed) {
+            future.cancel(true);
+            return null;
+        }
+        return future;
+    }
+
+    private MultiAddress awaitPage(Future<MultiAddress> pending) throws IOException, ApiException {
+        try {
+            return pending.get();
+        } catch (CancellationException e) {
+            // Only cancelled by close(), after which hasNext() returns false
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (closed) {
+                return null;
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ApiException) {
+                throw (ApiException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    // Created on first use
+    private static class Prefetch {
+
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            PREFETCH_THREADS,
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "multiaddress-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+}
@@ -0,0 +1,27 @@
+package info.blockchain.wallet.multiaddress;
+
+import java.util.List;
+
+/**
+ * Append-only store of confirmed {@link TransactionSummary} objects, keyed by the xpub, imported
+ * address or set of addresses they were summarized for. Confirmed transactions never change, so
+ * rows are only ever added; a later row for the same hash supersedes an earlier one.
+ */
+public interface TransactionSummaryStore {
+
+    /**
+     * @param key The xpub, address or consolidated key the summaries were stored under
+     * @return All stored summaries for the key, or an empty list if none are stored
+     */
+    List<TransactionSummary> get(String key);
+
+    /**
+     * Appends confirmed summaries to the rows stored for the key.
+     */
+    void append(String key, List<TransactionSummary> summaries);
+
+    /**
+     * Removes every stored summary, eg. when the wallet is forgotten.
+     */
+    void clear();
+}
@@ -4,24 +4,22 @@ import info.blockchain.api.blockexplorer.BlockExplorer
 import info.blockchain.api.blockexplorer.FilterType
 import info.blockchain.api.data.Balance
 import info.blockchain.balance.CryptoCurrency
+import info.blockchain.wallet.exceptions.ApiException
 import info.blockchain.wallet.exceptions.ServerConnectionException
-import java.util.ArrayList
 
 class BalanceCall(
     private val blockExplorer: BlockExplorer,
-    private val cryptoCurrency: CryptoCurrency
+    private val cryptoCurrency: CryptoCurrency,
+    private val fetcher: ChunkedBalanceFetcher = ChunkedBalanceFetcher()
 ) : BalanceQuery {
 
     override fun getBalancesFor(addressesAndXpubs: Set<String>) =
-        getBalanceOfAddresses(ArrayList(addressesAndXpubs))
-            .execute()
-            .let {
-                if (!it.isSuccessful) {
-                    throw ServerConnectionException(it.errorBody()?.string() ?: "Unknown, no error body")
-                }
-                it.body()?.finalBalanceMap()
-                    ?: throw Exception("No balances returned")
-            }
+        try {
+            fetcher.fetch(addressesAndXpubs) { chunk -> getBalanceOfAddresses(chunk) }
+                .finalBalanceMap()
+        } catch (e: ApiException) {
+            throw ServerConnectionException(e.message ?: "Unknown, no error body")
+        }
 
     private fun getBalanceOfAddresses(addresses: List<String>) =
         blockExplorer.getBalance(cryptoCurrency.networkTicker.toLowerCase(), addresses, FilterType.RemoveUnspendable)
@@ -1,9 +1,14 @@
 package info.blockchain.wallet.payload;
 
 import java.math.BigInteger;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
@@ -16,11 +21,32 @@ import retrofit2.Call;
 
 public abstract class BalanceManager {
 
+    /**
+     * How long balances kept up to date from transaction deltas are trusted before a full
+     * {@link #updateAllBalances(Set, Set)} is expected.
+     */
+    public static final long RECONCILE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Allowance for the difference between the device's clock and the time the network reports
+     * for a transaction.
+     */
+    static final long CLOCK_SKEW_MS = TimeUnit.MINUTES.toMillis(2);
+
     private final BlockExplorer blockExplorer;
     private final CryptoCurrency cryptoCurrency;
 
     @Nonnull
-    private CryptoBalanceMap balanceMap;
+    private volatile CryptoBalanceMap balanceMap;
+    private volatile long lastReconcileStarted;
+    private volatile long lastReconciled;
+    private final AtomicInteger updatesInFlight = new AtomicInteger();
+    private final Set<String> appliedTransactions =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // Held while applying deltas and while swapping in a full update, so that a transaction
+    // checked against one update's state can't be applied on top of the next
+    private final Object deltaLock = new Object();
 
     BalanceManager(@Nonnull BlockExplorer blockExplorer, @Nonnull CryptoCurrency cryptoCurrency) {
         this.blockExplorer = blockExplorer;
@@ -29,7 +55,57 @@ public abstract class BalanceManager {
     }
 
     public void subtractAmountFromAddressBalance(String address, BigInteger amount) {
-        balanceMap = balanceMap.subtractAmountFromAddress(address, new CryptoValue(cryptoCurrency, amount));
+        balanceMap.subtractAmountFromAddress(address, new CryptoValue(cryptoCurrency, amount));
+    }
+
+    /**
+     * Applies the balance changes a single transaction makes to the xpubs and addresses being
+     * tracked, without a round trip to the balance endpoint. Changes to anything that isn't tracked
+     * are ignored, and a transaction is only ever applied once between full updates.
+     *
+     * The balance endpoint doesn't say which transactions its balances include, so transactions
+     * seen by the network before the last full update started are taken to be included in it
+     * and are ignored. Those seen while it was in flight might or might not be, so a full update
+     * is asked for instead.
+     *
+     * @param txHash The hash of the transaction the changes belong to
+     * @param txTimeSeconds The time the network first saw the transaction, in epoch seconds
+     * @param deltas Credits (positive) and debits (negative) keyed by xpub or address
+     * @return false if a full {@link #updateAllBalances(Set, Set)} is due instead
+     */
+    public boolean applyTransactionDeltas(@Nonnull String txHash,
+                                          long txTimeSeconds,
+                                          @Nonnull Map<String, BigInteger> deltas) {
+        synchronized (deltaLock) {
+            if (isReconcileDue() || updatesInFlight.get() > 0) {
+                return false;
+            }
+
+            long txTime = TimeUnit.SECONDS.toMillis(txTimeSeconds);
+            if (txTime < lastReconcileStarted - CLOCK_SKEW_MS) {
+                return true;
+            }
+            if (txTime <= lastReconciled + CLOCK_SKEW_MS) {
+                return false;
+            }
+
+            if (!appliedTransactions.add(txHash)) {
+                return true;
+            }
+
+            for (Map.Entry<String, BigInteger> delta : deltas.entrySet()) {
+                balanceMap.applyDelta(delta.getKey(), delta.getValue());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return true if balances have never been fully fetched, or were last fetched longer than
+     * {@link #RECONCILE_INTERVAL_MS} ago
+     */
+    public boolean isReconcileDue() {
+        return System.currentTimeMillis() - lastReconciled > RECONCILE_INTERVAL_MS;
     }
 
     @Nonnull
@@ -51,15 +127,28 @@ public abstract class BalanceManager {
         Set<String> xpubs,
         Set<String> importedAddresses
     ) {
-        balanceMap = CryptoBalanceMapKt.calculateCryptoBalanceMap(
-            cryptoCurrency,
-            getBalanceQuery(),
-            xpubs,
-            importedAddresses
-        );
+        long started = System.currentTimeMillis();
+        updatesInFlight.incrementAndGet();
+        try {
+            CryptoBalanceMap updated = CryptoBalanceMapKt.calculateCryptoBalanceMap(
+                cryptoCurrency,
+                getBalanceQuery(),
+                xpubs,
+                importedAddresses
+            );
+            synchronized (deltaLock) {
+                balanceMap = updated;
+                // Transactions applied before this update are now told apart by their time instead
+                appliedTransactions.clear();
+                lastReconcileStarted = started;
+                lastReconciled = System.currentTimeMillis();
+            }
+        } finally {
+            updatesInFlight.decrementAndGet();
+        }
     }
 
-    private BalanceCall getBalanceQuery() {
+    BalanceQuery getBalanceQuery() {
         return new BalanceCall(blockExplorer, cryptoCurrency);
     }
 
@@ -0,0 +1,114 @@
+package info.blockchain.wallet.payload
+
+import info.blockchain.api.data.Balance
+import info.blockchain.wallet.exceptions.ApiException
+import retrofit2.Call
+import java.io.IOException
+import java.util.HashMap
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+
+/**
+ * Fetches balances for large sets of xpubs and addresses by splitting them into chunks which are
+ * requested concurrently, then merged back into a single map. Each chunk is retried on its own if
+ * the request fails with a network or server error.
+ */
+class ChunkedBalanceFetcher @JvmOverloads constructor(
+    private val chunkSize: Int = DEFAULT_CHUNK_SIZE,
+    private val maxAttempts: Int = DEFAULT_MAX_ATTEMPTS,
+    private val executor: ExecutorService = sharedExecutor
+) {
+    init {
+        require(chunkSize > 0) { "Chunk size must be positive" }
+        require(maxAttempts > 0) { "Attempts must be positive" }
+    }
+
+    /**
+     * Builds the balance request for a single chunk. Called again for every retry, as a
+     * [Call] can only be executed once.
+     */
+    fun interface BalanceRequest {
+        fun create(addresses: List<String>): Call<HashMap<String, Balance>>
+    }
+
+    /**
+     * @return The balances returned for all chunks. Addresses the API didn't return a balance for
+     * are missing from the map.
+     * @throws IOException  Thrown if a chunk still fails with network issues after retrying
+     * @throws ApiException Thrown if a chunk's call still isn't successful after retrying
+     */
+    @Throws(IOException::class, ApiException::class)
+    fun fetch(addresses: Collection<String>, request: BalanceRequest): Map<String, Balance> {
+        val chunks = addresses.distinct().chunked(chunkSize)
+        when (chunks.size) {
+            0 -> return emptyMap()
+            1 -> return fetchChunk(chunks[0], request)
+        }
+
+        val futures = chunks.map { chunk ->
+            executor.submit(Callable { fetchChunk(chunk, request) })
+        }
+        try {
+            val balances = HashMap<String, Balance>(addresses.size)
+            for (future in futures) {
+                balances.putAll(await(future))
+            }
+            return balances
+        } finally {
+            futures.forEach { it.cancel(true) }
+        }
+    }
+
+    private fun fetchChunk(chunk: List<String>, request: BalanceRequest): Map<String, Balance> {
+        var attempt = 1
+        while (true) {
+            try {
+                val response = request.create(chunk).execute()
+                if (response.isSuccessful) {
+                    return response.body() ?: throw ApiException("No balances returned")
+                }
+                val error = ApiException("${response.code()}: ${response.errorBody()?.string()}")
+                if (response.code() < 500 || attempt >= maxAttempts) {
+                    throw error
+                }
+            } catch (e: IOException) {
+                if (attempt >= maxAttempts) {
+                    throw e
+                }
+            }
+            attempt++
+        }
+    }
+
+    private fun await(future: Future<Map<String, Balance>>): Map<String, Balance> {
+        try {
+            return future.get()
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw IOException(e)
+        } catch (e: ExecutionException) {
+            when (val cause = e.cause) {
+                is IOException -> throw cause
+                is ApiException -> throw cause
+                else -> throw IOException(cause)
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CHUNK_SIZE = 100
+        const val DEFAULT_MAX_ATTEMPTS = 3
+        private const val THREADS = 4
+
+        private val sharedExecutor: ExecutorService by lazy {
+            Executors.newFixedThreadPool(THREADS, object : ThreadFactory {
+                override fun newThread(runnable: Runnable) =
+                    Thread(runnable, "balance-fetch").apply { isDaemon = true }
+            })
+        }
+    }
+}
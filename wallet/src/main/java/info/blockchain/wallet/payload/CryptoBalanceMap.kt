@@ -3,24 +3,58 @@ package info.blockchain.wallet.payload
 import info.blockchain.balance.CryptoCurrency
 import info.blockchain.balance.CryptoValue
 import java.math.BigInteger
+import java.util.concurrent.ConcurrentHashMap
 
-data class CryptoBalanceMap(
+/**
+ * Balances of a set of xpubs and imported addresses. Balances can be adjusted in place, and the
+ * spendable totals are kept as running sums so reading them never walks the whole map.
+ *
+ * Reads are lock free, adjustments are serialised on the map itself.
+ */
+class CryptoBalanceMap(
     private val cryptoCurrency: CryptoCurrency,
-    private val xpubs: Set<String>,
-    private val imported: Set<String>,
-    private val balances: Map<String, BigInteger>
+    xpubs: Set<String>,
+    imported: Set<String>,
+    balances: Map<String, BigInteger>
 ) {
-    val totalSpendable = CryptoValue(cryptoCurrency, (xpubs + imported).sum(balances))
-    val totalSpendableImported = CryptoValue(cryptoCurrency, (imported).sum(balances))
+    private val spendable: Set<String> = (xpubs + imported).toHashSet()
+    private val imported: Set<String> = imported.toHashSet()
+    private val balances = ConcurrentHashMap<String, BigInteger>(balances)
+
+    @Volatile
+    var totalSpendable = CryptoValue(cryptoCurrency, spendable.sum(this.balances))
+        private set
+
+    @Volatile
+    var totalSpendableImported = CryptoValue(cryptoCurrency, this.imported.sum(this.balances))
+        private set
 
     fun subtractAmountFromAddress(address: String, cryptoValue: CryptoValue): CryptoBalanceMap {
-        val value =
-            balances[address] ?: throw Exception("No info for this address. updateAllBalances should be called first.")
-        val newBalances = balances.toMutableMap()
-            .apply {
-                set(address, value - cryptoValue.toBigInteger())
+        if (!applyDelta(address, cryptoValue.toBigInteger().negate())) {
+            throw Exception("No info for this address. updateAllBalances should be called first.")
+        }
+        return this
+    }
+
+    /**
+     * Credits (positive [delta]) or debits (negative [delta]) the balance of [address], updating
+     * the totals it contributes to.
+     *
+     * @return false if there's no balance for the address, in which case nothing is changed
+     */
+    fun applyDelta(address: String, delta: BigInteger): Boolean {
+        synchronized(balances) {
+            val value = balances[address] ?: return false
+            balances[address] = value + delta
+            if (address in spendable) {
+                totalSpendable = CryptoValue(cryptoCurrency, totalSpendable.toBigInteger() + delta)
+            }
+            if (address in imported) {
+                totalSpendableImported =
+                    CryptoValue(cryptoCurrency, totalSpendableImported.toBigInteger() + delta)
             }
-        return copy(balances = newBalances)
+            return true
+        }
     }
 
     operator fun get(address: String) =
@@ -53,6 +87,10 @@ fun calculateCryptoBalanceMap(
     )
 }
 
-private fun <T> Iterable<T>.sum(balances: Map<T, BigInteger>) =
-    map { balances[it] ?: BigInteger.ZERO }
-        .foldRight(BigInteger.ZERO, BigInteger::add)
+private fun <T> Iterable<T>.sum(balances: Map<T, BigInteger>): BigInteger {
+    var sum = BigInteger.ZERO
+    for (key in this) {
+        balances[key]?.let { sum += it }
+    }
+    return sum
+}
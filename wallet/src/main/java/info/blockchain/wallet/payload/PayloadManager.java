@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -40,8 +41,10 @@ import info.blockchain.wallet.exceptions.InvalidCredentialsException;
 import info.blockchain.wallet.exceptions.NoSuchAddressException;
 import info.blockchain.wallet.exceptions.ServerConnectionException;
 import info.blockchain.wallet.exceptions.UnsupportedVersionException;
+import info.blockchain.wallet.multiaddress.AddressOwnershipIndex;
 import info.blockchain.wallet.multiaddress.MultiAddressFactory;
 import info.blockchain.wallet.multiaddress.TransactionSummary;
+import info.blockchain.wallet.multiaddress.TransactionSummaryCursor;
 import info.blockchain.wallet.pairing.Pairing;
 import info.blockchain.wallet.payload.data.Account;
 import info.blockchain.wallet.payload.data.HDWallet;
@@ -52,6 +55,10 @@ import info.blockchain.wallet.payload.data.WalletExtensionsKt;
 import info.blockchain.wallet.payload.data.WalletWrapper;
 import info.blockchain.wallet.util.DoubleEncryptionFactory;
 import info.blockchain.wallet.util.Tools;
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Action;
+import io.reactivex.schedulers.Schedulers;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Response;
@@ -75,11 +82,33 @@ public class PayloadManager {
     // Bitcoin Cash
     private final BalanceManagerBch balanceManagerBch;
 
+    private final ChunkedBalanceFetcher balanceFetcher = new ChunkedBalanceFetcher();
+
+    /**
+     * Saves scheduled within this many milliseconds of the first are made as one
+     */
+    public static final long SAVE_COALESCING_WINDOW_MS = 300;
+
+    private final PayloadSaveScheduler saveScheduler;
+
     public PayloadManager(
             WalletApi walletApi,
             MultiAddressFactory multiAddressFactory,
             BalanceManagerBtc balanceManagerBtc,
             BalanceManagerBch balanceManagerBch
+    ) {
+        this(walletApi, multiAddressFactory, balanceManagerBtc, balanceManagerBch, Schedulers.io());
+    }
+
+    /**
+     * @param saveScheduler Scheduler on which coalesced saves are made
+     */
+    public PayloadManager(
+            WalletApi walletApi,
+            MultiAddressFactory multiAddressFactory,
+            BalanceManagerBtc balanceManagerBtc,
+            BalanceManagerBch balanceManagerBch,
+            Scheduler saveScheduler
     ) {
         this.walletApi = walletApi;
         // Bitcoin
@@ -87,6 +116,16 @@ public class PayloadManager {
         this.balanceManagerBtc = balanceManagerBtc;
         // Bitcoin Cash
         this.balanceManagerBch = balanceManagerBch;
+
+        this.saveScheduler = new PayloadSaveScheduler(
+                new PayloadSaveScheduler.Saver() {
+                    @Override
+                    public boolean save() throws Exception {
+                        return PayloadManager.this.save();
+                    }
+                },
+                SAVE_COALESCING_WINDOW_MS,
+                saveScheduler);
     }
 
     @Nullable
@@ -401,6 +440,71 @@ public class PayloadManager {
         }
     }
 
+    /**
+     * Saves wallet to server, together with any other changes scheduled within
+     * {@link #SAVE_COALESCING_WINDOW_MS}, so that a burst of edits costs a single encrypt and upload.
+     * The save is made whether or not the result is subscribed to.
+     *
+     * @return A Completable which completes once a save including the current payload succeeds
+     */
+    public Completable scheduleSave() {
+        return scheduleSave(null);
+    }
+
+    /**
+     * As {@link #scheduleSave()}, for a change which has already been made to the payload. The
+     * rollback holds the same lock as {@link #save()}, so it never runs while the payload is being
+     * encrypted. Later changes may have been made while the failed save was in flight, so a
+     * rollback should only undo its change if the payload still holds the value it set.
+     *
+     * @param rollback Undoes the change if the save fails, or null if there's nothing to undo
+     */
+    public Completable scheduleSave(@Nullable final Runnable rollback) {
+        if (rollback == null) {
+            return saveScheduler.schedule(null);
+        }
+        return saveScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PayloadManager.this) {
+                    rollback.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the note of a transaction straight away and schedules a coalesced save, see
+     * {@link #scheduleSave()}. The previous note is put back if the save fails.
+     *
+     * @param transactionHash The hash of the transaction
+     * @param note            The note to set
+     * @return A Completable which completes once saved
+     */
+    public Completable scheduleUpdateTransactionNote(final String transactionHash, final String note) {
+        final Map<String, String> txNotes;
+        final String previous;
+        synchronized (this) {
+            txNotes = getPayload().getTxNotes();
+            previous = txNotes.put(transactionHash, note);
+        }
+
+        return scheduleSave(new Runnable() {
+            @Override
+            public void run() {
+                if (txNotes.get(transactionHash) != note) {
+                    // Edited again since, which is kept
+                    return;
+                }
+                if (previous != null) {
+                    txNotes.put(transactionHash, previous);
+                } else {
+                    txNotes.remove(transactionHash);
+                }
+            }
+        });
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // ACCOUNT AND IMPORTED HDADDRESS CREATION
     ///////////////////////////////////////////////////////////////////////////
@@ -480,6 +584,86 @@ public class PayloadManager {
         updateAllBalances();
     }
 
+    /**
+     * Inserts a {@link ImportedAddress} into the user's {@link Wallet} straight away and schedules a
+     * coalesced save, see {@link #scheduleSave()}. The address is removed again if the save fails.
+     *
+     * @param importedAddress The {@link ImportedAddress} to be added
+     * @return A Completable which completes once saved and balances are updated
+     */
+    public Completable scheduleAddImportedAddress(final ImportedAddress importedAddress) {
+        synchronized (this) {
+            walletBaseBody.getWalletBody().getImportedAddressList().add(importedAddress);
+        }
+
+        return scheduleSave(new Runnable() {
+            @Override
+            public void run() {
+                walletBaseBody.getWalletBody().getImportedAddressList().remove(importedAddress);
+            }
+        }).andThen(updateAllBalancesCompletable());
+    }
+
+    /**
+     * Replaces an old {@link ImportedAddress} with a newer one straight away and schedules a
+     * coalesced save, see {@link #scheduleSave()}. The old address is put back if the save fails.
+     *
+     * @param importedAddress The updated {@link ImportedAddress}
+     * @return A Completable which completes once saved and balances are updated, or errors with a
+     * {@link NullPointerException} if the address to be updated is not found
+     */
+    public Completable scheduleUpdateImportedAddress(final ImportedAddress importedAddress) {
+        final ImportedAddress previous;
+        synchronized (this) {
+            previous = replaceImportedAddress(importedAddress);
+        }
+        if (previous == null) {
+            return Completable.error(new NullPointerException("Imported address not found"));
+        }
+
+        return scheduleSave(new Runnable() {
+            @Override
+            public void run() {
+                if (findImportedAddress(importedAddress.getAddress()) == importedAddress) {
+                    replaceImportedAddress(previous);
+                }
+            }
+        }).andThen(updateAllBalancesCompletable());
+    }
+
+    @Nullable
+    private ImportedAddress findImportedAddress(String address) {
+        for (ImportedAddress importedAddress : walletBaseBody.getWalletBody().getImportedAddressList()) {
+            if (importedAddress.getAddress().equals(address)) {
+                return importedAddress;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The address replaced, or null if there was no address to replace
+     */
+    @Nullable
+    private ImportedAddress replaceImportedAddress(ImportedAddress importedAddress) {
+        List<ImportedAddress> importedAddressList = walletBaseBody.getWalletBody().getImportedAddressList();
+        for (int i = 0; i < importedAddressList.size(); i++) {
+            if (importedAddressList.get(i).getAddress().equals(importedAddress.getAddress())) {
+                return importedAddressList.set(i, importedAddress);
+            }
+        }
+        return null;
+    }
+
+    private Completable updateAllBalancesCompletable() {
+        return Completable.fromAction(new Action() {
+            @Override
+            public void run() throws Exception {
+                updateAllBalances();
+            }
+        });
+    }
+
     /**
      * Sets private key to existing matching imported address. If no match is found the key will be added
      * to the wallet non the less.
@@ -581,20 +765,7 @@ public class PayloadManager {
     public LinkedHashMap<String, Balance> getBalanceOfBtcAddresses(List<String> addresses) throws
             IOException,
             ApiException {
-        LinkedHashMap<String, Balance> map = new LinkedHashMap<>();
-
-        final Response<HashMap<String, Balance>> response = balanceManagerBtc.getBalanceOfAddresses(addresses).execute();
-        if (response.isSuccessful()) {
-            final HashMap<String, Balance> balanceHashMap = response.body();
-            // Place into map to maintain order, as API may return them in a random order
-            for (String address : addresses) {
-                map.put(address, balanceHashMap.get(address));
-            }
-
-            return map;
-        } else {
-            throw new ApiException(response.code() + ": " + response.errorBody().string());
-        }
+        return getBalanceOfAddresses(balanceManagerBtc, addresses);
     }
 
     /**
@@ -610,20 +781,27 @@ public class PayloadManager {
     public LinkedHashMap<String, Balance> getBalanceOfBchAddresses(List<String> addresses) throws
             IOException,
             ApiException {
-        LinkedHashMap<String, Balance> map = new LinkedHashMap<>();
+        return getBalanceOfAddresses(balanceManagerBch, addresses);
+    }
 
-        final Response<HashMap<String, Balance>> response = balanceManagerBch.getBalanceOfAddresses(addresses).execute();
-        if (response.isSuccessful()) {
-            final HashMap<String, Balance> balanceHashMap = response.body();
-            // Place into map to maintain order, as API may return them in a random order
-            for (String address : addresses) {
-                map.put(address, balanceHashMap.get(address));
-            }
+    private LinkedHashMap<String, Balance> getBalanceOfAddresses(final BalanceManager balanceManager,
+                                                                 List<String> addresses) throws
+            IOException,
+            ApiException {
+        Map<String, Balance> balances = balanceFetcher.fetch(addresses,
+            new ChunkedBalanceFetcher.BalanceRequest() {
+                @Override
+                public Call<HashMap<String, Balance>> create(@Nonnull List<String> chunk) {
+                    return balanceManager.getBalanceOfAddresses(chunk);
+                }
+            });
 
-            return map;
-        } else {
-            throw new ApiException(response.code() + ": " + response.errorBody().string());
+        LinkedHashMap<String, Balance> map = new LinkedHashMap<>();
+        // Place into map to maintain order, as API may return them in a random order
+        for (String address : addresses) {
+            map.put(address, balances.get(address));
         }
+        return map;
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -691,9 +869,32 @@ public class PayloadManager {
         ArrayList<String> all = new ArrayList<>(activeXpubs);
         all.addAll(activeImported);
 
+        if (multiAddressFactory.isCachingTransactions()) {
+            return multiAddressFactory.getCachedAccountTransactionsPage(all, xpub, limit, offset, 0);
+        }
+
         return multiAddressFactory.getAccountTransactions(all, null, xpub, limit, offset, 0);
     }
 
+    /**
+     * Streams the BTC transaction list for an {@link Account}, or for all wallet accounts/addresses
+     * if no xPub is passed. Summaries are produced one at a time as they are consumed, while the
+     * following page is fetched in the background. The cursor must be closed when no longer needed.
+     *
+     * @param xpub     The xPub to get transactions from, or null for all transactions
+     * @param pageSize Amount of transactions fetched per page
+     * @return A {@link TransactionSummaryCursor} over the BTC tx summaries
+     */
+    public TransactionSummaryCursor getAccountTransactionsCursor(@Nullable String xpub, int pageSize) {
+        List<String> activeXpubs = getPayload().getHdWallets().get(0).getActiveXpubs();
+        List<String> activeImported = getPayload().getImportedAddressStringList(ImportedAddress.NORMAL_ADDRESS);
+
+        ArrayList<String> all = new ArrayList<>(activeXpubs);
+        all.addAll(activeImported);
+
+        return multiAddressFactory.getAccountTransactionsCursor(all, null, xpub, pageSize, 0);
+    }
+
     /**
      * Calculates if an address belongs to any xpubs in wallet. Accepts both BTC and BCH addresses.
      * Make sure multi address is up to date before executing this method.
@@ -705,6 +906,17 @@ public class PayloadManager {
         return multiAddressFactory.isOwnHDAddress(address);
     }
 
+    /**
+     * Calculates if an address is one of the wallet's imported addresses, as of the last balance
+     * update.
+     *
+     * @param address A BTC address
+     * @return A boolean, true if the address is imported
+     */
+    public boolean isImportedAddress(String address) {
+        return multiAddressFactory.getOwnershipIndex().isImportedAddress(address);
+    }
+
     /**
      * Converts any Bitcoin address to a label.
      *
@@ -718,6 +930,8 @@ public class PayloadManager {
         if (xpub != null) {
             label = getPayload().getHdWallets().get(HD_WALLET_INDEX).getLabelFromXpub(xpub);
         } else {
+            // The ownership index only picks up newly imported addresses on the next balance
+            // update, so the wallet is checked directly
             label = getPayload().getLabelFromImportedAddress(address);
         }
 
@@ -804,14 +1018,14 @@ public class PayloadManager {
         HDAccount hdAccount = getPayload().getHdWallets().get(0)
                 .getHDAccountFromAccountBody(account);
 
-        return hdAccount.getReceive().getAddressAt(position).getAddressString();
+        return hdAccount.getReceive().getAddressStrings(position, position + 1).get(0);
     }
 
     private String getChangeAddress(Account account, int position) throws HDWalletException {
         HDAccount hdAccount = getPayload().getHdWallets().get(0)
                 .getHDAccountFromAccountBody(account);
 
-        return hdAccount.getChange().getAddressAt(position).getAddressString();
+        return hdAccount.getChange().getAddressStrings(position, position + 1).get(0);
     }
 
     /**
@@ -896,12 +1110,51 @@ public class PayloadManager {
      */
     public void updateAllBalances() throws ServerConnectionException, IOException {
         Wallet wallet = getPayload();
+        updateOwnershipIndex(wallet);
+
         Set<String> xpubs = WalletExtensionsKt.activeXpubs(wallet);
         Set<String> allImported = WalletExtensionsKt.nonArchivedImportedAddressStrings(wallet);
 
         balanceManagerBtc.updateAllBalances(xpubs, allImported);
     }
 
+    /**
+     * Brings the index behind {@link #isOwnHDAddress(String)}, {@link #getXpubFromAddress(String)}
+     * and {@link #isImportedAddress(String)} in line with the wallet's accounts and imported
+     * addresses. Accounts which are already tracked aren't derived again.
+     */
+    private void updateOwnershipIndex(Wallet wallet) {
+        AddressOwnershipIndex ownershipIndex = multiAddressFactory.getOwnershipIndex();
+
+        List<String> imported = new ArrayList<>();
+        if (wallet.getImportedAddressList() != null) {
+            for (ImportedAddress importedAddress : wallet.getImportedAddressList()) {
+                imported.add(importedAddress.getAddress());
+            }
+        }
+        ownershipIndex.setImportedAddresses(imported);
+
+        if (wallet.getHdWallets() == null || wallet.getHdWallets().isEmpty()) {
+            return;
+        }
+
+        HDWallet hdWallet = wallet.getHdWallets().get(HD_WALLET_INDEX);
+        try {
+            for (Account account : hdWallet.getAccounts()) {
+                HDAccount hdAccount = hdWallet.getHDAccountFromAccountBody(account);
+                if (hdAccount != null) {
+                    multiAddressFactory.trackAccount(
+                            account.getXpub(),
+                            hdAccount.getReceive(),
+                            hdAccount.getChange());
+                }
+            }
+        } catch (HDWalletException e) {
+            // Not upgraded to HD yet, only imported addresses can be ours
+            log.warn("", e);
+        }
+    }
+
     /**
      * Updates address balance as well as wallet balance.
      * This is used to immediately update balances after a successful transaction which speeds
@@ -912,4 +1165,27 @@ public class PayloadManager {
         balanceManagerBtc.subtractAmountFromAddressBalance(address, amount);
     }
 
+    /**
+     * Applies the balance changes of a single transaction, usually as reported by the websocket,
+     * without fetching all balances again.
+     *
+     * @param txHash The hash of the transaction
+     * @param txTimeSeconds The time the network first saw the transaction, in epoch seconds
+     * @param deltas Credits and debits keyed by xpub or address
+     * @return false if balances are stale and {@link #updateAllBalances()} should be called instead
+     */
+    public boolean applyTransactionBalanceDeltas(String txHash,
+                                                 long txTimeSeconds,
+                                                 Map<String, BigInteger> deltas) {
+        return balanceManagerBtc.applyTransactionDeltas(txHash, txTimeSeconds, deltas);
+    }
+
+    /**
+     * @return true if balances kept up to date by {@link #applyTransactionBalanceDeltas} are due a
+     * full {@link #updateAllBalances()}
+     */
+    public boolean isBalanceReconcileDue() {
+        return balanceManagerBtc.isReconcileDue();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+package info.blockchain.wallet.payload;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import info.blockchain.wallet.exceptions.ServerConnectionException;
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.subjects.CompletableSubject;
+
+/**
+ * Coalesces wallet saves. Every save re-encrypts the whole payload and uploads it, so saves
+ * requested within a short window of each other are made as one. Changes are expected to have
+ * been made to the payload already, and are undone through their rollbacks, most recent first, if
+ * the save which included them fails.
+ *
+ * Saves run one at a time, rollbacks included, so that each one chains from the checksum the
+ * previous one left, and never uploads changes which are about to be rolled back.
+ */
+class PayloadSaveScheduler {
+
+    private static Logger log = LoggerFactory.getLogger(PayloadSaveScheduler.class);
+
+    interface Saver {
+
+        /**
+         * @return True if the payload was saved
+         */
+        boolean save() throws Exception;
+    }
+
+    private final Saver saver;
+    private final long windowMillis;
+    private final Scheduler scheduler;
+
+    private final Object flushLock = new Object();
+
+    // Guarded by this
+    private List<PendingSave> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    PayloadSaveScheduler(Saver saver, long windowMillis, Scheduler scheduler) {
+        this.saver = saver;
+        this.windowMillis = windowMillis;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Schedules a save of the payload, which is made whether or not the result is subscribed to.
+     *
+     * @param rollback Undoes the change being saved, or null if there's nothing to undo
+     * @return A Completable which completes once a save including the change has succeeded
+     */
+    Completable schedule(@Nullable Runnable rollback) {
+        CompletableSubject result = CompletableSubject.create();
+        synchronized (this) {
+            pending.add(new PendingSave(result, rollback));
+            if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.scheduleDirect(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return result.hide();
+    }
+
+    private void flush() {
+        synchronized (flushLock) {
+            List<PendingSave> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = new ArrayList<>();
+                flushScheduled = false;
+            }
+
+            Throwable error = null;
+            try {
+                if (!saver.save()) {
+                    error = new ServerConnectionException("Failed to save wallet.");
+                }
+            } catch (Exception e) {
+                error = e;
+            }
+
+            if (error == null) {
+                for (PendingSave save : batch) {
+                    save.result.onComplete();
+                }
+                return;
+            }
+
+            log.warn("Save of " + batch.size() + " changes failed", error);
+            try {
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    Runnable rollback = batch.get(i).rollback;
+                    if (rollback == null) {
+                        continue;
+                    }
+                    // One failed rollback mustn't stop the others
+                    try {
+                        rollback.run();
+                    } catch (RuntimeException e) {
+                        log.error("Rollback of an unsaved change failed", e);
+                    }
+                }
+            } finally {
+                for (PendingSave save : batch) {
+                    save.result.onError(error);
+                }
+            }
+        }
+    }
+
+    private static class PendingSave {
+
+        final CompletableSubject result;
+        @Nullable final Runnable rollback;
+
+        PendingSave(CompletableSubject result, @Nullable Runnable rollback) {
+            this.result = result;
+            this.rollback = rollback;
+        }
+    }
+}
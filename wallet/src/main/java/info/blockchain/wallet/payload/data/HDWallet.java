@@ -21,6 +21,7 @@ import info.blockchain.wallet.bip44.HDWalletFactory;
 import info.blockchain.wallet.bip44.HDWalletFactory.Language;
 import info.blockchain.wallet.exceptions.DecryptionException;
 import info.blockchain.wallet.exceptions.HDWalletException;
+import info.blockchain.wallet.payload.ChunkedBalanceFetcher;
 import info.blockchain.wallet.payment.SpendableUnspentOutputs;
 import info.blockchain.wallet.stx.STXAccount;
 import info.blockchain.wallet.util.DoubleEncryptionFactory;
@@ -34,8 +35,10 @@ import org.bitcoinj.crypto.MnemonicException.MnemonicLengthException;
 import org.bitcoinj.crypto.MnemonicException.MnemonicWordException;
 import org.spongycastle.crypto.InvalidCipherTextException;
 import org.spongycastle.util.encoders.Hex;
+import retrofit2.Call;
 import retrofit2.Response;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.*;
@@ -360,7 +363,7 @@ public class HDWallet {
         return hdWalletBody;
     }
 
-    private static int getDeterminedSize(int walletSize, int trySize, int currentGap, BlockExplorer blockExplorer, info.blockchain.wallet.bip44.HDWallet bip44Wallet) throws Exception {
+    private static int getDeterminedSize(int walletSize, int trySize, int currentGap, final BlockExplorer blockExplorer, info.blockchain.wallet.bip44.HDWallet bip44Wallet) throws Exception {
 
         LinkedList<String> xpubs = new LinkedList<>();
 
@@ -369,14 +372,13 @@ public class HDWallet {
             xpubs.add(account.getXpub());
         }
 
-        Response<HashMap<String, Balance>> exe = blockExplorer
-            .getBalance(xpubs, FilterType.RemoveUnspendable).execute();
-
-        if(!exe.isSuccessful()) {
-            throw new Exception(exe.code() + " " + exe.errorBody().string());
-        }
-
-        HashMap<String, Balance> map = exe.body();
+        Map<String, Balance> map = new ChunkedBalanceFetcher().fetch(xpubs,
+            new ChunkedBalanceFetcher.BalanceRequest() {
+                @Override
+                public Call<HashMap<String, Balance>> create(@Nonnull List<String> chunk) {
+                    return blockExplorer.getBalance(chunk, FilterType.RemoveUnspendable);
+                }
+            });
 
         final int lookAheadTotal = 10;
         for (String xpub : xpubs) {
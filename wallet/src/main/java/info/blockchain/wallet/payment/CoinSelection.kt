@@ -3,96 +3,146 @@ package info.blockchain.wallet.payment
 import info.blockchain.api.data.UnspentOutput
 import java.math.BigInteger
 
-private val COST_BASE: BigInteger = BigInteger.valueOf(10)
-private val COST_PER_INPUT: BigInteger = BigInteger.valueOf(149)
-private val COST_PER_OUTPUT: BigInteger = BigInteger.valueOf(34)
+// Sizes are in bytes. All values are in satoshis, which always fit in a Long.
+private const val COST_BASE = 10L
+private const val COST_PER_INPUT = 149L
+private const val COST_PER_OUTPUT = 34L
 
 class CoinSelection(
     private val coins: List<UnspentOutput>,
-    private val feePerByte: BigInteger
+    private val feePerByte: Long
 ) {
+    constructor(coins: List<UnspentOutput>, feePerByte: BigInteger) : this(coins, feePerByte.toLong())
+
     fun select(
         outputAmount: BigInteger,
         coinSortingMethod: CoinSortingMethod
     ): SpendableUnspentOutputs {
+        val target = outputAmount.toLong()
         val effectiveCoins = coinSortingMethod.sort(coins).effective(feePerByte)
 
-        val selected = mutableListOf<UnspentOutput>()
-        var accumulatedValue = BigInteger.ZERO
-        var accumulatedFee = BigInteger.ZERO
+        if (coinSortingMethod is BranchAndBound) {
+            selectChangeless(effectiveCoins, target, coinSortingMethod)?.let {
+                return it
+            }
+        }
+
+        val selected = ArrayList<UnspentOutput>()
+        var accumulatedValue = 0L
+        var accumulatedFee = 0L
 
         for (coin in effectiveCoins) {
-            if (!coin.isForceInclude && accumulatedValue >= outputAmount + accumulatedFee) {
+            if (!coin.isForceInclude && accumulatedValue >= target + accumulatedFee) {
                 continue
             }
             selected += coin
-            accumulatedValue = selected.sum()
+            accumulatedValue += coin.satoshis
             accumulatedFee = transactionBytes(selected.size, outputs = 1) * feePerByte
         }
 
         val dust = dustThreshold(feePerByte)
-        val remainingValue = accumulatedValue - (outputAmount + accumulatedFee)
+        val remainingValue = accumulatedValue - (target + accumulatedFee)
         val isReplayProtected = selected.replayProtected
 
         return when {
             // Either there were no effective coins or we were not able to meet the target value
-            selected.isEmpty() || remainingValue < BigInteger.ZERO -> {
+            selected.isEmpty() || remainingValue < 0 -> {
                 SpendableUnspentOutputs(isReplayProtected = isReplayProtected)
             }
             // Remaining value is worth keeping, add change output
             remainingValue >= dust -> {
                 accumulatedFee = transactionBytes(selected.size, outputs = 2) * feePerByte
-                SpendableUnspentOutputs(selected, accumulatedFee, isReplayProtected = isReplayProtected)
+                SpendableUnspentOutputs(
+                    selected,
+                    BigInteger.valueOf(accumulatedFee),
+                    isReplayProtected = isReplayProtected
+                )
             }
             // Remaining value is not worth keeping, consume it as part of the fee
             else -> {
-                SpendableUnspentOutputs(selected, accumulatedFee + remainingValue, remainingValue, isReplayProtected)
+                SpendableUnspentOutputs(
+                    selected,
+                    BigInteger.valueOf(accumulatedFee + remainingValue),
+                    BigInteger.valueOf(remainingValue),
+                    isReplayProtected
+                )
             }
         }
     }
 
+    /**
+     * Looks for a selection whose value covers the output and its fee without leaving enough over
+     * to be worth a change output, so the excess can be consumed as fee.
+     */
+    private fun selectChangeless(
+        effectiveCoins: List<UnspentOutput>,
+        outputAmount: Long,
+        branchAndBound: BranchAndBound
+    ): SpendableUnspentOutputs? {
+        if (effectiveCoins.any { it.isForceInclude }) {
+            return null
+        }
+
+        val inputCost = feePerByte * COST_PER_INPUT
+        val values = LongArray(effectiveCoins.size) { effectiveCoins[it].satoshis - inputCost }
+        val target = outputAmount + (COST_BASE + COST_PER_OUTPUT) * feePerByte
+
+        val indexes = branchAndBound.search(values, target, dustThreshold(feePerByte))
+            ?: return null
+
+        val selected = indexes.map { effectiveCoins[it] }
+        val fee = transactionBytes(selected.size, outputs = 1) * feePerByte
+        val remainingValue = selected.sumSatoshis() - (outputAmount + fee)
+        return SpendableUnspentOutputs(
+            selected,
+            BigInteger.valueOf(fee + remainingValue),
+            BigInteger.valueOf(remainingValue),
+            selected.replayProtected
+        )
+    }
+
     fun selectAll(coinSortingMethod: CoinSortingMethod? = null): SpendableUnspentOutputs {
         val effectiveCoins = (coinSortingMethod?.sort(coins) ?: coins).effective(feePerByte)
-        val effectiveValue = effectiveCoins.sum()
-        val effectiveBalance = effectiveCoins.balance(feePerByte, outputs = 1).max(BigInteger.ZERO)
+        val effectiveValue = effectiveCoins.sumSatoshis()
+        val effectiveBalance = maxOf(
+            effectiveValue - transactionBytes(effectiveCoins.size, outputs = 1) * feePerByte,
+            0L
+        )
 
         return SpendableUnspentOutputs(
             spendableOutputs = effectiveCoins,
-            absoluteFee = effectiveValue - effectiveBalance,
+            absoluteFee = BigInteger.valueOf(effectiveValue - effectiveBalance),
             isReplayProtected = effectiveCoins.replayProtected
         )
     }
 }
 
-fun List<UnspentOutput>.sum(): BigInteger {
-    if (isEmpty()) {
-        return BigInteger.ZERO
+fun List<UnspentOutput>.sum(): BigInteger = BigInteger.valueOf(sumSatoshis())
+
+internal fun List<UnspentOutput>.sumSatoshis(): Long {
+    var sum = 0L
+    for (coin in this) {
+        sum += coin.satoshis
     }
-    return this.map { it.value }.reduce { value, acc -> value + acc }
+    return sum
 }
 
-private fun List<UnspentOutput>.effective(feePerByte: BigInteger): List<UnspentOutput> {
-    return this.filter { it.isForceInclude || effectiveValue(it, feePerByte) > BigInteger.ZERO }
-}
+private val UnspentOutput.satoshis: Long
+    get() = value.toLong()
 
-private fun List<UnspentOutput>.balance(feePerByte: BigInteger, outputs: Int): BigInteger {
-    return this.sum() - transactionBytes(this.size, outputs) * feePerByte
+private fun List<UnspentOutput>.effective(feePerByte: Long): List<UnspentOutput> {
+    val inputCost = feePerByte * COST_PER_INPUT
+    return this.filter { it.isForceInclude || it.satoshis > inputCost }
 }
 
 private val List<UnspentOutput>.replayProtected get(): Boolean {
     return this.firstOrNull()?.isReplayable != true
 }
 
-private fun dustThreshold(feePerByte: BigInteger): BigInteger {
+internal fun dustThreshold(feePerByte: Long): Long {
     return (COST_PER_INPUT + COST_PER_OUTPUT) * feePerByte
 }
 
-private fun transactionBytes(inputs: Int, outputs: Int): BigInteger {
-    return COST_BASE +
-            COST_PER_INPUT.multiply(inputs.toBigInteger()) +
-            COST_PER_OUTPUT.multiply(outputs.toBigInteger())
-}
-
-private fun effectiveValue(coin: UnspentOutput, feePerByte: BigInteger): BigInteger {
-    return (coin.value - feePerByte.multiply(COST_PER_INPUT)).max(BigInteger.ZERO)
+internal fun transactionBytes(inputs: Int, outputs: Int): Long {
+    return COST_BASE + COST_PER_INPUT * inputs + COST_PER_OUTPUT * outputs
 }
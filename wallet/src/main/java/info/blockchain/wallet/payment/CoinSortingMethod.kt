@@ -40,3 +40,77 @@ class ReplayProtection(private val nonReplayableInput: UnspentOutput) : CoinSort
                 DescentDraw.sort(nonReplayable.drop(1))
     }
 }
+
+/**
+ * Searches for a combination of coins which pays the target without a change output, using a
+ * depth first branch and bound over the coins' effective values, largest first. If no such
+ * combination is found within [maxTries] steps, selection falls back to [DescentDraw].
+ */
+class BranchAndBound(private val maxTries: Int = DEFAULT_MAX_TRIES) : CoinSortingMethod {
+
+    override fun sort(coins: List<UnspentOutput>) = DescentDraw.sort(coins)
+
+    /**
+     * @param values Effective values of the coins, in descending order
+     * @param target The value to match, including the fee for everything but the inputs
+     * @param costOfChange Excess above the target which isn't worth a change output
+     * @return The indexes of the selection with the least excess, or null if none was found
+     */
+    internal fun search(values: LongArray, target: Long, costOfChange: Long): IntArray? {
+        var available = 0L
+        for (value in values) {
+            available += value
+        }
+        if (available < target) {
+            return null
+        }
+
+        val selection = BooleanArray(values.size)
+        var depth = 0
+        var current = 0L
+        var best: BooleanArray? = null
+        var bestExcess = Long.MAX_VALUE
+
+        for (tries in 0 until maxTries) {
+            var backtrack = false
+            if (current + available < target || current > target + costOfChange) {
+                backtrack = true
+            } else if (current >= target) {
+                val excess = current - target
+                if (excess < bestExcess) {
+                    best = selection.copyOf(depth)
+                    bestExcess = excess
+                    if (excess == 0L) {
+                        break
+                    }
+                }
+                backtrack = true
+            }
+
+            if (backtrack) {
+                // Undo trailing exclusions, then exclude the last included coin instead
+                while (depth > 0 && !selection[depth - 1]) {
+                    depth--
+                    available += values[depth]
+                }
+                if (depth == 0) {
+                    break
+                }
+                selection[depth - 1] = false
+                current -= values[depth - 1]
+            } else {
+                available -= values[depth]
+                current += values[depth]
+                selection[depth] = true
+                depth++
+            }
+        }
+
+        val selected = best ?: return null
+        return selected.indices.filter { selected[it] }.toIntArray()
+    }
+
+    companion object {
+        private const val DEFAULT_MAX_TRIES = 100_000
+    }
+}
@@ -8,9 +8,11 @@ class Fees {
     private static final int ESTIMATED_OUTPUT_LEN = 34;
 
     public static BigInteger estimatedFee(int inputs, int outputs, BigInteger feePerKb) {
+        return BigInteger.valueOf(estimatedFee(inputs, outputs, feePerKb.longValue()));
+    }
 
-        int size = estimatedSize(inputs, outputs);
-        return calculateFee(size, feePerKb);
+    public static long estimatedFee(int inputs, int outputs, long feePerKb) {
+        return calculateFee(estimatedSize(inputs, outputs), feePerKb);
     }
 
     public static int estimatedSize(int inputs, int outputs) {
@@ -18,10 +20,13 @@ class Fees {
     }
 
     public static BigInteger calculateFee(int size, BigInteger feePerKb) {
+        return BigInteger.valueOf(calculateFee(size, feePerKb.longValue()));
+    }
 
+    public static long calculateFee(int size, long feePerKb) {
+        // Kept in floating point so that estimates match those already shown to users
         double txBytes = ((double) size / 1000.0);
-        long absoluteFee = (long) Math.ceil(feePerKb.doubleValue() * txBytes);
-        return BigInteger.valueOf(absoluteFee);
+        return (long) Math.ceil(feePerKb * txBytes);
     }
 
     public static boolean isAdequateFee(int inputs, int outputs, BigInteger absoluteFee) {
@@ -58,14 +58,23 @@ public class Payment {
     public Pair<BigInteger, BigInteger> getMaximumAvailable(@NonNull UnspentOutputs unspentCoins,
                                                             @NonNull BigInteger feePerKb,
                                                             boolean addReplayProtection) {
-        return Coins.getMaximumAvailable(unspentCoins, feePerKb, addReplayProtection, true);
+        return Coins.getMaximumAvailable(unspentCoins, feePerKb, addReplayProtection);
     }
 
     public SpendableUnspentOutputs getSpendableCoins(@NonNull UnspentOutputs unspentCoins,
                                                      @NonNull BigInteger paymentAmount,
                                                      @NonNull BigInteger feePerKb,
                                                      boolean addReplayProtection) {
-        return Coins.getMinimumCoinsForPayment(unspentCoins, paymentAmount, feePerKb, addReplayProtection, true);
+        return Coins.getMinimumCoinsForPayment(unspentCoins, paymentAmount, feePerKb, addReplayProtection);
+    }
+
+    public SpendableUnspentOutputs getSpendableCoins(@NonNull UnspentOutputs unspentCoins,
+                                                     @NonNull BigInteger paymentAmount,
+                                                     @NonNull BigInteger feePerKb,
+                                                     boolean addReplayProtection,
+                                                     @NonNull CoinSortingMethod coinSortingMethod) {
+        return Coins.getMinimumCoinsForPayment(
+                unspentCoins, paymentAmount, feePerKb, addReplayProtection, coinSortingMethod);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -1,6 +1,6 @@
 package info.blockchain.wallet.util;
 
-import info.blockchain.wallet.crypto.AESUtil;
+import info.blockchain.wallet.crypto.WalletCryptoSession;
 import info.blockchain.wallet.exceptions.DecryptionException;
 import info.blockchain.wallet.exceptions.EncryptionException;
 
@@ -11,18 +11,19 @@ import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 
 /**
- * Double encryption uses concatenated sharedKey+second password to encrypt data
+ * Double encryption uses concatenated sharedKey+second password to encrypt data. Keys are derived
+ * through the {@link WalletCryptoSession}, so a ciphertext's key is only derived once per session.
  */
 public class DoubleEncryptionFactory {
 
     public static String encrypt(String encrypted, String sharedKey, String password2, int iterations)
             throws UnsupportedEncodingException, EncryptionException {
-        return AESUtil.encrypt(encrypted, sharedKey + password2, iterations);
+        return WalletCryptoSession.getInstance().encrypt(encrypted, sharedKey + password2, iterations);
     }
 
     public static String decrypt(String encrypted2, String sharedKey, String password2, int iterations)
             throws UnsupportedEncodingException, DecryptionException, InvalidCipherTextException {
-        return AESUtil.decrypt(encrypted2, sharedKey + password2, iterations);
+        return WalletCryptoSession.getInstance().decrypt(encrypted2, sharedKey + password2, iterations);
     }
 
     public static String getHash(String sharedKey, String password2, int iterations) {
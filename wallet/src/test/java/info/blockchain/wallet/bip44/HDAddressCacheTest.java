@@ -0,0 +1,76 @@
+package info.blockchain.wallet.bip44;
+
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.params.BitcoinMainNetParams;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class HDAddressCacheTest {
+
+    private String seed = "15e23aa73d25994f1921a1256f93f72c";
+    private HDChain chain;
+    private DeterministicKey chainKey;
+    private HDAddressCache cache;
+
+    @Before
+    public void setup() {
+        DeterministicKey key = HDKeyDerivation.createMasterPrivateKey(seed.getBytes());
+        chain = new HDChain(BitcoinMainNetParams.get(), key, true);
+        chainKey = HDKeyDerivation.deriveChildKey(key, HDChain.RECEIVE_CHAIN);
+        cache = new HDAddressCache(new ForkJoinPool(4));
+    }
+
+    @Test
+    public void addressesMatchSingleDerivation() {
+        List<String> addresses = cache.getAddresses(BitcoinMainNetParams.get(), chainKey, 0, 30);
+
+        Assert.assertEquals(30, addresses.size());
+        Assert.assertEquals("1HxBEXhu5LPibpTAQ1EoNTJavDSbwajJTg", addresses.get(0));
+        for (int i = 0; i < addresses.size(); i++) {
+            Assert.assertEquals(chain.getAddressAt(i).getAddressString(), addresses.get(i));
+        }
+    }
+
+    @Test
+    public void overlappingRangesAreServedFromCache() {
+        List<String> first = cache.getAddresses(BitcoinMainNetParams.get(), chainKey, 5, 25);
+        List<String> second = cache.getAddresses(BitcoinMainNetParams.get(), chainKey, 0, 30);
+
+        Assert.assertEquals(first, second.subList(5, 25));
+        for (int i = 0; i < 30; i++) {
+            Assert.assertEquals(chain.getAddressAt(i).getAddressString(), second.get(i));
+        }
+    }
+
+    @Test
+    public void chainsAreCachedSeparately() {
+        DeterministicKey key = HDKeyDerivation.createMasterPrivateKey(seed.getBytes());
+        DeterministicKey changeKey = HDKeyDerivation.deriveChildKey(key, HDChain.CHANGE_CHAIN);
+        HDChain change = new HDChain(BitcoinMainNetParams.get(), key, false);
+
+        cache.getAddresses(BitcoinMainNetParams.get(), chainKey, 0, 10);
+        List<String> addresses = cache.getAddresses(BitcoinMainNetParams.get(), changeKey, 0, 10);
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(change.getAddressAt(i).getAddressString(), addresses.get(i));
+        }
+    }
+
+    @Test
+    public void emptyRange() {
+        Assert.assertTrue(cache.getAddresses(BitcoinMainNetParams.get(), chainKey, 3, 3).isEmpty());
+    }
+
+    @Test
+    public void chainReturnsCachedAddresses() {
+        Assert.assertEquals(
+                chain.getAddressAt(7).getAddressString(),
+                chain.getAddressStrings(7, 8).get(0)
+        );
+    }
+}
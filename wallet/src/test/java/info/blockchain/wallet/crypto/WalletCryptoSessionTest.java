@@ -0,0 +1,109 @@
+package info.blockchain.wallet.crypto;
+
+import org.bitcoinj.core.ECKey;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WalletCryptoSessionTest {
+
+    private String cleartext = "test data";
+    private String pw = "password";
+    private int iterations = AESUtil.QR_CODE_PBKDF_2ITERATIONS;
+
+    private WalletCryptoSession session;
+
+    @Before
+    public void setup() {
+        session = new WalletCryptoSession();
+    }
+
+    @Test
+    public void compatibleWithAESUtil() throws Exception {
+        Assert.assertEquals(cleartext, session.decrypt(AESUtil.encrypt(cleartext, pw, iterations), pw, iterations));
+        Assert.assertEquals(cleartext, AESUtil.decrypt(session.encrypt(cleartext, pw, iterations), pw, iterations));
+    }
+
+    @Test
+    public void keyIsDerivedOncePerCiphertext() throws Exception {
+        String encrypted = AESUtil.encrypt(cleartext, pw, iterations);
+
+        session.decrypt(encrypted, pw, iterations);
+        session.decrypt(encrypted, pw, iterations);
+        session.decrypt(encrypted, pw, iterations);
+
+        Assert.assertEquals(1, session.getDerivationCount());
+    }
+
+    @Test
+    public void encryptedDataIsDecryptedWithoutDerivingAgain() throws Exception {
+        String encrypted = session.encrypt(cleartext, pw, iterations);
+
+        Assert.assertEquals(cleartext, session.decrypt(encrypted, pw, iterations));
+        Assert.assertEquals(1, session.getDerivationCount());
+    }
+
+    @Test
+    public void encryptionUsesFreshIvs() throws Exception {
+        String first = session.encrypt(cleartext, pw, iterations);
+        String second = session.encrypt(cleartext, pw, iterations);
+
+        Assert.assertNotEquals(first.substring(0, 22), second.substring(0, 22));
+    }
+
+    @Test
+    public void keysArePerPasswordAndIterations() throws Exception {
+        String encrypted = AESUtil.encrypt(cleartext, pw, iterations);
+        session.decrypt(encrypted, pw, iterations);
+
+        try {
+            Assert.assertNotEquals(cleartext, session.decrypt(encrypted, "wrong password", iterations));
+        } catch (Exception expected) {
+            // Wrong key
+        }
+        try {
+            Assert.assertNotEquals(cleartext, session.decrypt(encrypted, pw, iterations + 1));
+        } catch (Exception expected) {
+            // Wrong key
+        }
+        Assert.assertEquals(3, session.getDerivationCount());
+    }
+
+    @Test
+    public void clearForgetsKeys() throws Exception {
+        String encrypted = AESUtil.encrypt(cleartext, pw, iterations);
+        session.decrypt(encrypted, pw, iterations);
+
+        session.clear();
+
+        Assert.assertEquals(cleartext, session.decrypt(encrypted, pw, iterations));
+        Assert.assertEquals(2, session.getDerivationCount());
+    }
+
+    /**
+     * Signing from 200 double encrypted imported addresses, twice, as when a transaction is built
+     * and then sent. Only the first pass should pay for key derivation.
+     */
+    @Test
+    public void bulkDecryptionOfDoubleEncryptedKeys() throws Exception {
+        int keyIterations = AESUtil.PIN_PBKDF2_ITERATIONS;
+        String secondPassword = "524b5e9f-72ea-4690-b28c-8c1cfce65ca0" + "second password";
+        List<String> encryptedKeys = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            encryptedKeys.add(AESUtil.encrypt(new ECKey().getPrivateKeyAsHex(), secondPassword, keyIterations));
+        }
+
+        for (String encrypted : encryptedKeys) {
+            session.decrypt(encrypted, secondPassword, keyIterations);
+        }
+        for (String encrypted : encryptedKeys) {
+            session.decrypt(encrypted, secondPassword, keyIterations);
+        }
+
+        // The second pass reuses every key derived by the first
+        Assert.assertEquals(200, session.getDerivationCount());
+    }
+}
@@ -0,0 +1,154 @@
+package info.blockchain.wallet.multiaddress;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AddressOwnershipIndexTest {
+
+    private AddressOwnershipIndex index;
+    private FakeChain receive;
+    private FakeChain change;
+
+    @Before
+    public void setup() {
+        index = new AddressOwnershipIndex(5);
+        receive = new FakeChain("r");
+        change = new FakeChain("c");
+    }
+
+    @Test
+    public void trackedAccountIsDerivedUpToTheWindow() {
+        index.trackAccount("xpub1", receive, change, 3, 0);
+
+        Assert.assertEquals("xpub1", index.getXpub("r0"));
+        Assert.assertEquals("xpub1", index.getXpub("r7"));
+        Assert.assertNull(index.getXpub("r8"));
+        Assert.assertTrue(index.isOwnHDAddress("c4"));
+        Assert.assertFalse(index.isOwnHDAddress("c5"));
+    }
+
+    @Test
+    public void windowFollowsTheNextIndex() {
+        index.trackAccount("xpub1", receive, change, 0, 0);
+        index.advance("xpub1", 10, 2);
+
+        Assert.assertTrue(index.isOwnHDAddress("r14"));
+        Assert.assertTrue(index.isOwnHDAddress("c6"));
+        Assert.assertEquals(Arrays.asList(0, 5), receive.starts);
+        Assert.assertEquals(Arrays.asList(5, 15), receive.ends);
+    }
+
+    @Test
+    public void advancingBackwardsDerivesNothing() {
+        index.trackAccount("xpub1", receive, change, 10, 0);
+        index.advance("xpub1", 2, 0);
+        index.trackAccount("xpub1", receive, change, 10, 0);
+
+        Assert.assertEquals(1, receive.starts.size());
+    }
+
+    @Test
+    public void untrackedXpubIsIgnored() {
+        index.advance("xpub1", 10, 10);
+
+        Assert.assertFalse(index.isOwnHDAddress("r0"));
+        Assert.assertTrue(receive.starts.isEmpty());
+    }
+
+    @Test
+    public void summarizedAddressesAreAdded() {
+        Map<String, String> addresses = new HashMap<>();
+        addresses.put("1abc", "xpub2");
+        index.putAll(addresses);
+
+        Assert.assertEquals("xpub2", index.getXpub("1abc"));
+        Assert.assertTrue(index.isOwnAddress("1abc"));
+        Assert.assertFalse(index.isImportedAddress("1abc"));
+    }
+
+    @Test
+    public void importedAddressesAreReplaced() {
+        index.setImportedAddresses(Arrays.asList("1first", "1second"));
+        index.setImportedAddresses(Collections.singletonList("1second"));
+
+        Assert.assertFalse(index.isImportedAddress("1first"));
+        Assert.assertTrue(index.isImportedAddress("1second"));
+        Assert.assertTrue(index.isOwnAddress("1second"));
+        Assert.assertFalse(index.isOwnHDAddress("1second"));
+    }
+
+    @Test
+    public void everyAddressIsFoundAfterTheFilterGrows() {
+        index.setImportedAddresses(Collections.singletonList("1imported"));
+        index.trackAccount("xpub1", receive, change, 2000, 2000);
+
+        for (int i = 0; i < 2005; i++) {
+            Assert.assertEquals("xpub1", index.getXpub("r" + i));
+            Assert.assertEquals("xpub1", index.getXpub("c" + i));
+        }
+        Assert.assertTrue(index.isImportedAddress("1imported"));
+    }
+
+    @Test
+    public void unknownAddressesAreMostlyRejectedByTheFilter() {
+        index.trackAccount("xpub1", receive, change, 1000, 1000);
+
+        int falsePositives = 0;
+        AddressBloomFilter filter = new AddressBloomFilter(2010);
+        for (int i = 0; i < 1005; i++) {
+            filter.put("r" + i);
+            filter.put("c" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("x" + i)) {
+                falsePositives++;
+            }
+            Assert.assertNull(index.getXpub("x" + i));
+        }
+        Assert.assertTrue(falsePositives < 300);
+    }
+
+    @Test
+    public void clear() {
+        index.setImportedAddresses(Collections.singletonList("1imported"));
+        index.trackAccount("xpub1", receive, change, 0, 0);
+        index.clear();
+
+        Assert.assertFalse(index.isOwnAddress("r0"));
+        Assert.assertFalse(index.isOwnAddress("1imported"));
+
+        // Tracking starts again from the beginning of the chain
+        index.trackAccount("xpub1", receive, change, 0, 0);
+        Assert.assertTrue(index.isOwnHDAddress("r0"));
+    }
+
+    private static class FakeChain implements AddressOwnershipIndex.AddressChain {
+
+        private final String prefix;
+        final List<Integer> starts = new ArrayList<>();
+        final List<Integer> ends = new ArrayList<>();
+
+        FakeChain(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public List<String> getAddressStrings(int startIndex, int endIndex) {
+            starts.add(startIndex);
+            ends.add(endIndex);
+            List<String> addresses = new ArrayList<>();
+            for (int i = startIndex; i < endIndex; i++) {
+                addresses.add(prefix + i);
+            }
+            return addresses;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package info.blockchain.wallet.multiaddress;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import info.blockchain.wallet.multiaddress.TransactionSummary.TransactionType;
+
+public class FileTransactionSummaryStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private FileTransactionSummaryStore subject;
+
+    @Before
+    public void setUp() {
+        directory = new File(folder.getRoot(), "summaries");
+        subject = new FileTransactionSummaryStore(directory);
+    }
+
+    @Test
+    public void get_emptyStore() {
+        Assert.assertTrue(subject.get("xpub").isEmpty());
+    }
+
+    @Test
+    public void append_survivesNewInstance() {
+        subject.append("xpub", Arrays.asList(summary("a", 100), summary("b", 101)));
+
+        List<TransactionSummary> stored = new FileTransactionSummaryStore(directory).get("xpub");
+
+        Assert.assertEquals(2, stored.size());
+        Assert.assertEquals("a", stored.get(0).getHash());
+        Assert.assertEquals(100, stored.get(0).getBlockHeight());
+        Assert.assertEquals(TransactionType.RECEIVED, stored.get(0).getTransactionType());
+        Assert.assertEquals(BigInteger.valueOf(1000), stored.get(0).getTotal());
+        Assert.assertEquals(BigInteger.valueOf(1000), stored.get(0).getOutputsMap().get("address"));
+        Assert.assertTrue(new FileTransactionSummaryStore(directory).get("other").isEmpty());
+    }
+
+    @Test
+    public void append_laterRowReplacesEarlierRowForSameHash() {
+        subject.append("xpub", Collections.singletonList(summary("a", 100)));
+        subject.append("xpub", Collections.singletonList(summary("a", 102)));
+
+        List<TransactionSummary> stored = new FileTransactionSummaryStore(directory).get("xpub");
+
+        Assert.assertEquals(1, stored.size());
+        Assert.assertEquals(102, stored.get(0).getBlockHeight());
+    }
+
+    @Test
+    public void get_skipsTruncatedRow() throws Exception {
+        subject.append("xpub", Collections.singletonList(summary("a", 100)));
+        File file = directory.listFiles()[0];
+        FileWriter writer = new FileWriter(file, true);
+        writer.write("{\"hash\":\"b\",\"blockHei");
+        writer.close();
+
+        List<TransactionSummary> stored = new FileTransactionSummaryStore(directory).get("xpub");
+
+        Assert.assertEquals(1, stored.size());
+        Assert.assertEquals("a", stored.get(0).getHash());
+    }
+
+    @Test
+    public void clear() {
+        subject.append("xpub", Collections.singletonList(summary("a", 100)));
+
+        subject.clear();
+
+        Assert.assertTrue(subject.get("xpub").isEmpty());
+        Assert.assertTrue(new FileTransactionSummaryStore(directory).get("xpub").isEmpty());
+    }
+
+    private TransactionSummary summary(String hash, long blockHeight) {
+        TransactionSummary summary = new TransactionSummary();
+        summary.setHash(hash);
+        summary.setBlockHeight(blockHeight);
+        summary.setTransactionType(TransactionType.RECEIVED);
+        summary.setTotal(BigInteger.valueOf(1000));
+        summary.setFee(BigInteger.ZERO);
+        summary.getOutputsMap().put("address", BigInteger.valueOf(1000));
+        return summary;
+    }
+}
@@ -1,9 +1,14 @@
 package info.blockchain.wallet.multiaddress;
 
+import org.apache.commons.lang3.tuple.Pair;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.params.BitcoinMainNetParams;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.math.BigInteger;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -11,11 +16,32 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import info.blockchain.api.blockexplorer.BlockExplorer;
+import info.blockchain.api.data.AddressSummary;
+import info.blockchain.api.data.Info;
+import info.blockchain.api.data.Input;
+import info.blockchain.api.data.MultiAddress;
+import info.blockchain.api.data.Output;
+import info.blockchain.api.data.RawBlock;
+import info.blockchain.api.data.Transaction;
 import info.blockchain.wallet.BlockchainFramework;
 import info.blockchain.wallet.MockedResponseTest;
+import info.blockchain.wallet.bip44.HDAccount;
+import info.blockchain.wallet.exceptions.ApiException;
 import info.blockchain.wallet.multiaddress.TransactionSummary.TransactionType;
 import info.blockchain.wallet.payload.data.AddressLabel;
 
@@ -279,4 +305,330 @@ public class MultiAddressFactoryTest extends MockedResponseTest {
         Assert.assertEquals(1, summary.getOutputsMap().size());
         Assert.assertTrue(summary.getOutputsMap().keySet().contains("17ijgwpGsVQRzMjsdAfdmeP53kpw9yvXur"));//My Bitcoin Wallet
     }
-}
\ No newline at end of file
+
+    @Test(timeout = 10000)
+    public void summarize_largePageWithManyImportedAddresses() {
+        int txCount = 10000;
+        int importedCount = 500;
+
+        Set<String> imported = new HashSet<>();
+        for (int i = 0; i < importedCount; i++) {
+            imported.add("imported_" + i);
+        }
+
+        ArrayList<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < txCount; i++) {
+            Output prevOut = new Output();
+            prevOut.setAddr("external_" + i);
+            prevOut.setValue(BigInteger.valueOf(2000));
+            Input input = new Input();
+            input.setPrevOut(prevOut);
+
+            Output output = new Output();
+            output.setAddr("imported_" + (i % importedCount));
+            output.setValue(BigInteger.valueOf(1000));
+
+            Transaction tx = new Transaction();
+            tx.setHash("hash_" + i);
+            tx.setResult(BigInteger.valueOf(1000));
+            tx.setFee(BigInteger.valueOf(1000));
+            tx.setInputs(new ArrayList<>(Collections.singletonList(input)));
+            tx.setOut(new ArrayList<>(Collections.singletonList(output)));
+            txs.add(tx);
+        }
+
+        RawBlock latestBlock = new RawBlock();
+        latestBlock.setHeight(1);
+        Info info = new Info();
+        info.setLatestBlock(latestBlock);
+        MultiAddress multiAddress = new MultiAddress();
+        multiAddress.setAddresses(new ArrayList<AddressSummary>());
+        multiAddress.setInfo(info);
+        multiAddress.setTxs(txs);
+
+        List<TransactionSummary> summary = multiAddressFactory.summarize(
+            new HashSet<>(imported), multiAddress, imported, 0);
+
+        Assert.assertEquals(txCount, summary.size());
+        Assert.assertEquals(TransactionType.RECEIVED, summary.get(0).getTransactionType());
+        Assert.assertEquals(1000, summary.get(0).getTotal().longValue());
+        Assert.assertTrue(summary.get(txCount - 1).getOutputsMap().containsKey("imported_" + ((txCount - 1) % importedCount)));
+    }
+
+    @Test
+    public void getAccountTransactionsCursor_fetchesFollowingPages() throws Exception {
+
+        URI xpubUri = getClass().getClassLoader().getResource("multiaddress/multi_address_xpub6CFg.txt").toURI();
+        URI addressUri = getClass().getClassLoader().getResource("multiaddress/multi_address_1jH7K.txt").toURI();
+
+        LinkedList<Pair> responses = new LinkedList<>();
+        responses.add(Pair.of(200, new String(Files.readAllBytes(Paths.get(xpubUri)), Charset.forName("utf-8"))));
+        responses.add(Pair.of(200, new String(Files.readAllBytes(Paths.get(addressUri)), Charset.forName("utf-8"))));
+        mockInterceptor.setResponseList(responses);
+
+        TransactionSummaryCursor cursor = multiAddressFactory.getAccountTransactionsCursor(
+            new ArrayList<>(Arrays.asList(dormantAddress, dormantXpub)), null, null, 34, 0);
+
+        List<TransactionSummary> summary = new ArrayList<>();
+        while (cursor.hasNext()) {
+            summary.add(cursor.next());
+        }
+        cursor.close();
+
+        Assert.assertEquals(36, summary.size());
+        Assert.assertEquals("34c22edb3466708b974a7549d5b3cb51e05d4444f74d2a1b41484f8711dffd04", summary.get(0).getHash());
+        Assert.assertEquals("04734caac4e2ae7feba9b74fb8d2c145db9ea9651487371c4d741428f8f5a24b", summary.get(34).getHash());
+        Assert.assertEquals(5, multiAddressFactory.getNextChangeAddressIndex(dormantXpub));
+        Assert.assertTrue(multiAddressFactory.isOwnHDAddress("1CAAzobQ2UrE4QUR3HJrkZs8UFA8wi5wwQ"));
+        Assert.assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void getAccountTransactionsCursor_closeDoesNotWaitForPageFetch() throws Exception {
+
+        final CountDownLatch fetchStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        MultiAddressFactory blockingFactory = new MultiAddressFactory(
+            new BlockExplorer(BlockchainFramework.getRetrofitExplorerInstance(),
+                BlockchainFramework.getRetrofitApiInstance(),
+                BlockchainFramework.getApiCode())) {
+            @Override
+            MultiAddress getMultiAddress(List<String> allActive, String onlyShow, int limit, int offset)
+                throws IOException {
+                fetchStarted.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return null;
+            }
+        };
+
+        final TransactionSummaryCursor cursor = blockingFactory.getAccountTransactionsCursor(
+            new ArrayList<>(Collections.singletonList(dormantAddress)), null, null, 34, 0);
+
+        ExecutorService consumer = Executors.newSingleThreadExecutor();
+        Future<Boolean> hasNext = consumer.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return cursor.hasNext();
+            }
+        });
+        Assert.assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+
+        cursor.close();
+
+        //The fetch is still blocked, so this only returns if close() cancelled it
+        Assert.assertFalse(hasNext.get(1, TimeUnit.SECONDS));
+        release.countDown();
+        consumer.shutdownNow();
+    }
+
+    @Test
+    public void getCachedAccountTransactions_onlyStoresConfirmedOnce() throws Exception {
+
+        URI uri = getClass().getClassLoader().getResource("multiaddress/multi_address_1jH7K.txt").toURI();
+        String response = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+
+        InMemoryTransactionSummaryStore store = new InMemoryTransactionSummaryStore();
+        multiAddressFactory.setTransactionSummaryStore(store);
+
+        mockInterceptor.setResponseString(response);
+        List<TransactionSummary> first = multiAddressFactory.getCachedAccountTransactions(
+            new ArrayList<>(Collections.singletonList(dormantAddress)), dormantAddress, 100, 0);
+
+        Assert.assertEquals(2, first.size());
+        Assert.assertEquals(2, store.appended);
+
+        mockInterceptor.setResponseString(response);
+        List<TransactionSummary> second = multiAddressFactory.getCachedAccountTransactions(
+            new ArrayList<>(Collections.singletonList(dormantAddress)), dormantAddress, 100, 0);
+
+        Assert.assertEquals(2, second.size());
+        Assert.assertEquals(2, store.appended);
+        Assert.assertEquals("04734caac4e2ae7feba9b74fb8d2c145db9ea9651487371c4d741428f8f5a24b", second.get(0).getHash());
+        Assert.assertEquals(364542, second.get(0).getBlockHeight());
+        Assert.assertEquals(first.get(0).getConfirmations(), second.get(0).getConfirmations());
+    }
+
+    @Test
+    public void getCachedAccountTransactionsPage_servesLaterPagesFromMergedHistory() throws Exception {
+
+        URI uri = getClass().getClassLoader().getResource("multiaddress/multi_address_1jH7K.txt").toURI();
+        String response = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+
+        multiAddressFactory.setTransactionSummaryStore(new InMemoryTransactionSummaryStore());
+        List<String> all = new ArrayList<>(Collections.singletonList(dormantAddress));
+
+        mockInterceptor.setResponseString(response);
+        List<TransactionSummary> first = multiAddressFactory.getCachedAccountTransactionsPage(
+            all, dormantAddress, 100, 0, 0);
+        Assert.assertEquals(2, first.size());
+        first.get(1).setConfirmations(-1);
+
+        //A later page must not go back to the network
+        mockInterceptor.setIOException(true);
+        List<TransactionSummary> second = multiAddressFactory.getCachedAccountTransactionsPage(
+            all, dormantAddress, 1, 1, 0);
+        mockInterceptor.setIOException(false);
+
+        Assert.assertEquals(1, second.size());
+        Assert.assertEquals(first.get(1).getHash(), second.get(0).getHash());
+        Assert.assertNotEquals(-1, second.get(0).getConfirmations());
+    }
+
+    @Test
+    public void getCachedAccountTransactionsPage_returnsFirstPageBeforeFollowingPagesAreFetched() throws Exception {
+
+        URI xpubUri = getClass().getClassLoader().getResource("multiaddress/multi_address_xpub6CFg.txt").toURI();
+
+        //The following page fails, which the first page mustn't wait for
+        LinkedList<Pair> responses = new LinkedList<>();
+        responses.add(Pair.of(200, new String(Files.readAllBytes(Paths.get(xpubUri)), Charset.forName("utf-8"))));
+        responses.add(Pair.of(500, "Server error"));
+        mockInterceptor.setResponseList(responses);
+
+        multiAddressFactory.setTransactionSummaryStore(new InMemoryTransactionSummaryStore());
+        List<String> all = new ArrayList<>(Arrays.asList(dormantAddress, dormantXpub));
+
+        List<TransactionSummary> first = multiAddressFactory.getCachedAccountTransactionsPage(
+            all, null, 34, 0, 0);
+        Assert.assertEquals(34, first.size());
+
+        try {
+            multiAddressFactory.getCachedAccountTransactionsPage(all, null, 34, 34, 0);
+            Assert.fail("Following page should have been fetched");
+        } catch (ApiException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void getCachedAccountTransactionsPage_refreshesWhenOwnAddressesChange() throws Exception {
+
+        URI uri = getClass().getClassLoader().getResource("multiaddress/multi_address_1jH7K.txt").toURI();
+        String response = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+
+        multiAddressFactory.setTransactionSummaryStore(new InMemoryTransactionSummaryStore());
+
+        mockInterceptor.setResponseString(response);
+        List<TransactionSummary> first = multiAddressFactory.getCachedAccountTransactionsPage(
+            new ArrayList<>(Collections.singletonList(dormantAddress)), dormantAddress, 100, 0, 0);
+        Assert.assertEquals(2, first.size());
+
+        //Summaries made before an address was added don't hold for the new set of addresses
+        mockInterceptor.setIOException(true);
+        try {
+            multiAddressFactory.getCachedAccountTransactionsPage(
+                new ArrayList<>(Arrays.asList(dormantAddress, dormantXpub)), dormantAddress, 1, 1, 0);
+            Assert.fail("History should have been refreshed");
+        } catch (IOException expected) {
+            // Expected
+        } finally {
+            mockInterceptor.setIOException(false);
+        }
+    }
+
+    @Test
+    public void getCachedAccountTransactionsPage_concurrentRefreshDoesNotTruncateFirst() throws Exception {
+
+        URI uri = getClass().getClassLoader().getResource("multiaddress/multi_address_1jH7K.txt").toURI();
+        String response = new String(Files.readAllBytes(Paths.get(uri)), Charset.forName("utf-8"));
+
+        //The first refresh blocks on its fetch until the second refresh has replaced it
+        final CountDownLatch fetchStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger fetches = new AtomicInteger();
+        final MultiAddressFactory blockingFactory = new MultiAddressFactory(
+            new BlockExplorer(BlockchainFramework.getRetrofitExplorerInstance(),
+                BlockchainFramework.getRetrofitApiInstance(),
+                BlockchainFramework.getApiCode())) {
+            @Override
+            MultiAddress getMultiAddress(List<String> allActive, String onlyShow, int limit, int offset)
+                throws IOException, ApiException {
+                if (fetches.getAndIncrement() > 0) {
+                    return super.getMultiAddress(allActive, onlyShow, limit, offset);
+                }
+                fetchStarted.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return null;
+            }
+        };
+        blockingFactory.setTransactionSummaryStore(new InMemoryTransactionSummaryStore());
+        final List<String> all = new ArrayList<>(Collections.singletonList(dormantAddress));
+
+        ExecutorService consumer = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<TransactionSummary>> first = consumer.submit(new Callable<List<TransactionSummary>>() {
+                @Override
+                public List<TransactionSummary> call() throws Exception {
+                    return blockingFactory.getCachedAccountTransactionsPage(all, dormantAddress, 100, 0, 0);
+                }
+            });
+            Assert.assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+
+            mockInterceptor.setResponseString(response);
+            List<TransactionSummary> second = blockingFactory.getCachedAccountTransactionsPage(
+                all, dormantAddress, 100, 0, 0);
+
+            //Closing the first refresh's history mustn't look like the end of the history to it
+            Assert.assertEquals(2, second.size());
+            Assert.assertEquals(2, first.get(5, TimeUnit.SECONDS).size());
+        } finally {
+            release.countDown();
+            consumer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void trackedAccountAddressesAreOwnedBeforeSummarizing() {
+        HDAccount account = new HDAccount(
+            BitcoinMainNetParams.get(),
+            HDKeyDerivation.createMasterPrivateKey("15e23aa73d25994f1921a1256f93f72c".getBytes()),
+            0);
+        String xpub = account.getXpub();
+        String beyondWindow = account.getReceive()
+            .getAddressStrings(AddressOwnershipIndex.DEFAULT_WINDOW, AddressOwnershipIndex.DEFAULT_WINDOW + 1)
+            .get(0);
+
+        multiAddressFactory.trackAccount(xpub, account.getReceive(), account.getChange());
+
+        Assert.assertEquals(xpub, multiAddressFactory.getXpubFromAddress(account.getReceive().getAddressAt(0).getAddressString()));
+        Assert.assertEquals(xpub, multiAddressFactory.getXpubFromAddress(account.getChange().getAddressAt(19).getAddressString()));
+        Assert.assertFalse(multiAddressFactory.isOwnHDAddress(beyondWindow));
+
+        multiAddressFactory.incrementNextReceiveAddress(xpub, new ArrayList<AddressLabel>());
+
+        Assert.assertTrue(multiAddressFactory.isOwnHDAddress(beyondWindow));
+    }
+
+    private static class InMemoryTransactionSummaryStore implements TransactionSummaryStore {
+
+        private final Map<String, List<TransactionSummary>> rows = new HashMap<>();
+        int appended;
+
+        @Override
+        public List<TransactionSummary> get(String key) {
+            List<TransactionSummary> stored = rows.get(key);
+            return stored != null ? new ArrayList<>(stored) : new ArrayList<TransactionSummary>();
+        }
+
+        @Override
+        public void append(String key, List<TransactionSummary> summaries) {
+            List<TransactionSummary> stored = get(key);
+            stored.addAll(summaries);
+            rows.put(key, stored);
+            appended += summaries.size();
+        }
+
+        @Override
+        public void clear() {
+            rows.clear();
+        }
+    }
+}
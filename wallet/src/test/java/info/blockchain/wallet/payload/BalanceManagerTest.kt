@@ -0,0 +1,61 @@
+package info.blockchain.wallet.payload
+
+import com.nhaarman.mockito_kotlin.mock
+import info.blockchain.balance.CryptoCurrency
+import org.amshove.kluent.`should equal`
+import org.junit.Test
+import java.math.BigInteger
+import java.util.concurrent.TimeUnit
+
+class BalanceManagerTest {
+
+    private val subject = object : BalanceManager(mock(), CryptoCurrency.BTC) {
+        override fun getBalanceQuery(): BalanceQuery = object : BalanceQuery {
+            override fun getBalancesFor(addressesAndXpubs: Set<String>) =
+                mapOf(XPUB to 1000.toBigInteger())
+        }
+    }
+
+    private val now: Long
+        get() = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis())
+
+    @Test
+    fun `deltas are not applied before a full update`() {
+        subject.applyTransactionDeltas("a", now, credit(500)) `should equal` false
+    }
+
+    @Test
+    fun `transactions seen before the full update are already counted`() {
+        subject.updateAllBalances(setOf(XPUB), emptySet())
+
+        subject.applyTransactionDeltas("a", now - 600, credit(500)) `should equal` true
+
+        subject.getAddressBalance(XPUB) `should equal` 1000.toBigInteger()
+    }
+
+    @Test
+    fun `transactions seen around the full update ask for another`() {
+        subject.updateAllBalances(setOf(XPUB), emptySet())
+
+        subject.applyTransactionDeltas("a", now, credit(500)) `should equal` false
+
+        subject.getAddressBalance(XPUB) `should equal` 1000.toBigInteger()
+    }
+
+    @Test
+    fun `transactions seen after the full update are applied once`() {
+        subject.updateAllBalances(setOf(XPUB), emptySet())
+
+        subject.applyTransactionDeltas("a", now + 600, credit(500)) `should equal` true
+        subject.applyTransactionDeltas("a", now + 600, credit(500)) `should equal` true
+
+        subject.getAddressBalance(XPUB) `should equal` 1500.toBigInteger()
+    }
+
+    private fun credit(satoshi: Long): Map<String, BigInteger> =
+        mapOf(XPUB to satoshi.toBigInteger())
+
+    companion object {
+        private const val XPUB = "xpub"
+    }
+}
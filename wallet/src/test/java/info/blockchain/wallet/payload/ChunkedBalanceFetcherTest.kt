@@ -0,0 +1,97 @@
+package info.blockchain.wallet.payload
+
+import com.nhaarman.mockito_kotlin.mock
+import info.blockchain.api.data.Balance
+import info.blockchain.wallet.exceptions.ApiException
+import okhttp3.MediaType.Companion.toMediaTypeOrNull
+import okhttp3.ResponseBody
+import org.amshove.kluent.`should equal`
+import org.amshove.kluent.`should throw the Exception`
+import org.amshove.kluent.`with message`
+import org.junit.Test
+import retrofit2.Call
+import retrofit2.Response
+import java.io.IOException
+import java.util.Collections
+import java.util.HashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+class ChunkedBalanceFetcherTest {
+
+    @Test
+    fun `balances of all chunks are merged`() {
+        val requested = Collections.synchronizedList(mutableListOf<List<String>>())
+        val addresses = (1..25).map { "address$it" }
+
+        val balances = ChunkedBalanceFetcher(chunkSize = 10).fetch(addresses) { chunk ->
+            requested += chunk
+            successfulCall(chunk)
+        }
+
+        requested.map { it.size }.sorted() `should equal` listOf(5, 10, 10)
+        balances.keys `should equal` addresses.toSet()
+        balances.getValue("address7").finalBalance.toInt() `should equal` "address7".length
+    }
+
+    @Test
+    fun `small sets are fetched in a single call`() {
+        val calls = AtomicInteger()
+
+        ChunkedBalanceFetcher(chunkSize = 10).fetch(listOf("A", "B", "A")) { chunk ->
+            calls.incrementAndGet()
+            chunk `should equal` listOf("A", "B")
+            successfulCall(chunk)
+        }.size `should equal` 2
+
+        calls.get() `should equal` 1
+    }
+
+    @Test
+    fun `failed chunks are retried`() {
+        val attempts = AtomicInteger()
+
+        val balances = ChunkedBalanceFetcher(chunkSize = 1, maxAttempts = 3)
+            .fetch(listOf("A", "B")) { chunk ->
+                if (chunk == listOf("B") && attempts.incrementAndGet() < 3) {
+                    failingCall(IOException("Timeout"))
+                } else {
+                    successfulCall(chunk)
+                }
+            }
+
+        balances.keys `should equal` setOf("A", "B")
+        attempts.get() `should equal` 3
+    }
+
+    @Test
+    fun `client errors are not retried`() {
+        val attempts = AtomicInteger()
+
+        {
+            ChunkedBalanceFetcher(maxAttempts = 3).fetch(listOf("A")) {
+                attempts.incrementAndGet()
+                errorCall(400, "Invalid address")
+            }
+        } `should throw the Exception` ApiException::class `with message` "400: Invalid address"
+
+        attempts.get() `should equal` 1
+    }
+
+    private fun successfulCall(chunk: List<String>): Call<HashMap<String, Balance>> {
+        val body = HashMap<String, Balance>()
+        chunk.forEach { address ->
+            body[address] = Balance().apply { finalBalance = address.length.toBigInteger() }
+        }
+        return mock { on { execute() }.thenReturn(Response.success(body)) }
+    }
+
+    private fun failingCall(exception: IOException): Call<HashMap<String, Balance>> =
+        mock { on { execute() }.thenThrow(exception) }
+
+    private fun errorCall(code: Int, message: String): Call<HashMap<String, Balance>> =
+        mock {
+            on { execute() }.thenReturn(
+                Response.error(code, ResponseBody.create("text/plain".toMediaTypeOrNull(), message))
+            )
+        }
+}
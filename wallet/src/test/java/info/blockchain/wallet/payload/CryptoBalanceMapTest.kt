@@ -197,6 +197,50 @@ class CryptoBalanceMapTest {
         }
     }
 
+    @Test
+    fun `credits and debits keep the running totals`() {
+        calculateCryptoBalanceMap(
+            CryptoCurrency.BTC,
+            { mapOf("A" to 100L, "B" to 200L, "C" to 400L) }.toBalanceQuery(),
+            xpubs = setOf("A"),
+            imported = setOf("B")
+        ).apply {
+            applyDelta("A", 50L.toBigInteger()) `should equal` true
+            applyDelta("B", (-20L).toBigInteger()) `should equal` true
+            applyDelta("C", 1000L.toBigInteger()) `should equal` true
+            applyDelta("Missing", 1000L.toBigInteger()) `should equal` false
+
+            totalSpendable `should equal` 330L.satoshi()
+            totalSpendableImported `should equal` 180L.satoshi()
+            get("A") `should equal` 150L.satoshi()
+            get("B") `should equal` 180L.satoshi()
+            get("C") `should equal` 1400L.satoshi()
+            get("Missing") `should equal` CryptoValue.ZeroBtc
+        }
+    }
+
+    @Test
+    fun `concurrent credits are all counted`() {
+        val map = calculateCryptoBalanceMap(
+            CryptoCurrency.BTC,
+            { mapOf("A" to 0L, "B" to 0L) }.toBalanceQuery(),
+            xpubs = setOf("A"),
+            imported = setOf("B")
+        )
+        val threads = (1..4).map { i ->
+            Thread {
+                repeat(1000) {
+                    map.applyDelta(if (i % 2 == 0) "A" else "B", BigInteger.ONE)
+                }
+            }
+        }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+
+        map.totalSpendable `should equal` 4000L.satoshi()
+        map.totalSpendableImported `should equal` 2000L.satoshi()
+    }
+
     @Test
     fun `can't adjust a missing balance`() {
         calculateCryptoBalanceMap(
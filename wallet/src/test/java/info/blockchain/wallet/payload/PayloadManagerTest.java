@@ -15,6 +15,8 @@ import info.blockchain.wallet.payload.data.Account;
 import info.blockchain.wallet.payload.data.AddressLabel;
 import info.blockchain.wallet.payload.data.ImportedAddress;
 import info.blockchain.wallet.payload.data.Wallet;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
 import org.bitcoinj.core.Base58;
 import org.bitcoinj.core.ECKey;
 import org.bitcoinj.core.NetworkParameters;
@@ -31,6 +33,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public final class PayloadManagerTest extends WalletApiMockedResponseTest {
 
@@ -241,6 +244,78 @@ public final class PayloadManagerTest extends WalletApiMockedResponseTest {
         //Tested in integration tests
     }
 
+    @Test
+    public void scheduleUpdateTransactionNote_saveFail_keepsLaterEdit() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        final BlockExplorer blockExplorer = new BlockExplorer(
+                BlockchainFramework.getRetrofitExplorerInstance(),
+                BlockchainFramework.getRetrofitApiInstance(),
+                BlockchainFramework.getApiCode()
+        );
+        payloadManager = new PayloadManager(
+                walletApi,
+                new MultiAddressFactory(blockExplorer),
+                new BalanceManagerBtc(blockExplorer),
+                new BalanceManagerBch(blockExplorer),
+                scheduler
+        );
+
+        LinkedList<String> responseList = new LinkedList<>();
+        responseList.add("MyWallet save successful.");
+        responseList.add("{}");
+        responseList.add("{}");
+        responseList.add("{}");
+        mockInterceptor.setResponseStringList(responseList);
+        payloadManager.create("My HDWallet", "name@email.com", "SomePassword");
+        payloadManager.getPayload().getTxNotes().put("hash", "A");
+
+        TestObserver<Void> observer = payloadManager.scheduleUpdateTransactionNote("hash", "B").test();
+        // Edited again, outside the batch, before the save fails
+        payloadManager.getPayload().getTxNotes().put("hash", "C");
+
+        mockInterceptor.setResponseString("Save failed.");
+        mockInterceptor.setResponseCode(500);
+        scheduler.advanceTimeBy(PayloadManager.SAVE_COALESCING_WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        observer.assertError(ServerConnectionException.class);
+        Assert.assertEquals("C", payloadManager.getPayload().getTxNotes().get("hash"));
+    }
+
+    @Test
+    public void scheduleUpdateTransactionNote_saveFail_revert() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        final BlockExplorer blockExplorer = new BlockExplorer(
+                BlockchainFramework.getRetrofitExplorerInstance(),
+                BlockchainFramework.getRetrofitApiInstance(),
+                BlockchainFramework.getApiCode()
+        );
+        payloadManager = new PayloadManager(
+                walletApi,
+                new MultiAddressFactory(blockExplorer),
+                new BalanceManagerBtc(blockExplorer),
+                new BalanceManagerBch(blockExplorer),
+                scheduler
+        );
+
+        LinkedList<String> responseList = new LinkedList<>();
+        responseList.add("MyWallet save successful.");
+        responseList.add("{}");
+        responseList.add("{}");
+        responseList.add("{}");
+        mockInterceptor.setResponseStringList(responseList);
+        payloadManager.create("My HDWallet", "name@email.com", "SomePassword");
+        payloadManager.getPayload().getTxNotes().put("hash", "A");
+
+        TestObserver<Void> observer = payloadManager.scheduleUpdateTransactionNote("hash", "B").test();
+
+        mockInterceptor.setResponseString("Save failed.");
+        mockInterceptor.setResponseCode(500);
+        scheduler.advanceTimeBy(PayloadManager.SAVE_COALESCING_WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        observer.assertError(ServerConnectionException.class);
+        Assert.assertEquals("A", payloadManager.getPayload().getTxNotes().get("hash"));
+    }
+
     @Test
     public void addAccount() throws Exception {
 
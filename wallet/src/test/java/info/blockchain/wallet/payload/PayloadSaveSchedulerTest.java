@@ -0,0 +1,175 @@
+package info.blockchain.wallet.payload;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import info.blockchain.wallet.exceptions.ServerConnectionException;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+
+public class PayloadSaveSchedulerTest {
+
+    private TestScheduler scheduler;
+    private FakeSaver saver;
+    private PayloadSaveScheduler subject;
+
+    @Before
+    public void setup() {
+        scheduler = new TestScheduler();
+        saver = new FakeSaver();
+        subject = new PayloadSaveScheduler(saver, 300, scheduler);
+    }
+
+    @Test
+    public void savesWithinTheWindowAreMadeAsOne() {
+        TestObserver<Void> first = subject.schedule(null).test();
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        TestObserver<Void> second = subject.schedule(null).test();
+        TestObserver<Void> third = subject.schedule(null).test();
+
+        scheduler.advanceTimeBy(199, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(0, saver.saves);
+        first.assertNotComplete();
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, saver.saves);
+        first.assertComplete();
+        second.assertComplete();
+        third.assertComplete();
+    }
+
+    @Test
+    public void saveAfterTheWindowIsMadeSeparately() {
+        subject.schedule(null);
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+        TestObserver<Void> later = subject.schedule(null).test();
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(2, saver.saves);
+        later.assertComplete();
+    }
+
+    @Test
+    public void saveIsMadeWithoutSubscribers() {
+        subject.schedule(null);
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(1, saver.saves);
+    }
+
+    @Test
+    public void failedSaveRollsBackTheBatchMostRecentFirst() {
+        final List<String> rolledBack = new ArrayList<>();
+        saver.result = false;
+
+        TestObserver<Void> first = subject.schedule(new Runnable() {
+            @Override
+            public void run() {
+                rolledBack.add("first");
+            }
+        }).test();
+        TestObserver<Void> second = subject.schedule(new Runnable() {
+            @Override
+            public void run() {
+                rolledBack.add("second");
+            }
+        }).test();
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(2, rolledBack.size());
+        Assert.assertEquals("second", rolledBack.get(0));
+        Assert.assertEquals("first", rolledBack.get(1));
+        first.assertError(ServerConnectionException.class);
+        second.assertError(ServerConnectionException.class);
+    }
+
+    @Test
+    public void failedRollbackDoesNotStopTheOthers() {
+        final List<String> rolledBack = new ArrayList<>();
+        saver.result = false;
+
+        TestObserver<Void> first = subject.schedule(new Runnable() {
+            @Override
+            public void run() {
+                rolledBack.add("first");
+            }
+        }).test();
+        TestObserver<Void> second = subject.schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        }).test();
+        TestObserver<Void> third = subject.schedule(new Runnable() {
+            @Override
+            public void run() {
+                rolledBack.add("third");
+            }
+        }).test();
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(2, rolledBack.size());
+        Assert.assertEquals("third", rolledBack.get(0));
+        Assert.assertEquals("first", rolledBack.get(1));
+        first.assertError(ServerConnectionException.class);
+        second.assertError(ServerConnectionException.class);
+        third.assertError(ServerConnectionException.class);
+    }
+
+    @Test
+    public void saveExceptionIsPassedOn() {
+        final IllegalStateException error = new IllegalStateException();
+        saver.error = error;
+
+        TestObserver<Void> observer = subject.schedule(null).test();
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+
+        observer.assertError(error);
+    }
+
+    @Test
+    public void failureOnlyAffectsItsOwnBatch() {
+        final List<String> rolledBack = new ArrayList<>();
+        saver.result = false;
+        subject.schedule(new Runnable() {
+            @Override
+            public void run() {
+                rolledBack.add("first");
+            }
+        });
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+
+        saver.result = true;
+        TestObserver<Void> second = subject.schedule(new Runnable() {
+            @Override
+            public void run() {
+                rolledBack.add("second");
+            }
+        }).test();
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+
+        second.assertComplete();
+        Assert.assertEquals(1, rolledBack.size());
+    }
+
+    private static class FakeSaver implements PayloadSaveScheduler.Saver {
+
+        int saves;
+        boolean result = true;
+        Exception error;
+
+        @Override
+        public boolean save() throws Exception {
+            saves++;
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+    }
+}
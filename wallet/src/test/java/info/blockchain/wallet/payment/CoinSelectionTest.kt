@@ -4,6 +4,7 @@ import info.blockchain.api.data.UnspentOutput
 import org.amshove.kluent.`should equal`
 import org.junit.Test
 import java.math.BigInteger
+import java.util.Random
 
 class CoinSelectionTest {
     private fun unspent(value: Int) =
@@ -97,4 +98,45 @@ class CoinSelectionTest {
             it.consumedAmount `should equal` BigInteger.ZERO
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `branch and bound finds changeless selection`() {
+        val coins = unspents(200000, 300000, 500000)
+        val outputAmount = 481190.toBigInteger()
+
+        CoinSelection(coins, feePerByte).select(outputAmount, BranchAndBound()).also {
+            it.spendableOutputs.values() `should equal` unspents(300000, 200000).values()
+            it.absoluteFee `should equal` 18810.toBigInteger()
+            it.consumedAmount `should equal` BigInteger.ZERO
+        }
+    }
+
+    @Test
+    fun `branch and bound falls back to descent draw`() {
+        val coins = unspents(1, 20000, 0, 0, 300000, 50000, 30000)
+        val outputAmount = 100000.toBigInteger()
+
+        CoinSelection(coins, feePerByte).select(outputAmount, BranchAndBound()).also {
+            it.spendableOutputs.values() `should equal` unspents(300000).values()
+            it.absoluteFee `should equal` 12485.toBigInteger()
+            it.consumedAmount `should equal` BigInteger.ZERO
+        }
+    }
+
+    @Test(timeout = 10000)
+    fun `selection over large utxo sets`() {
+        val random = Random(42)
+        val coins = (1..50000).map { unspent(10000 + random.nextInt(1000000)) }
+        val outputAmount = 250000000.toBigInteger()
+
+        CoinSelection(coins, feePerByte).select(outputAmount, DescentDraw).also {
+            (it.spendableOutputs.sum() - it.absoluteFee >= outputAmount) `should equal` true
+        }
+        CoinSelection(coins, feePerByte).select(outputAmount, BranchAndBound()).also {
+            (it.spendableOutputs.sum() - it.absoluteFee >= outputAmount) `should equal` true
+        }
+        CoinSelection(coins, feePerByte).selectAll().also {
+            it.spendableOutputs.size `should equal` 50000
+        }
+    }
+}
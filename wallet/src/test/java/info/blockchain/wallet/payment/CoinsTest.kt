@@ -9,7 +9,6 @@ import org.amshove.kluent.`should equal`
 import org.bitcoinj.params.BitcoinMainNetParams
 import org.junit.Test
 
-private const val useNewCoinSelection = true
 private const val useReplayProtection = false
 
 class CoinsTest {
@@ -79,7 +78,7 @@ class CoinsTest {
 private fun maximumSpendable(
     unspentOutputs: UnspentOutputs,
     fee: Int
-) = Coins.getMaximumAvailable(unspentOutputs, fee.toBigInteger(), useReplayProtection, useNewCoinSelection)
+) = Coins.getMaximumAvailable(unspentOutputs, fee.toBigInteger(), useReplayProtection)
     .let { (balance, fee) -> CryptoValue(CryptoCurrency.BTC, balance) to CryptoValue(CryptoCurrency.BTC, fee) }
 
 private class MinCoinsResult(
@@ -104,7 +103,7 @@ private fun spendableUnspentOutputs(
     value: CryptoValue,
     fee: Int
 ) = Coins.getMinimumCoinsForPayment(
-    unspentOutputs, value.toBigInteger(), fee.toBigInteger(), useReplayProtection, useNewCoinSelection)
+    unspentOutputs, value.toBigInteger(), fee.toBigInteger(), useReplayProtection)
 
 private fun unspentOutputs(vararg values: CryptoValue): UnspentOutputs {
     return UnspentOutputs().apply {